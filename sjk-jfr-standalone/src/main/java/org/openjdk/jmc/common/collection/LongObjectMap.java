@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.common.collection;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from long to T using open addressing on primitive keys. Unlike {@link FastAccessNumberMap},
+ * lookups are O(1) regardless of the range of keys, and keys are never boxed.
+ * <p>
+ * Values are iterated in the order they were first put in the map. Null values are not supported.
+ *
+ * @param <T>
+ *            type of objects to store in this map
+ */
+public class LongObjectMap<T> implements Iterable<T> {
+
+	private long[] keys;
+	// null marks an empty slot
+	private Object[] values;
+	// position of each slot's value in insertion order
+	private int[] order;
+	private Object[] ordered;
+	private int size;
+
+	/**
+	 * Constructs an empty map.
+	 */
+	public LongObjectMap() {
+		this(16);
+	}
+
+	/**
+	 * Constructs a map which can hold expected number of values without resizing.
+	 *
+	 * @param expectedSize
+	 *            expected number of values
+	 */
+	public LongObjectMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		order = new int[capacity];
+		ordered = new Object[Math.max(expectedSize, 4)];
+	}
+
+	/**
+	 * Get the value for a key.
+	 *
+	 * @param key
+	 *            value key
+	 * @return value for the key, {@code null} if there is none
+	 */
+	public T get(long key) {
+		Object[] values = this.values;
+		int mask = values.length - 1;
+		int slot = slot(key, mask);
+		Object value;
+		while ((value = values[slot]) != null) {
+			if (keys[slot] == key) {
+				@SuppressWarnings("unchecked")
+				T tValue = (T) value;
+				return tValue;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Store a value for a key, replacing previous value if there is one.
+	 *
+	 * @param key
+	 *            value key
+	 * @param value
+	 *            value to store, not {@code null}
+	 */
+	public void put(long key, T value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		int mask = values.length - 1;
+		int slot = slot(key, mask);
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				ordered[order[slot]] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (size == ordered.length) {
+			ordered = Arrays.copyOf(ordered, size * 2);
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		order[slot] = size;
+		ordered[size++] = value;
+		if (size * 2 > values.length) {
+			rehash(values.length * 2);
+		}
+	}
+
+	/**
+	 * @return number of values in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldOrder = order;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		order = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = slot(oldKeys[i], mask);
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				order[slot] = oldOrder[i];
+			}
+		}
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public T next() {
+				if (index >= size) {
+					throw new NoSuchElementException();
+				}
+				@SuppressWarnings("unchecked")
+				T value = (T) ordered[index++];
+				return value;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -33,7 +33,11 @@
 package org.openjdk.jmc.flightrecorder.internal.parser;
 
 import java.io.DataInput;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.Arrays;
 
 import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
@@ -41,12 +45,29 @@ import org.openjdk.jmc.flightrecorder.internal.util.DataInputToolkit;
 
 /**
  * Class for handling data belonging to a single chunk.
+ * <p>
+ * Chunk data is exposed either as a single byte array or, for chunks which are memory mapped or
+ * too large for an array, as a sequence of buffer segments (see {@link #fillSegments(long)}).
  */
 public class Chunk {
+	/**
+	 * Nominal size of a data segment, each segment except the last one covers this many bytes of
+	 * chunk data.
+	 */
+	public static final int SEGMENT_SIZE = 1 << 30;
+	/**
+	 * Each segment contains this many extra bytes from the start of next segment, so any primitive
+	 * value starting inside of the segment could be read from it.
+	 */
+	public static final int SEGMENT_OVERLAP = DataInputToolkit.LONG_SIZE;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
 	private final DataInput input;
+	private final FileChannel channel;
+	private final long channelOffset;
 	private final short majorVersion;
 	private final short minorVersion;
-	private int position;
+	private long position;
 	private byte[] data;
 
 	/**
@@ -58,7 +79,29 @@ public class Chunk {
 	 *            a byte array for holding read chunk data
 	 */
 	public Chunk(DataInput input, int offset, byte[] reusableBuffer) throws IOException, InvalidJfrFileException {
+		this(input, null, 0, offset, reusableBuffer);
+	}
+
+	/**
+	 * @param channel
+	 *            file to map chunk data from
+	 * @param chunkStart
+	 *            file position where chunk begins
+	 * @param offset
+	 *            initial position
+	 * @param reusableBuffer
+	 *            a byte array for holding chunk data, which have to be copied (e.g. headers)
+	 */
+	public Chunk(FileChannel channel, long chunkStart, int offset, byte[] reusableBuffer)
+			throws IOException, InvalidJfrFileException {
+		this(null, channel, chunkStart, offset, reusableBuffer);
+	}
+
+	private Chunk(DataInput input, FileChannel channel, long channelOffset, int offset, byte[] reusableBuffer)
+			throws IOException, InvalidJfrFileException {
 		this.input = input;
+		this.channel = channel;
+		this.channelOffset = channelOffset;
 		this.data = reusableBuffer;
 		position = offset;
 		byte[] buffer = fill(offset + 2 * DataInputToolkit.SHORT_SIZE);
@@ -74,7 +117,7 @@ public class Chunk {
 		return minorVersion;
 	}
 
-	public int getPosition() {
+	public long getPosition() {
 		return position;
 	}
 
@@ -89,15 +132,106 @@ public class Chunk {
 	public byte[] fill(long upToPosition) throws IOException, InvalidJfrFileException {
 		int fillUpTo = getArrayPosition(upToPosition);
 		if (data.length < fillUpTo) {
-			data = Arrays.copyOf(data, (int) (fillUpTo * 1.2));
+			data = Arrays.copyOf(data, (int) Math.min(fillUpTo * 1.2, MAX_ARRAY_SIZE));
 		}
 		if (fillUpTo > position) {
-			input.readFully(data, position, fillUpTo - position);
+			readFully(data, (int) position, fillUpTo - (int) position);
 			position = fillUpTo;
 		}
 		return data;
 	}
 
+	/**
+	 * Get chunk data up to a specified position as a sequence of buffers. The first buffer starts
+	 * at chunk relative position 0, buffer {@code n} starts at {@code n * SEGMENT_SIZE} and
+	 * includes up to {@link #SEGMENT_OVERLAP} bytes of the following buffer.
+	 * <p>
+	 * Memory mapped chunks are never copied. Chunks read from a stream are copied to the chunk
+	 * buffer as in {@link #fill(long)}, unless they are too large for a single array.
+	 *
+	 * @param upToPosition
+	 *            chunk relative position
+	 * @return buffers with chunk data
+	 */
+	public ByteBuffer[] fillSegments(long upToPosition) throws IOException, InvalidJfrFileException {
+		if (upToPosition < 0) {
+			throw new InvalidJfrFileException();
+		}
+		if (channel != null) {
+			return mapSegments(upToPosition);
+		}
+		if (upToPosition <= MAX_ARRAY_SIZE) {
+			return new ByteBuffer[] {ByteBuffer.wrap(fill(upToPosition))};
+		}
+		return readSegments(upToPosition);
+	}
+
+	private ByteBuffer[] mapSegments(long upToPosition) throws IOException {
+		if (channelOffset + upToPosition > channel.size()) {
+			throw new IOException("Chunk data is truncated, expected " + upToPosition + " bytes but only " //$NON-NLS-1$ //$NON-NLS-2$
+					+ (channel.size() - channelOffset) + " available"); //$NON-NLS-1$
+		}
+		position = Math.max(position, upToPosition);
+		if (upToPosition <= MAX_ARRAY_SIZE) {
+			return new ByteBuffer[] {channel.map(MapMode.READ_ONLY, channelOffset, upToPosition)};
+		}
+		ByteBuffer[] segments = new ByteBuffer[segmentCount(upToPosition)];
+		for (int i = 0; i < segments.length; i++) {
+			long segmentStart = (long) i * SEGMENT_SIZE;
+			long segmentSize = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, upToPosition - segmentStart);
+			segments[i] = channel.map(MapMode.READ_ONLY, channelOffset + segmentStart, segmentSize);
+		}
+		return segments;
+	}
+
+	private ByteBuffer[] readSegments(long upToPosition) throws IOException {
+		byte[][] arrays = new byte[segmentCount(upToPosition)][];
+		for (int i = 0; i < arrays.length; i++) {
+			long segmentStart = (long) i * SEGMENT_SIZE;
+			arrays[i] = new byte[(int) Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, upToPosition - segmentStart)];
+		}
+		// Data which is already read stays in chunk buffer
+		System.arraycopy(data, 0, arrays[0], 0, (int) position);
+		for (int i = 0; i < arrays.length; i++) {
+			long segmentStart = (long) i * SEGMENT_SIZE;
+			int from = (int) Math.max(position - segmentStart, 0);
+			int to = (int) Math.min(SEGMENT_SIZE, upToPosition - segmentStart);
+			if (to > from) {
+				readFully(arrays[i], from, to - from);
+			}
+			if (i > 0) {
+				System.arraycopy(arrays[i], 0, arrays[i - 1], SEGMENT_SIZE,
+						arrays[i - 1].length - SEGMENT_SIZE);
+			}
+		}
+		position = upToPosition;
+		ByteBuffer[] segments = new ByteBuffer[arrays.length];
+		for (int i = 0; i < arrays.length; i++) {
+			segments[i] = ByteBuffer.wrap(arrays[i]);
+		}
+		return segments;
+	}
+
+	private void readFully(byte[] buffer, int offset, int length) throws IOException {
+		if (channel == null) {
+			input.readFully(buffer, offset, length);
+			return;
+		}
+		ByteBuffer dst = ByteBuffer.wrap(buffer, offset, length);
+		long filePosition = channelOffset + position;
+		while (dst.hasRemaining()) {
+			int n = channel.read(dst, filePosition);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			filePosition += n;
+		}
+	}
+
+	private static int segmentCount(long size) {
+		return (int) ((size - 1) / SEGMENT_SIZE + 1);
+	}
+
 	/**
 	 * Skip reading data from the input source up to a specified position. Note that the skipped
 	 * data can not be read later from the same input source.
@@ -106,10 +240,18 @@ public class Chunk {
 	 *            chunk relative position
 	 */
 	public void skip(long upToPosition) throws IOException, InvalidJfrFileException {
-		int skipUpTo = getArrayPosition(upToPosition);
-		if (skipUpTo > position) {
-			int skipped = input.skipBytes(skipUpTo - position);
-			position += skipped;
+		if (upToPosition > position) {
+			if (channel != null) {
+				position = upToPosition;
+				return;
+			}
+			while (position < upToPosition) {
+				int skipped = input.skipBytes((int) Math.min(upToPosition - position, Integer.MAX_VALUE));
+				if (skipped <= 0) {
+					break;
+				}
+				position += skipped;
+			}
 		}
 	}
 
@@ -125,7 +267,7 @@ public class Chunk {
 	}
 
 	private static int getArrayPosition(long pos) throws InvalidJfrFileException {
-		if (pos > Integer.MAX_VALUE) {
+		if (pos > MAX_ARRAY_SIZE) {
 			throw new InvalidJfrFileException();
 		} else {
 			return (int) pos;
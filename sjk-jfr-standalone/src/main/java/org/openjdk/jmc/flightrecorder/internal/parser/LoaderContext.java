@@ -38,8 +38,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.openjdk.jmc.common.IPredicate;
 import org.openjdk.jmc.common.item.IAttribute;
 import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.unit.StructContentType;
 import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.JfrAttributes;
 import org.openjdk.jmc.flightrecorder.internal.EventArray;
@@ -47,22 +49,49 @@ import org.openjdk.jmc.flightrecorder.internal.parser.RepositoryBuilder.EventTyp
 import org.openjdk.jmc.flightrecorder.internal.util.CanonicalConstantMap;
 import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
 import org.openjdk.jmc.flightrecorder.parser.IParserExtension;
+import org.openjdk.jmc.flightrecorder.parser.synthetic.JdkTypeIDsPreJdk11;
 
 /**
  * The heart of the loading process. Manages a pool of reusable byte buffers to load chunks in.
  * Collects all loaded chunks and combines them to a FlightRecording.
  */
 public class LoaderContext {
-	private final RepositoryBuilder repositoryBuilder = new RepositoryBuilder();
+	private final RepositoryBuilder repositoryBuilder;
 	private final IEventSinkFactory sinkFactory;
 	private final ConcurrentHashMap<Object, CanonicalConstantMap<Object>> constantsByType = new ConcurrentHashMap<>();
 	private final boolean hideExperimentals;
 	private final List<? extends IParserExtension> extensions;
+	private final IPredicate<String> eventTypeFilter;
 
 	public LoaderContext(List<? extends IParserExtension> extensions, boolean hideExperimentals) {
+		this(extensions, hideExperimentals, null);
+	}
+
+	/**
+	 * @param eventTypeFilter
+	 *            predicate on event type identifiers, events of rejected types are skipped without
+	 *            being decoded. {@code null} means that all event types are loaded.
+	 */
+	public LoaderContext(List<? extends IParserExtension> extensions, boolean hideExperimentals,
+			IPredicate<String> eventTypeFilter) {
+		this(extensions, hideExperimentals, eventTypeFilter, null);
+	}
+
+	/**
+	 * @param eventTypeFilter
+	 *            predicate on event type identifiers, events of rejected types are skipped without
+	 *            being decoded. {@code null} means that all event types are loaded.
+	 * @param eventSinkFactory
+	 *            last factory in the sink chain, receiving events instead of the repository.
+	 *            {@link #buildEventArrays()} can only be used if this is {@code null}.
+	 */
+	public LoaderContext(List<? extends IParserExtension> extensions, boolean hideExperimentals,
+			IPredicate<String> eventTypeFilter, IEventSinkFactory eventSinkFactory) {
 		this.extensions = extensions;
 		this.hideExperimentals = hideExperimentals;
-		IEventSinkFactory sinkFactory = repositoryBuilder;
+		this.eventTypeFilter = eventTypeFilter;
+		this.repositoryBuilder = eventSinkFactory == null ? new RepositoryBuilder() : null;
+		IEventSinkFactory sinkFactory = eventSinkFactory == null ? repositoryBuilder : eventSinkFactory;
 		// Traverse the list in reverse order so that the first element will create outermost sink factory
 		for (int i = extensions.size() - 1; i >= 0; i--) {
 			sinkFactory = extensions.get(i).getEventSinkFactory(sinkFactory);
@@ -80,6 +109,20 @@ public class LoaderContext {
 		return hideExperimentals;
 	}
 
+	public boolean hasEventTypeFilter() {
+		return eventTypeFilter != null;
+	}
+
+	/**
+	 * @param eventTypeId
+	 *            event type identifier as found in the recording. The filter is applied to the
+	 *            current (JDK 11+) identifier of the type, which pre-JDK 11 identifiers are
+	 *            translated to.
+	 */
+	public boolean isEventTypeIncluded(String eventTypeId) {
+		return eventTypeFilter == null || eventTypeFilter.evaluate(JdkTypeIDsPreJdk11.translate(eventTypeId));
+	}
+
 	public String getValueInterpretation(String eventTypeId, String fieldId) {
 		for (IParserExtension m : extensions) {
 			String vi = m.getValueInterpretation(eventTypeId, fieldId);
@@ -95,22 +138,15 @@ public class LoaderContext {
 	}
 
 	public EventArray[] buildEventArrays() throws CouldNotLoadRecordingException {
+		if (repositoryBuilder == null) {
+			throw new IllegalStateException("Events are passed to a custom sink factory"); //$NON-NLS-1$
+		}
 		sinkFactory.flush();
 		Iterator<EventTypeEntry> eventTypes = repositoryBuilder.getEventTypes();
 		ArrayList<EventArray> eventArrays = new ArrayList<>();
 		while (eventTypes.hasNext()) {
 			EventTypeEntry ete = eventTypes.next();
-			ete.eventType.addExtraAttribute(0, JfrAttributes.EVENT_TYPE);
-			List<IAttribute<?>> attributes = ete.eventType.getAttributes();
-			if (attributes.contains(JfrAttributes.START_TIME)) {
-				int endTimeIndex = attributes.indexOf(JfrAttributes.END_TIME);
-				int durationIndex = attributes.indexOf(JfrAttributes.DURATION);
-				if (endTimeIndex >= 0 && durationIndex < 0) {
-					ete.eventType.addExtraAttribute(endTimeIndex, JfrAttributes.DURATION); // for pre-JDK9 recordings
-				} else if (durationIndex >= 0 && endTimeIndex < 0) {
-					ete.eventType.addExtraAttribute(durationIndex + 1, JfrAttributes.END_TIME); // for JDK9 recordings
-				}
-			}
+			addExtraAttributes(ete.eventType);
 			Collection<IItem[]> sortedArrays = ete.buildSortedArrays();
 			if (sortedArrays.isEmpty()) {
 				// include all event types, even if there are no events
@@ -125,4 +161,22 @@ public class LoaderContext {
 		return eventArrays.toArray(new EventArray[eventArrays.size()]);
 	}
 
+	/**
+	 * Adds event type, duration and end time attributes, which are derived from other attributes, to
+	 * an event type built from event fields.
+	 */
+	public static void addExtraAttributes(StructContentType<IItem> eventType) {
+		eventType.addExtraAttribute(0, JfrAttributes.EVENT_TYPE);
+		List<IAttribute<?>> attributes = eventType.getAttributes();
+		if (attributes.contains(JfrAttributes.START_TIME)) {
+			int endTimeIndex = attributes.indexOf(JfrAttributes.END_TIME);
+			int durationIndex = attributes.indexOf(JfrAttributes.DURATION);
+			if (endTimeIndex >= 0 && durationIndex < 0) {
+				eventType.addExtraAttribute(endTimeIndex, JfrAttributes.DURATION); // for pre-JDK9 recordings
+			} else if (durationIndex >= 0 && endTimeIndex < 0) {
+				eventType.addExtraAttribute(durationIndex + 1, JfrAttributes.END_TIME); // for JDK9 recordings
+			}
+		}
+	}
+
 }
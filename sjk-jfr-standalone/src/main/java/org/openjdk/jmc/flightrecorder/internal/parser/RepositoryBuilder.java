@@ -37,7 +37,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -51,10 +50,12 @@ import org.openjdk.jmc.common.item.IItem;
 import org.openjdk.jmc.common.item.IMemberAccessor;
 import org.openjdk.jmc.common.unit.IQuantity;
 import org.openjdk.jmc.common.unit.StructContentType;
+import org.openjdk.jmc.common.unit.UnitLookup;
 import org.openjdk.jmc.flightrecorder.JfrAttributes;
 import org.openjdk.jmc.flightrecorder.internal.parser.ItemBuilder.IItemFactory;
 import org.openjdk.jmc.flightrecorder.internal.util.DisjointBuilder;
 import org.openjdk.jmc.flightrecorder.internal.util.DisjointBuilder.ArrayFactory;
+import org.openjdk.jmc.flightrecorder.internal.util.SortedRunMerger;
 import org.openjdk.jmc.flightrecorder.parser.IEventSink;
 import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
 import org.openjdk.jmc.flightrecorder.parser.ValueField;
@@ -214,7 +215,7 @@ class RepositoryBuilder implements IEventSinkFactory {
 
 	private static class InstantEventTypeEntry extends EventTypeEntry {
 
-		private final List<SimpleArray<IItem>> eventsLanes = new ArrayList<>();
+		private final List<InstantLane> eventsLanes = new ArrayList<>();
 		private final IMemberAccessor<IQuantity, IItem> order;
 
 		public InstantEventTypeEntry(StructContentType<IItem> eventType, String[] category, IItemFactory itemFactory,
@@ -225,33 +226,30 @@ class RepositoryBuilder implements IEventSinkFactory {
 
 		@Override
 		synchronized Collection<IItem[]> buildSortedArrays() {
-			int eventCount = 0;
-			for (SimpleArray<IItem> a : eventsLanes) {
-				eventCount += a.size();
-			}
-			if (eventCount == 0) {
+			SortedRunMerger<IItem> merger = createMerger();
+			if (merger.size() == 0) {
 				return Collections.emptyList();
 			}
-			IItem[] events = new IItem[eventCount];
-			int offset = 0;
-			for (SimpleArray<IItem> a : eventsLanes) {
-				a.copyTo(events, offset);
-				offset += a.size();
+			if (eventsLanes.size() == 1) {
+				// lane has been sorted in place
+				return Arrays.asList(new IItem[][] {eventsLanes.get(0).events.elements()});
 			}
-			if (order != null) {
-				Arrays.sort(events, new Comparator<IItem>() {
+			IItem[] events = new IItem[merger.size()];
+			merger.drainTo(events);
+			return Arrays.asList(new IItem[][] {events});
+		}
 
-					@Override
-					public int compare(IItem o1, IItem o2) {
-						return order.getMember(o1).compareTo(order.getMember(o2));
-					}
-				});
+		private SortedRunMerger<IItem> createMerger() {
+			SortedRunMerger<IItem> merger = new SortedRunMerger<>();
+			for (InstantLane lane : eventsLanes) {
+				// without order all keys are equal, and lanes are just concatenated
+				merger.addLane(lane.events.elements(), lane.keys, lane.events.size());
 			}
-			return Arrays.asList(new IItem[][] {events});
+			return merger;
 		}
 
-		private synchronized SimpleArray<IItem> createLane() {
-			SimpleArray<IItem> lane = new SimpleArray<>(new IItem[3]);
+		private synchronized InstantLane createLane() {
+			InstantLane lane = new InstantLane();
 			eventsLanes.add(lane);
 			return lane;
 		}
@@ -260,17 +258,37 @@ class RepositoryBuilder implements IEventSinkFactory {
 		public IEventSink createSink() {
 			return new IEventSink() {
 
-				private final SimpleArray<IItem> events = createLane();
+				private final InstantLane events = createLane();
 
 				@Override
 				public void addEvent(Object[] values) {
-					events.add(itemFactory.createEvent(values));
+					IItem event = itemFactory.createEvent(values);
+					IQuantity time = order == null ? null : order.getMember(event);
+					events.add(event, time == null ? Long.MIN_VALUE : time.clampedLongValueIn(UnitLookup.EPOCH_NS));
 				}
 
 			};
 		}
 	}
 
+	/**
+	 * Events of one chunk with their timestamps, which are extracted as they are added on the chunk
+	 * loading thread, so that merging lanes does not need to access the events.
+	 */
+	private static class InstantLane {
+		final SimpleArray<IItem> events = new SimpleArray<>(new IItem[3]);
+		long[] keys = new long[3];
+
+		void add(IItem event, long key) {
+			int index = events.size();
+			if (index == keys.length) {
+				keys = Arrays.copyOf(keys, keys.length * 4);
+			}
+			keys[index] = key;
+			events.add(event);
+		}
+	}
+
 	private static final ArrayFactory<IItem> ARRAY_FACTORY = new ArrayFactory<IItem>() {
 
 		@Override
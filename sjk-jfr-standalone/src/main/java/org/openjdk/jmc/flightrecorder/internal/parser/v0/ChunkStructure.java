@@ -48,7 +48,7 @@ class ChunkStructure {
 	private final long chunkSize;
 
 	ChunkStructure(Chunk input) throws InvalidJfrFileException, IOException {
-		int position = input.getPosition();
+		int position = (int) input.getPosition();
 		bodyStartOffset = position + DataInputToolkit.LONG_SIZE;
 		byte[] buffer = input.fill(bodyStartOffset);
 		metadataOffset = (int) DataInputToolkit.readLong(buffer, position);
@@ -37,7 +37,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import org.openjdk.jmc.common.collection.FastAccessNumberMap;
+import org.openjdk.jmc.common.collection.LongObjectMap;
 import org.openjdk.jmc.common.unit.UnitLookup;
 import org.openjdk.jmc.flightrecorder.JfrAttributes;
 import org.openjdk.jmc.flightrecorder.internal.EventAppearance;
@@ -76,7 +76,7 @@ class EventParserManager {
 //	static final int CONTENT_TYPE_METHOD = 32;
 //	static final int CONTENT_TYPE_GCWHEN = 38;
 
-	private final FastAccessNumberMap<EventTypeEntry> eventTypes = new FastAccessNumberMap<>(100, 5);
+	private final LongObjectMap<EventTypeEntry> eventTypes = new LongObjectMap<>();
 	private final ReaderFactory readerFactory;
 	private final LoaderContext context;
 
@@ -90,6 +90,11 @@ class EventParserManager {
 			for (EventTypeDescriptor etd : pd.getEventTypeDescriptors()) {
 				String path = etd.getPath();
 				String id = pd.getURIString() + path;
+				if (!context.isEventTypeIncluded(id)) {
+					// Event data is skipped by size, no readers or sink are needed
+					eventTypes.put(etd.getIdentifier(), EventTypeEntry.EXCLUDED);
+					continue;
+				}
 				EventTypeBuilder eventSpec = new EventTypeBuilder(id, etd);
 				String[] category = EventAppearance.getHumanSegmentArray(path);
 				category = Arrays.copyOf(category, category.length - 1);
@@ -99,7 +104,9 @@ class EventParserManager {
 						new EventTypeEntry(sink, etd.hasStartTime(), eventSpec.getValueReaders()));
 			}
 		}
-		eventTypes.put(LOST_EVENT_TYPE_INDEX, createBufferLostEntry(context.getSinkFactory()));
+		eventTypes.put(LOST_EVENT_TYPE_INDEX,
+				context.isEventTypeIncluded(JfrInternalConstants.BUFFER_LOST_TYPE_ID)
+						? createBufferLostEntry(context.getSinkFactory()) : EventTypeEntry.EXCLUDED);
 	}
 
 	void loadEvent(byte[] data, Offset offset, int eventTypeId) throws InvalidJfrFileException {
@@ -107,6 +114,9 @@ class EventParserManager {
 		if (ep == null) {
 			throw new IllegalArgumentException("Event type " + eventTypeId + " is not described in the file"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		if (ep == EventTypeEntry.EXCLUDED) {
+			return;
+		}
 		long endTime = readerFactory.readTicksTimestamp(data, offset);
 		int valueIndex = 0;
 		if (ep.hasStartTime) {
@@ -199,6 +209,8 @@ class EventParserManager {
 
 	private static class EventTypeEntry {
 
+		static final EventTypeEntry EXCLUDED = new EventTypeEntry(null, false, new IValueReader[0]);
+
 		private final Object[] values;
 		private final IValueReader[] parsers;
 		private final IEventSink sink;
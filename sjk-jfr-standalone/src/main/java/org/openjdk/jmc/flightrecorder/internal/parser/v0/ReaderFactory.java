@@ -32,7 +32,7 @@
  */
 package org.openjdk.jmc.flightrecorder.internal.parser.v0;
 
-import org.openjdk.jmc.common.collection.FastAccessNumberMap;
+import org.openjdk.jmc.common.collection.LongObjectMap;
 import org.openjdk.jmc.common.unit.ContentType;
 import org.openjdk.jmc.common.unit.DecimalPrefix;
 import org.openjdk.jmc.common.unit.IUnit;
@@ -52,9 +52,9 @@ import org.openjdk.jmc.flightrecorder.internal.util.JfrInternalConstants;
 
 class ReaderFactory {
 
-	private final FastAccessNumberMap<ConstantMap> constants = new FastAccessNumberMap<>(100, 5);
+	private final LongObjectMap<ConstantMap> constants = new LongObjectMap<>();
 	private final ChunkMetadata metadata;
-	private final FastAccessNumberMap<LabeledIdentifier> types = new FastAccessNumberMap<>();
+	private final LongObjectMap<LabeledIdentifier> types = new LongObjectMap<>();
 
 	ReaderFactory(ChunkMetadata metadata, byte[] chunkData, LoaderContext context) throws InvalidJfrFileException {
 		this.metadata = metadata;
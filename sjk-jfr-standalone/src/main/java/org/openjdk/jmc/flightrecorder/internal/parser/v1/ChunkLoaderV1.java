@@ -33,7 +33,10 @@
 package org.openjdk.jmc.flightrecorder.internal.parser.v1;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.internal.ChunkInfo;
@@ -49,12 +52,24 @@ public class ChunkLoaderV1 implements IChunkLoader {
 	private final static long CONSTANT_POOL_EVENT_TYPE = 1;
 
 	private final ChunkStructure header;
-	private final byte[] data;
+	private final ByteBuffer[] data;
+	private final byte[] reusableBuffer;
 	private final LoaderContext context;
 
 	public ChunkLoaderV1(ChunkStructure header, byte[] data, LoaderContext context) {
+		this(header, new ByteBuffer[] {ByteBuffer.wrap(data)}, data, context);
+	}
+
+	/**
+	 * @param data
+	 *            chunk data segments, see {@link Chunk#fillSegments(long)}
+	 * @param reusableBuffer
+	 *            byte array to be returned for reuse after the chunk is loaded
+	 */
+	public ChunkLoaderV1(ChunkStructure header, ByteBuffer[] data, byte[] reusableBuffer, LoaderContext context) {
 		this.header = header;
 		this.data = data;
+		this.reusableBuffer = reusableBuffer;
 		this.context = context;
 	}
 
@@ -65,9 +80,10 @@ public class ChunkLoaderV1 implements IChunkLoader {
 		// Read metadata
 		input.seek(header.getMetadataOffset());
 		List<ClassElement> classes = ChunkMetadata.readMetadata(input).metadata.classes;
-		TypeManager manager = new TypeManager(classes, context, header);
+		TypeManager manager = new TypeManager(classes, context, header,
+				SeekableInputStream.build(data, header.isIntegersCompressed()));
 
-		// Read constants
+		// Index constants, they are decoded when first referenced by an event
 		long constantPoolOffset = 0;
 		// An initial constantPoolOffset of 0 indicates no constant pools.
 		long delta = header.getConstantPoolOffset();
@@ -76,7 +92,6 @@ public class ChunkLoaderV1 implements IChunkLoader {
 			input.seek(constantPoolOffset);
 			delta = readConstantPoolEvent(input, manager);
 		}
-		manager.resolveConstants();
 
 		// Read events
 		long index = header.getBodyStartOffset();
@@ -89,10 +104,10 @@ public class ChunkLoaderV1 implements IChunkLoader {
 			}
 			index += size;
 		}
-		return data;
+		return reusableBuffer;
 	}
 
-	private static long readConstantPoolEvent(IDataInput input, TypeManager manager)
+	private static long readConstantPoolEvent(SeekableInputStream input, TypeManager manager)
 			throws IOException, InvalidJfrFileException {
 		input.readInt(); // size
 		ParserToolkit.assertValue(input.readLong(), CONSTANT_POOL_EVENT_TYPE); // type;
@@ -112,8 +127,8 @@ public class ChunkLoaderV1 implements IChunkLoader {
 	public static IChunkLoader create(Chunk input, LoaderContext context)
 			throws IOException, CouldNotLoadRecordingException {
 		ChunkStructure header = new ChunkStructure(input);
-		byte[] data = input.fill(header.getChunkSize());
-		return new ChunkLoaderV1(header, data, context);
+		ByteBuffer[] data = input.fillSegments(header.getChunkSize());
+		return new ChunkLoaderV1(header, data, input.getReusableBuffer(), context);
 	}
 
 	public static ChunkInfo getInfo(Chunk input, long position) throws IOException, CouldNotLoadRecordingException {
@@ -121,6 +136,39 @@ public class ChunkLoaderV1 implements IChunkLoader {
 		return new ChunkInfo(position, header.getChunkSize(), header.getChunkRange());
 	}
 
+	/**
+	 * Count events of each type in a chunk. Only metadata and event headers are read, constants and
+	 * event values are not decoded.
+	 *
+	 * @return number of events by event type identifier, as found in the recording
+	 */
+	public static Map<String, Long> getEventCounts(Chunk input)
+			throws IOException, CouldNotLoadRecordingException {
+		ChunkStructure header = new ChunkStructure(input);
+		ByteBuffer[] data = input.fillSegments(header.getChunkSize());
+		SeekableInputStream in = SeekableInputStream.build(data, header.isIntegersCompressed());
+		in.seek(header.getMetadataOffset());
+		Map<Long, String> typeIdentifiers = new HashMap<>();
+		for (ClassElement element : ChunkMetadata.readMetadata(in).metadata.classes) {
+			if (element.isEventType()) {
+				typeIdentifiers.put(element.classId, element.typeIdentifier);
+			}
+		}
+		Map<String, Long> counts = new HashMap<>();
+		long index = header.getBodyStartOffset();
+		while (index < header.getChunkSize()) {
+			in.seek(index);
+			int size = in.readInt();
+			String typeIdentifier = typeIdentifiers.get(in.readLong());
+			if (typeIdentifier != null) {
+				Long count = counts.get(typeIdentifier);
+				counts.put(typeIdentifier, count == null ? 1 : count + 1);
+			}
+			index += size;
+		}
+		return counts;
+	}
+
 	@Override
 	public long getTimestamp() {
 		return header.getStartTimeNanos();
@@ -60,7 +60,7 @@ class ChunkStructure {
 	private final LinearUnit ticksUnit;
 
 	ChunkStructure(Chunk chunkInput) throws IOException, InvalidJfrFileException {
-		int position = chunkInput.getPosition();
+		int position = (int) chunkInput.getPosition();
 		byte[] buffer = chunkInput.fill(position + SIZE);
 		chunkSize = DataInputToolkit.readLong(buffer, position);
 		position += DataInputToolkit.LONG_SIZE;
@@ -107,7 +107,11 @@ class ChunkStructure {
 	}
 
 	IQuantity ticsTimestamp(long relativeTicks) {
-		return UnitLookup.EPOCH_NS.quantity(startTimeNanos + (long) ((relativeTicks - startTicks) / ticksPerNano));
+		return UnitLookup.EPOCH_NS.quantity(ticsTimestampNanos(relativeTicks));
+	}
+
+	long ticsTimestampNanos(long relativeTicks) {
+		return startTimeNanos + (long) ((relativeTicks - startTicks) / ticksPerNano);
 	}
 
 	IRange<IQuantity> getChunkRange() {
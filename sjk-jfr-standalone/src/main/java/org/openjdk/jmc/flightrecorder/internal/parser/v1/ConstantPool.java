@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.parser.v1;
+
+import java.io.IOException;
+
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrStackTrace;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.IValueReader;
+import org.openjdk.jmc.flightrecorder.internal.util.CanonicalConstantMap;
+
+/**
+ * Constants of a single type in a chunk. Constants are only indexed by their position when the
+ * constant pools are read, and are decoded when first requested.
+ */
+class ConstantPool {
+
+	// Marker for a constant which is being read, references to it are resolved later
+	private static final Object IN_PROGRESS = new Object();
+
+	private final SeekableInputStream input;
+	private IValueReader reader;
+	// Set if constants are shared with equal constants of other chunks
+	private CanonicalConstantMap<Object> canonicalConstants;
+	private CanonicalConstantMap<Object> canonicalFrames;
+
+	// Open addressing hash table, zero offset marks an empty slot
+	private long[] keys = new long[16];
+	private long[] offsets = new long[16];
+	private Object[] values = new Object[16];
+	private int size;
+
+	/**
+	 * @param input
+	 *            chunk data used for decoding constants, not shared with event reading
+	 */
+	ConstantPool(SeekableInputStream input) {
+		this.input = input;
+	}
+
+	void setReader(IValueReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Replace decoded constants with equal instances from other chunks, so that constants repeated
+	 * in every chunk are only kept once.
+	 *
+	 * @param constantMap
+	 *            map shared by chunks for constants of this type
+	 * @param frameMap
+	 *            map shared by chunks for stack frames if constants are stack traces, {@code null}
+	 *            otherwise
+	 */
+	void setCanonicalMaps(CanonicalConstantMap<Object> constantMap, CanonicalConstantMap<Object> frameMap) {
+		this.canonicalConstants = constantMap;
+		this.canonicalFrames = frameMap;
+	}
+
+	/**
+	 * Register constant data position. If the constant is already known, then the new position is
+	 * ignored.
+	 */
+	void add(long key, long offset) {
+		if ((size + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		int slot = slot(key, keys.length);
+		while (offsets[slot] != 0) {
+			if (keys[slot] == key) {
+				return;
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		keys[slot] = key;
+		offsets[slot] = offset;
+		size++;
+	}
+
+	/**
+	 * @return the constant if it is already decoded, {@code null} otherwise
+	 */
+	Object peek(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		Object value = values[slot];
+		return value == IN_PROGRESS ? null : value;
+	}
+
+	/**
+	 * @return the constant with all references resolved, {@code null} if there is no constant with
+	 *         such key
+	 */
+	Object get(long key) throws InvalidJfrFileException {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		Object value = values[slot];
+		if (value == null) {
+			values[slot] = IN_PROGRESS;
+			long position = input.getPosition();
+			try {
+				input.seek(offsets[slot]);
+				// Nested references are left unresolved while reading, so cyclic references
+				// will find this constant already in place while resolving
+				value = reader.read(input, true);
+				input.seek(position);
+			} catch (IOException e) {
+				throw new InvalidJfrFileException(e);
+			}
+			values[slot] = value;
+			value = reader.resolve(value);
+			if (canonicalConstants != null) {
+				value = canonicalize(value);
+			}
+			values[slot] = value;
+		}
+		return value == IN_PROGRESS ? null : value;
+	}
+
+	private Object canonicalize(Object value) {
+		Object canonical = canonicalConstants.canonicalize(value);
+		if (canonical == value && canonicalFrames != null && value instanceof JfrStackTrace) {
+			// First occurrence of the stack trace, frames are shared with other stack traces
+			((JfrStackTrace) value).canonicalizeFrames(canonicalFrames);
+		}
+		return canonical;
+	}
+
+	private int find(long key) {
+		int slot = slot(key, keys.length);
+		while (offsets[slot] != 0) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		return -1;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldOffsets = offsets;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		offsets = new long[capacity];
+		values = new Object[capacity];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldOffsets[i] != 0) {
+				int slot = slot(oldKeys[i], capacity);
+				while (offsets[slot] != 0) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+				keys[slot] = oldKeys[i];
+				offsets[slot] = oldOffsets[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static int slot(long key, int capacity) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & (capacity - 1);
+	}
+}
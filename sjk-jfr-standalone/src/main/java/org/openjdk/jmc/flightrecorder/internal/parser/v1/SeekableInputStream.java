@@ -33,8 +33,11 @@
 package org.openjdk.jmc.flightrecorder.internal.parser.v1;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
+import org.openjdk.jmc.flightrecorder.internal.parser.Chunk;
 import org.openjdk.jmc.flightrecorder.internal.util.DataInputToolkit;
 
 /**
@@ -48,18 +51,69 @@ class SeekableInputStream implements IDataInput {
 	private static final byte STRING_ENCODING_CHAR_ARRAY = 4;
 	private static final byte STRING_ENCODING_LATIN1_BYTE_ARRAY = 5;
 
-	private final byte[] buffer;
+	// Only absolute get methods are used, so the buffers may be shared with other readers
+	private final ByteBuffer[] segments;
+	private final long length;
+	// End of current segment, data beyond it is read from next segment
+	private final int segmentEnd;
+	private ByteBuffer buffer;
+	private int segmentIndex;
 	private int pos;
 
 	public SeekableInputStream(byte[] buffer) {
-		this.buffer = buffer;
+		this(ByteBuffer.wrap(buffer));
+	}
+
+	public SeekableInputStream(ByteBuffer buffer) {
+		this(new ByteBuffer[] {buffer});
+	}
+
+	/**
+	 * @param segments
+	 *            data segments laid out as described in {@link Chunk#fillSegments(long)}
+	 */
+	public SeekableInputStream(ByteBuffer[] segments) {
+		this.segments = segments;
+		this.buffer = segments[0];
+		if (segments.length == 1) {
+			this.length = buffer.limit();
+			this.segmentEnd = Integer.MAX_VALUE;
+		} else {
+			int last = segments.length - 1;
+			this.length = (long) last * Chunk.SEGMENT_SIZE + segments[last].limit();
+			this.segmentEnd = Chunk.SEGMENT_SIZE;
+		}
 	}
 
 	public void seek(long pos) throws IOException {
-		if (pos >= 0 && pos < buffer.length) {
-			this.pos = (int) pos;
+		if (pos >= 0 && pos < length) {
+			if (segments.length == 1) {
+				this.pos = (int) pos;
+			} else {
+				segmentIndex = (int) (pos / Chunk.SEGMENT_SIZE);
+				buffer = segments[segmentIndex];
+				this.pos = (int) (pos % Chunk.SEGMENT_SIZE);
+			}
 		} else {
-			throw new IOException("Seeking for " + pos + " in buffer of length " + buffer.length); //$NON-NLS-1$ //$NON-NLS-2$
+			throw new IOException("Seeking for " + pos + " in buffer of length " + length); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	public long getPosition() {
+		return (long) segmentIndex * Chunk.SEGMENT_SIZE + pos;
+	}
+
+	private void advance(int size) {
+		pos += size;
+		if (pos >= segmentEnd) {
+			nextSegment();
+		}
+	}
+
+	private void nextSegment() {
+		while (pos >= segmentEnd && segmentIndex + 1 < segments.length) {
+			pos -= Chunk.SEGMENT_SIZE;
+			buffer = segments[++segmentIndex];
 		}
 	}
 
@@ -68,85 +122,95 @@ class SeekableInputStream implements IDataInput {
 	}
 
 	public void readFully(byte[] dst, int off, int len) {
-		int start = pos;
-		pos += len;
-		System.arraycopy(buffer, start, dst, off, len);
+		while (len > 0) {
+			int n = Math.min(len, segmentEnd - pos);
+			if (buffer.hasArray()) {
+				System.arraycopy(buffer.array(), buffer.arrayOffset() + pos, dst, off, n);
+			} else {
+				ByteBuffer view = buffer.duplicate();
+				view.position(pos);
+				view.get(dst, off, n);
+			}
+			off += n;
+			len -= n;
+			advance(n);
+		}
 	}
 
 	@Override
 	public boolean readBoolean() throws IOException {
-		boolean value = DataInputToolkit.readBoolean(buffer, pos);
-		pos += DataInputToolkit.BOOLEAN_SIZE;
+		boolean value = buffer.get(pos) != 0;
+		advance(DataInputToolkit.BOOLEAN_SIZE);
 		return value;
 	}
 
 	@Override
 	public byte readByte() throws IOException {
-		byte value = DataInputToolkit.readByte(buffer, pos);
-		pos += DataInputToolkit.BYTE_SIZE;
+		byte value = buffer.get(pos);
+		advance(DataInputToolkit.BYTE_SIZE);
 		return value;
 	}
 
 	@Override
 	public int readUnsignedByte() throws IOException {
-		int value = DataInputToolkit.readUnsignedByte(buffer, pos);
-		pos += DataInputToolkit.BYTE_SIZE;
+		int value = buffer.get(pos) & 0xFF;
+		advance(DataInputToolkit.BYTE_SIZE);
 		return value;
 	}
 
 	@Override
 	public short readShort() throws IOException {
-		short value = DataInputToolkit.readShort(buffer, pos);
-		pos += DataInputToolkit.SHORT_SIZE;
+		short value = buffer.getShort(pos);
+		advance(DataInputToolkit.SHORT_SIZE);
 		return value;
 	}
 
 	@Override
 	public int readUnsignedShort() throws IOException {
-		int value = DataInputToolkit.readUnsignedShort(buffer, pos);
-		pos += DataInputToolkit.SHORT_SIZE;
+		int value = buffer.getShort(pos) & 0xFFFF;
+		advance(DataInputToolkit.SHORT_SIZE);
 		return value;
 	}
 
 	@Override
 	public char readChar() throws IOException {
-		char value = DataInputToolkit.readChar(buffer, pos);
-		pos += DataInputToolkit.CHAR_SIZE;
+		char value = buffer.getChar(pos);
+		advance(DataInputToolkit.CHAR_SIZE);
 		return value;
 	}
 
 	@Override
 	public int readInt() throws IOException {
-		int value = DataInputToolkit.readInt(buffer, pos);
-		pos += DataInputToolkit.INTEGER_SIZE;
+		int value = buffer.getInt(pos);
+		advance(DataInputToolkit.INTEGER_SIZE);
 		return value;
 	}
 
 	@Override
 	public long readUnsignedInt() throws IOException {
-		long value = DataInputToolkit.readUnsignedInt(buffer, pos);
-		pos += DataInputToolkit.INTEGER_SIZE;
+		long value = buffer.getInt(pos) & 0xFFFFFFFFL;
+		advance(DataInputToolkit.INTEGER_SIZE);
 		return value;
 	}
 
 	@Override
 	public long readLong() throws IOException {
-		long value = DataInputToolkit.readLong(buffer, pos);
-		pos += DataInputToolkit.LONG_SIZE;
+		long value = buffer.getLong(pos);
+		advance(DataInputToolkit.LONG_SIZE);
 		return value;
 	}
 
 	@Override
 	public float readFloat() throws IOException {
-		float value = DataInputToolkit.readFloat(buffer, pos);
-		pos += DataInputToolkit.FLOAT_SIZE;
+		float value = buffer.getFloat(pos);
+		advance(DataInputToolkit.FLOAT_SIZE);
 		return value;
 	}
 
 	@Override
 	public double readDouble() throws IOException {
-		double value = DataInputToolkit.readDouble(buffer, pos);
-		pos += DataInputToolkit.DOUBLE_SIZE;
+		double value = buffer.getDouble(pos);
+		advance(DataInputToolkit.DOUBLE_SIZE);
 		return value;
 	}
 
@@ -160,10 +224,17 @@ class SeekableInputStream implements IDataInput {
 		case STRING_ENCODING_UTF8_BYTE_ARRAY:
 		case STRING_ENCODING_LATIN1_BYTE_ARRAY:
 			int size = readInt();
-			int start = pos;
-			pos += size;
-			return new String(buffer, start, size,
-					encoding == STRING_ENCODING_UTF8_BYTE_ARRAY ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+			Charset charset = encoding == STRING_ENCODING_UTF8_BYTE_ARRAY ? StandardCharsets.UTF_8
+					: StandardCharsets.ISO_8859_1;
+			if (buffer.hasArray() && segmentEnd - pos >= size) {
+				String value = new String(buffer.array(), buffer.arrayOffset() + pos, size, charset);
+				advance(size);
+				return value;
+			} else {
+				byte[] bytes = new byte[size];
+				readFully(bytes);
+				return new String(bytes, charset);
+			}
 		case STRING_ENCODING_CHAR_ARRAY:
 			int charCount = readInt();
 			char[] c = new char[charCount];
@@ -186,7 +257,7 @@ class SeekableInputStream implements IDataInput {
 		case STRING_ENCODING_UTF8_BYTE_ARRAY:
 		case STRING_ENCODING_LATIN1_BYTE_ARRAY:
 			int size = readInt();
-			pos += size;
+			advance(size);
 			return;
 		case STRING_ENCODING_CHAR_ARRAY:
 			int charCount = readInt();
@@ -212,8 +283,8 @@ class SeekableInputStream implements IDataInput {
 
 	private static class CompressedIntsDataInput extends SeekableInputStream {
 
-		public CompressedIntsDataInput(byte[] buffer) {
-			super(buffer);
+		public CompressedIntsDataInput(ByteBuffer[] segments) {
+			super(segments);
 		}
 
 		@Override
@@ -260,7 +331,7 @@ class SeekableInputStream implements IDataInput {
 
 	}
 
-	static SeekableInputStream build(byte[] data, boolean compressedInts) {
+	static SeekableInputStream build(ByteBuffer[] data, boolean compressedInts) {
 		return compressedInts ? new CompressedIntsDataInput(data) : new SeekableInputStream(data);
 	}
 
@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.parser.v1;
+
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrFrame;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaClass;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaClassLoader;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaModule;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaPackage;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrMethod;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObject;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObjectArray;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObjectField;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObjectGcRoot;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrStackTrace;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrThread;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrThreadGroup;
+
+/**
+ * Binds JFR struct fields to the public fields of the classes in {@link StructTypes}. Fields are
+ * read and written with plain field access instead of reflection.
+ *
+ * @param <T>
+ *            bound struct class
+ */
+abstract class StructBinding<T> {
+	private final String[] fieldNames;
+
+	private StructBinding(String ... fieldNames) {
+		this.fieldNames = fieldNames;
+	}
+
+	/**
+	 * @param identifier
+	 *            JFR field identifier
+	 * @return index of the bound field, or -1 if there is no field with that identifier
+	 */
+	int indexOf(String identifier) {
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (fieldNames[i].equals(identifier)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	abstract T newInstance();
+
+	abstract Object get(T struct, int field);
+
+	abstract void set(T struct, int field, Object value);
+
+	static final StructBinding<JfrThread> THREAD = new StructBinding<JfrThread>(
+			"osName", "osThreadId", "javaThreadId", "javaName", "group") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+		@Override
+		JfrThread newInstance() {
+			return new JfrThread();
+		}
+
+		@Override
+		Object get(JfrThread struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.osName;
+			case 1:
+				return struct.osThreadId;
+			case 2:
+				return struct.javaThreadId;
+			case 3:
+				return struct.javaName;
+			case 4:
+				return struct.group;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrThread struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.osName = value;
+				break;
+			case 1:
+				struct.osThreadId = value;
+				break;
+			case 2:
+				struct.javaThreadId = value;
+				break;
+			case 3:
+				struct.javaName = value;
+				break;
+			case 4:
+				struct.group = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrThreadGroup> THREAD_GROUP = new StructBinding<JfrThreadGroup>(
+			"name", "parent") { //$NON-NLS-1$ //$NON-NLS-2$
+
+		@Override
+		JfrThreadGroup newInstance() {
+			return new JfrThreadGroup();
+		}
+
+		@Override
+		Object get(JfrThreadGroup struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.name;
+			case 1:
+				return struct.parent;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrThreadGroup struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.name = value;
+				break;
+			case 1:
+				struct.parent = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrJavaClass> CLASS = new StructBinding<JfrJavaClass>(
+			"classLoader", "modifiers", "package", "name") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		@Override
+		JfrJavaClass newInstance() {
+			return new JfrJavaClass();
+		}
+
+		@Override
+		Object get(JfrJavaClass struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.classLoader;
+			case 1:
+				return struct.modifiers;
+			case 2:
+				return struct._package;
+			case 3:
+				return struct.name;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrJavaClass struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.classLoader = value;
+				break;
+			case 1:
+				struct.modifiers = value;
+				break;
+			case 2:
+				struct._package = value;
+				break;
+			case 3:
+				struct.name = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrJavaClassLoader> CLASS_LOADER = new StructBinding<JfrJavaClassLoader>(
+			"type", "name") { //$NON-NLS-1$ //$NON-NLS-2$
+
+		@Override
+		JfrJavaClassLoader newInstance() {
+			return new JfrJavaClassLoader();
+		}
+
+		@Override
+		Object get(JfrJavaClassLoader struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.type;
+			case 1:
+				return struct.name;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrJavaClassLoader struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.type = value;
+				break;
+			case 1:
+				struct.name = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrOldObjectGcRoot> OLD_OBJECT_GC_ROOT = new StructBinding<JfrOldObjectGcRoot>(
+			"system", "type", "description") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		@Override
+		JfrOldObjectGcRoot newInstance() {
+			return new JfrOldObjectGcRoot();
+		}
+
+		@Override
+		Object get(JfrOldObjectGcRoot struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.system;
+			case 1:
+				return struct.type;
+			case 2:
+				return struct.description;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrOldObjectGcRoot struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.system = value;
+				break;
+			case 1:
+				struct.type = value;
+				break;
+			case 2:
+				struct.description = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrOldObject> OLD_OBJECT = new StructBinding<JfrOldObject>(
+			"address", "type", "description", "referrer") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		@Override
+		JfrOldObject newInstance() {
+			return new JfrOldObject();
+		}
+
+		@Override
+		Object get(JfrOldObject struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.address;
+			case 1:
+				return struct.type;
+			case 2:
+				return struct.description;
+			case 3:
+				return struct.referrer;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrOldObject struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.address = value;
+				break;
+			case 1:
+				struct.type = value;
+				break;
+			case 2:
+				struct.description = value;
+				break;
+			case 3:
+				struct.referrer = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrOldObjectArray> OLD_OBJECT_ARRAY = new StructBinding<JfrOldObjectArray>(
+			"size", "index") { //$NON-NLS-1$ //$NON-NLS-2$
+
+		@Override
+		JfrOldObjectArray newInstance() {
+			return new JfrOldObjectArray();
+		}
+
+		@Override
+		Object get(JfrOldObjectArray struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.size;
+			case 1:
+				return struct.index;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrOldObjectArray struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.size = value;
+				break;
+			case 1:
+				struct.index = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrOldObjectField> OLD_OBJECT_FIELD = new StructBinding<JfrOldObjectField>(
+			"name", "modifiers") { //$NON-NLS-1$ //$NON-NLS-2$
+
+		@Override
+		JfrOldObjectField newInstance() {
+			return new JfrOldObjectField();
+		}
+
+		@Override
+		Object get(JfrOldObjectField struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.name;
+			case 1:
+				return struct.modifiers;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrOldObjectField struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.name = value;
+				break;
+			case 1:
+				struct.modifiers = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrMethod> METHOD = new StructBinding<JfrMethod>(
+			"type", "name", "descriptor", "modifiers", "hidden") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+		@Override
+		JfrMethod newInstance() {
+			return new JfrMethod();
+		}
+
+		@Override
+		Object get(JfrMethod struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.type;
+			case 1:
+				return struct.name;
+			case 2:
+				return struct.descriptor;
+			case 3:
+				return struct.modifiers;
+			case 4:
+				return struct.hidden;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrMethod struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.type = value;
+				break;
+			case 1:
+				struct.name = value;
+				break;
+			case 2:
+				struct.descriptor = value;
+				break;
+			case 3:
+				struct.modifiers = value;
+				break;
+			case 4:
+				struct.hidden = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrFrame> FRAME = new StructBinding<JfrFrame>(
+			"method", "lineNumber", "bytecodeIndex", "type") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		@Override
+		JfrFrame newInstance() {
+			return new JfrFrame();
+		}
+
+		@Override
+		Object get(JfrFrame struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.method;
+			case 1:
+				return struct.lineNumber;
+			case 2:
+				return struct.bytecodeIndex;
+			case 3:
+				return struct.type;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrFrame struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.method = value;
+				break;
+			case 1:
+				struct.lineNumber = value;
+				break;
+			case 2:
+				struct.bytecodeIndex = value;
+				break;
+			case 3:
+				struct.type = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrStackTrace> STACK_TRACE = new StructBinding<JfrStackTrace>(
+			"frames", "truncated") { //$NON-NLS-1$ //$NON-NLS-2$
+
+		@Override
+		JfrStackTrace newInstance() {
+			return new JfrStackTrace();
+		}
+
+		@Override
+		Object get(JfrStackTrace struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.frames;
+			case 1:
+				return struct.truncated;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrStackTrace struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.frames = value;
+				break;
+			case 1:
+				struct.truncated = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrJavaModule> MODULE = new StructBinding<JfrJavaModule>(
+			"name", "version", "location", "classLoader") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		@Override
+		JfrJavaModule newInstance() {
+			return new JfrJavaModule();
+		}
+
+		@Override
+		Object get(JfrJavaModule struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.name;
+			case 1:
+				return struct.version;
+			case 2:
+				return struct.location;
+			case 3:
+				return struct.classLoader;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrJavaModule struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.name = value;
+				break;
+			case 1:
+				struct.version = value;
+				break;
+			case 2:
+				struct.location = value;
+				break;
+			case 3:
+				struct.classLoader = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+
+	static final StructBinding<JfrJavaPackage> PACKAGE = new StructBinding<JfrJavaPackage>(
+			"name", "module", "exported") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		@Override
+		JfrJavaPackage newInstance() {
+			return new JfrJavaPackage();
+		}
+
+		@Override
+		Object get(JfrJavaPackage struct, int field) {
+			switch (field) {
+			case 0:
+				return struct.name;
+			case 1:
+				return struct.module;
+			case 2:
+				return struct.exported;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+
+		@Override
+		void set(JfrJavaPackage struct, int field, Object value) {
+			switch (field) {
+			case 0:
+				struct.name = value;
+				break;
+			case 1:
+				struct.module = value;
+				break;
+			case 2:
+				struct.exported = value;
+				break;
+			default:
+				throw new IndexOutOfBoundsException(Integer.toString(field));
+			}
+		}
+	};
+}
@@ -60,6 +60,7 @@ import org.openjdk.jmc.common.unit.QuantityConversionException;
 import org.openjdk.jmc.common.unit.UnitLookup;
 import org.openjdk.jmc.common.util.FormatToolkit;
 import org.openjdk.jmc.common.util.MethodToolkit;
+import org.openjdk.jmc.flightrecorder.internal.util.CanonicalConstantMap;
 import org.openjdk.jmc.flightrecorder.internal.util.ParserToolkit;
 
 class StructTypes {
@@ -342,11 +343,32 @@ class StructTypes {
 		@Override
 		public boolean equals(Object obj) {
 			/*
-			 * FIXME: We should include the classLoader value in determining whether or not two java
-			 * classes are the same.
+			 * Classes of other chunks are shared when equal, classes with the same name loaded by
+			 * distinct class loaders must stay distinct.
 			 */
 			return obj instanceof JfrJavaClass
-					&& Objects.equals(this.getFullName(), ((JfrJavaClass) obj).getFullName());
+					&& Objects.equals(this.getFullName(), ((JfrJavaClass) obj).getFullName())
+					&& sameClassLoader(this.classLoader, ((JfrJavaClass) obj).classLoader);
+		}
+
+		/**
+		 * Class loaders are compared by name and by name of their type, not by type itself, as the
+		 * type of a class loader could be loaded by that class loader.
+		 */
+		private static boolean sameClassLoader(Object loader1, Object loader2) {
+			if (loader1 == loader2) {
+				return true;
+			} else if (loader1 instanceof IMCClassLoader && loader2 instanceof IMCClassLoader) {
+				IMCClassLoader l1 = (IMCClassLoader) loader1;
+				IMCClassLoader l2 = (IMCClassLoader) loader2;
+				return Objects.equals(l1.getName(), l2.getName())
+						&& Objects.equals(typeName(l1.getType()), typeName(l2.getType()));
+			}
+			return false;
+		}
+
+		private static String typeName(IMCType type) {
+			return type == null ? null : type.getFullName();
 		}
 
 		@Override
@@ -686,7 +708,8 @@ class StructTypes {
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + Objects.hashCode(method);
-			result = prime * result + Objects.hashCode(type);
+			// type is compared in parsed form, it is converted on first access
+			result = prime * result + Objects.hashCode(getType());
 			result = prime * result + Objects.hashCode(lineNumber);
 			result = prime * result + Objects.hashCode(bytecodeIndex);
 			return result;
@@ -698,7 +721,7 @@ class StructTypes {
 				return true;
 			} else if (obj instanceof JfrFrame) {
 				JfrFrame of = (JfrFrame) obj;
-				return Objects.equals(of.type, type) && Objects.equals(of.method, method)
+				return Objects.equals(of.getType(), getType()) && Objects.equals(of.method, method)
 						&& Objects.equals(of.lineNumber, lineNumber) && Objects.equals(of.bytecodeIndex, bytecodeIndex);
 			}
 			return false;
@@ -727,11 +750,27 @@ class StructTypes {
 					? TruncationState.TRUNCATED : TruncationState.NOT_TRUNCATED);
 		}
 
+		/**
+		 * Replace frames with equal instances from the map.
+		 */
+		@SuppressWarnings("unchecked")
+		void canonicalizeFrames(CanonicalConstantMap<Object> frameMap) {
+			if (frames == null) {
+				return;
+			}
+			getFrames();
+			List<Object> list = (List<Object>) frames;
+			for (int i = 0; i < list.size(); i++) {
+				list.set(i, frameMap.canonicalize(list.get(i)));
+			}
+		}
+
 		@Override
 		public int hashCode() {
 			final int prime = 31;
 			int result = 1;
-			result = prime * result + Objects.hashCode(frames);
+			// frames are compared as list, array is converted on first access
+			result = prime * result + Objects.hashCode(frameList());
 			result = prime * result + Objects.hashCode(truncated);
 			return result;
 		}
@@ -742,10 +781,14 @@ class StructTypes {
 				return true;
 			} else if (obj instanceof JfrStackTrace) {
 				JfrStackTrace ost = (JfrStackTrace) obj;
-				return Objects.equals(ost.frames, frames) && Objects.equals(ost.truncated, truncated);
+				return Objects.equals(ost.frameList(), frameList()) && Objects.equals(ost.truncated, truncated);
 			}
 			return false;
 		}
 
+		private List<? extends IMCFrame> frameList() {
+			return frames == null ? null : getFrames();
+		}
+
 	}
 }
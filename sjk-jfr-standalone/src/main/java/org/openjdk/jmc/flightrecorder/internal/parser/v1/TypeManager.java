@@ -40,7 +40,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.openjdk.jmc.common.collection.FastAccessNumberMap;
+import org.openjdk.jmc.common.collection.LongObjectMap;
 import org.openjdk.jmc.common.unit.ContentType;
 import org.openjdk.jmc.common.unit.IUnit;
 import org.openjdk.jmc.common.unit.StructContentType;
@@ -52,32 +52,20 @@ import org.openjdk.jmc.flightrecorder.internal.parser.v1.ChunkMetadata.Annotated
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ChunkMetadata.AnnotationElement;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ChunkMetadata.ClassElement;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ChunkMetadata.FieldElement;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrFrame;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaClass;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaClassLoader;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaModule;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaPackage;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrMethod;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObject;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObjectArray;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObjectField;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrOldObjectGcRoot;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrStackTrace;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrThread;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrThreadGroup;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.AbstractStructReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.ArrayReader;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.BoundStructReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.IValueReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.PoolReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.PrimitiveReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.QuantityReader;
-import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.ReflectiveReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.StringReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.StructReader;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.TicksTimestampReader;
 import org.openjdk.jmc.flightrecorder.internal.util.JfrInternalConstants;
 import org.openjdk.jmc.flightrecorder.messages.internal.Messages;
 import org.openjdk.jmc.flightrecorder.parser.IEventSink;
+import org.openjdk.jmc.flightrecorder.parser.IPrimitiveEventSink;
 import org.openjdk.jmc.flightrecorder.parser.ValueField;
 
 class TypeManager {
@@ -145,19 +133,14 @@ class TypeManager {
 		private static final String STRUCT_TYPE_THREAD_GROUP_2 = "jdk.types.ThreadGroup"; //$NON-NLS-1$
 
 		final ClassElement element;
-		final FastAccessNumberMap<Object> constants;
+		final ConstantPool constants;
 		private IValueReader reader;
+		// false if no loaded event type refers to this type, its constants are then skipped
+		boolean reachable;
 
 		TypeEntry(ClassElement element) {
-			this(element, new FastAccessNumberMap<>());
-		}
-
-		/**
-		 * Temporary constructor for sharing constants. Only used for Strings.
-		 */
-		TypeEntry(ClassElement element, FastAccessNumberMap<Object> constants) {
 			this.element = element;
-			this.constants = constants;
+			this.constants = new ConstantPool(constantInput);
 		}
 
 		public IValueReader getReader() throws InvalidJfrFileException {
@@ -192,35 +175,66 @@ class TypeManager {
 						typeReader.addField(fe.fieldIdentifier, labelOrId, fe.description, reader);
 					}
 				}
+				constants.setReader(reader);
+				initCanonicalMaps();
 			}
 			return reader;
 		}
 
+		/**
+		 * Constants which repeat in every chunk are shared between chunks loaded with the same
+		 * context, as done by the JDK 7/8 parser. Classes are only shared if their class loaders
+		 * match, see {@link StructTypes.JfrJavaClass#equals(Object)}.
+		 */
+		private void initCanonicalMaps() {
+			switch (element.typeIdentifier) {
+			case STRUCT_TYPE_CLASS:
+				constants.setCanonicalMaps(context.getConstantPool(UnitLookup.CLASS), null);
+				break;
+			case STRUCT_TYPE_METHOD:
+			case STRUCT_TYPE_METHOD_2:
+				constants.setCanonicalMaps(context.getConstantPool(UnitLookup.METHOD), null);
+				break;
+			case STRUCT_TYPE_STACK_FRAME:
+			case STRUCT_TYPE_STACK_FRAME_2:
+				constants.setCanonicalMaps(context.getConstantPool(UnitLookup.STACKTRACE_FRAME), null);
+				break;
+			case STRUCT_TYPE_STACK_TRACE:
+			case STRUCT_TYPE_STACK_TRACE_2:
+				// frames are usually not pooled, they are shared when stack trace is first seen
+				constants.setCanonicalMaps(context.getConstantPool(UnitLookup.STACKTRACE),
+						context.getConstantPool(UnitLookup.STACKTRACE_FRAME));
+				break;
+			default:
+				break;
+			}
+		}
+
 		private AbstractStructReader createStructReaderV2(
 			String identifier, String name, String description, int fieldCount) {
 			switch (identifier) {
 			case STRUCT_TYPE_THREAD_GROUP_2:
-				return new ReflectiveReader(JfrThreadGroup.class, fieldCount, UnitLookup.THREAD_GROUP);
+				return new BoundStructReader<>(StructBinding.THREAD_GROUP, fieldCount, UnitLookup.THREAD_GROUP);
 			case STRUCT_TYPE_CLASS_LOADER_2:
-				return new ReflectiveReader(JfrJavaClassLoader.class, fieldCount, UnitLookup.CLASS_LOADER);
+				return new BoundStructReader<>(StructBinding.CLASS_LOADER, fieldCount, UnitLookup.CLASS_LOADER);
 			case STRUCT_TYPE_OLD_OBJECT_GC_ROOT_2:
-				return new ReflectiveReader(JfrOldObjectGcRoot.class, fieldCount, UnitLookup.OLD_OBJECT_GC_ROOT);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT_GC_ROOT, fieldCount, UnitLookup.OLD_OBJECT_GC_ROOT);
 			case STRUCT_TYPE_OLD_OBJECT_2:
-				return new ReflectiveReader(JfrOldObject.class, fieldCount, UnitLookup.OLD_OBJECT);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT, fieldCount, UnitLookup.OLD_OBJECT);
 			case STRUCT_TYPE_OLD_OBJECT_ARRAY_2:
-				return new ReflectiveReader(JfrOldObjectArray.class, fieldCount, UnitLookup.OLD_OBJECT_ARRAY);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT_ARRAY, fieldCount, UnitLookup.OLD_OBJECT_ARRAY);
 			case STRUCT_TYPE_OLD_OBJECT_FIELD_2:
-				return new ReflectiveReader(JfrOldObjectField.class, fieldCount, UnitLookup.OLD_OBJECT_FIELD);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT_FIELD, fieldCount, UnitLookup.OLD_OBJECT_FIELD);
 			case STRUCT_TYPE_METHOD_2:
-				return new ReflectiveReader(JfrMethod.class, fieldCount, UnitLookup.METHOD);
+				return new BoundStructReader<>(StructBinding.METHOD, fieldCount, UnitLookup.METHOD);
 			case STRUCT_TYPE_STACK_FRAME_2:
-				return new ReflectiveReader(JfrFrame.class, fieldCount, UnitLookup.STACKTRACE_FRAME);
+				return new BoundStructReader<>(StructBinding.FRAME, fieldCount, UnitLookup.STACKTRACE_FRAME);
 			case STRUCT_TYPE_STACK_TRACE_2:
-				return new ReflectiveReader(JfrStackTrace.class, fieldCount, UnitLookup.STACKTRACE);
+				return new BoundStructReader<>(StructBinding.STACK_TRACE, fieldCount, UnitLookup.STACKTRACE);
 			case STRUCT_TYPE_MODULE_2:
-				return new ReflectiveReader(JfrJavaModule.class, fieldCount, UnitLookup.MODULE);
+				return new BoundStructReader<>(StructBinding.MODULE, fieldCount, UnitLookup.MODULE);
 			case STRUCT_TYPE_PACKAGE_2:
-				return new ReflectiveReader(JfrJavaPackage.class, fieldCount, UnitLookup.PACKAGE);
+				return new BoundStructReader<>(StructBinding.PACKAGE, fieldCount, UnitLookup.PACKAGE);
 			default:
 				synchronized (STRUCT_TYPES) {
 					StructContentType<Object[]> structType = STRUCT_TYPES.get(element.classId);
@@ -238,31 +252,31 @@ class TypeManager {
 			String identifier, String name, String description, int fieldCount) {
 			switch (identifier) {
 			case STRUCT_TYPE_THREAD:
-				return new ReflectiveReader(JfrThread.class, fieldCount, UnitLookup.THREAD);
+				return new BoundStructReader<>(StructBinding.THREAD, fieldCount, UnitLookup.THREAD);
 			case STRUCT_TYPE_THREAD_GROUP:
-				return new ReflectiveReader(JfrThreadGroup.class, fieldCount, UnitLookup.THREAD_GROUP);
+				return new BoundStructReader<>(StructBinding.THREAD_GROUP, fieldCount, UnitLookup.THREAD_GROUP);
 			case STRUCT_TYPE_CLASS:
-				return new ReflectiveReader(JfrJavaClass.class, fieldCount, UnitLookup.CLASS);
+				return new BoundStructReader<>(StructBinding.CLASS, fieldCount, UnitLookup.CLASS);
 			case STRUCT_TYPE_CLASS_LOADER:
-				return new ReflectiveReader(JfrJavaClassLoader.class, fieldCount, UnitLookup.CLASS_LOADER);
+				return new BoundStructReader<>(StructBinding.CLASS_LOADER, fieldCount, UnitLookup.CLASS_LOADER);
 			case STRUCT_TYPE_OLD_OBJECT_GC_ROOT:
-				return new ReflectiveReader(JfrOldObjectGcRoot.class, fieldCount, UnitLookup.OLD_OBJECT_GC_ROOT);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT_GC_ROOT, fieldCount, UnitLookup.OLD_OBJECT_GC_ROOT);
 			case STRUCT_TYPE_OLD_OBJECT:
-				return new ReflectiveReader(JfrOldObject.class, fieldCount, UnitLookup.OLD_OBJECT);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT, fieldCount, UnitLookup.OLD_OBJECT);
 			case STRUCT_TYPE_OLD_OBJECT_ARRAY:
-				return new ReflectiveReader(JfrOldObjectArray.class, fieldCount, UnitLookup.OLD_OBJECT_ARRAY);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT_ARRAY, fieldCount, UnitLookup.OLD_OBJECT_ARRAY);
 			case STRUCT_TYPE_OLD_OBJECT_FIELD:
-				return new ReflectiveReader(JfrOldObjectField.class, fieldCount, UnitLookup.OLD_OBJECT_FIELD);
+				return new BoundStructReader<>(StructBinding.OLD_OBJECT_FIELD, fieldCount, UnitLookup.OLD_OBJECT_FIELD);
 			case STRUCT_TYPE_METHOD:
-				return new ReflectiveReader(JfrMethod.class, fieldCount, UnitLookup.METHOD);
+				return new BoundStructReader<>(StructBinding.METHOD, fieldCount, UnitLookup.METHOD);
 			case STRUCT_TYPE_STACK_FRAME:
-				return new ReflectiveReader(JfrFrame.class, fieldCount, UnitLookup.STACKTRACE_FRAME);
+				return new BoundStructReader<>(StructBinding.FRAME, fieldCount, UnitLookup.STACKTRACE_FRAME);
 			case STRUCT_TYPE_STACK_TRACE:
-				return new ReflectiveReader(JfrStackTrace.class, fieldCount, UnitLookup.STACKTRACE);
+				return new BoundStructReader<>(StructBinding.STACK_TRACE, fieldCount, UnitLookup.STACKTRACE);
 			case STRUCT_TYPE_MODULE:
-				return new ReflectiveReader(JfrJavaModule.class, fieldCount, UnitLookup.MODULE);
+				return new BoundStructReader<>(StructBinding.MODULE, fieldCount, UnitLookup.MODULE);
 			case STRUCT_TYPE_PACKAGE:
-				return new ReflectiveReader(JfrJavaPackage.class, fieldCount, UnitLookup.PACKAGE);
+				return new BoundStructReader<>(StructBinding.PACKAGE, fieldCount, UnitLookup.PACKAGE);
 			default:
 				synchronized (STRUCT_TYPES) {
 					StructContentType<Object[]> structType = STRUCT_TYPES.get(element.classId);
@@ -276,26 +290,13 @@ class TypeManager {
 			}
 		}
 
-		void resolveConstants() throws InvalidJfrFileException {
-			IValueReader r = reader;
-			if (r != null) {
-				for (Object c : constants) {
-					r.resolve(c);
-					// FIXME: During resolve, some constants may become equal. Should we ensure canonical constants?
-				}
-			}
-		}
-
-		void readConstant(IDataInput input) throws InvalidJfrFileException, IOException {
-			// FIXME: Constant lookup can perhaps be optimized (across chunks)
+		void readConstant(SeekableInputStream input) throws InvalidJfrFileException, IOException {
 			long constantIndex = input.readLong();
-			Object value = constants.get(constantIndex);
-			if (value == null) {
-				value = getReader().read(input, true);
-				constants.put(constantIndex, value);
-			} else {
-				getReader().skip(input);
+			if (reachable) {
+				// Constant is decoded on first reference, see ConstantPool
+				constants.add(constantIndex, input.getPosition());
 			}
+			getReader().skip(input);
 		}
 	}
 
@@ -304,7 +305,13 @@ class TypeManager {
 		private final List<IValueReader> valueReaders;
 		private Object[] reusableStruct;
 		private IEventSink eventSink;
+		// Set if the sink accepts primitive values, numeric fields are then read without boxing
+		private IPrimitiveEventSink primitiveSink;
+		private QuantityReader[] primitiveReaders;
+		private long[] reusableLongs;
+		private double[] reusableDoubles;
 		private LabeledIdentifier eventType;
+		private boolean excluded;
 
 		EventTypeEntry(ClassElement element) {
 			this.element = element;
@@ -312,12 +319,42 @@ class TypeManager {
 		}
 
 		void readEvent(IDataInput input) throws InvalidJfrFileException, IOException {
+			if (primitiveSink != null) {
+				readPrimitiveEvent(input);
+				return;
+			}
 			for (int i = 0; i < valueReaders.size(); i++) {
 				reusableStruct[i] = valueReaders.get(i).read(input, false);
 			}
 			eventSink.addEvent(reusableStruct);
 		}
 
+		private void readPrimitiveEvent(IDataInput input) throws InvalidJfrFileException, IOException {
+			for (int i = 0; i < primitiveReaders.length; i++) {
+				QuantityReader primitiveReader = primitiveReaders[i];
+				if (primitiveReader != null) {
+					primitiveReader.readPrimitive(input, i, reusableLongs, reusableDoubles);
+				} else {
+					reusableStruct[i] = valueReaders.get(i).read(input, false);
+				}
+			}
+			primitiveSink.addEvent(reusableStruct, reusableLongs, reusableDoubles);
+		}
+
+		private void initPrimitiveReaders() {
+			int fieldCount = valueReaders.size();
+			primitiveSink = (IPrimitiveEventSink) eventSink;
+			primitiveReaders = new QuantityReader[fieldCount];
+			for (int i = 0; i < fieldCount; i++) {
+				IValueReader reader = valueReaders.get(i);
+				if (reader instanceof QuantityReader) {
+					primitiveReaders[i] = (QuantityReader) reader;
+				}
+			}
+			reusableLongs = new long[fieldCount];
+			reusableDoubles = new double[fieldCount];
+		}
+
 		LabeledIdentifier getValueType() {
 			if (eventType == null) {
 				eventType = new LabeledIdentifier(element.typeIdentifier, element.classId, element.label,
@@ -327,7 +364,10 @@ class TypeManager {
 		}
 
 		void init(LoaderContext context) throws InvalidJfrFileException, IOException {
-			if (context.hideExperimentals() && element.experimental) {
+			if (!context.isEventTypeIncluded(element.typeIdentifier)) {
+				// Event data is skipped by size, no readers or sink are needed
+				excluded = true;
+			} else if (context.hideExperimentals() && element.experimental) {
 				eventSink = new NopEventSink();
 			} else {
 				List<ValueField> fieldsList = new ArrayList<>();
@@ -367,18 +407,29 @@ class TypeManager {
 				reusableStruct = new Object[valueReaders.size()];
 				if (skipFields.size() > 0) {
 					eventSink = new SkipFieldsEventSink(eventSink, skipFields, reusableStruct.length);
+				} else if (eventSink instanceof IPrimitiveEventSink) {
+					initPrimitiveReaders();
 				}
 			}
 		}
 	}
 
-	private final FastAccessNumberMap<TypeEntry> otherTypes = new FastAccessNumberMap<>();
-	private final FastAccessNumberMap<EventTypeEntry> eventTypes = new FastAccessNumberMap<>();
+	private final LongObjectMap<TypeEntry> otherTypes = new LongObjectMap<>();
+	private final LongObjectMap<EventTypeEntry> eventTypes = new LongObjectMap<>();
+	private final LoaderContext context;
 	private final ChunkStructure header;
-
-	TypeManager(List<ClassElement> classList, LoaderContext context, ChunkStructure header)
-			throws InvalidJfrFileException, IOException {
+	private final SeekableInputStream constantInput;
+
+	/**
+	 * @param constantInput
+	 *            chunk data input used to decode constants on demand, must not be used for anything
+	 *            else
+	 */
+	TypeManager(List<ClassElement> classList, LoaderContext context, ChunkStructure header,
+			SeekableInputStream constantInput) throws InvalidJfrFileException, IOException {
+		this.context = context;
 		this.header = header;
+		this.constantInput = constantInput;
 		for (ClassElement ce : classList) {
 			if (ce.isEventType()) {
 				eventTypes.put(ce.classId, new EventTypeEntry(ce));
@@ -396,6 +447,28 @@ class TypeManager {
 		for (EventTypeEntry ce : eventTypes) {
 			ce.init(context);
 		}
+
+		if (context.hasEventTypeFilter()) {
+			for (EventTypeEntry ce : eventTypes) {
+				if (!ce.excluded) {
+					markReachable(ce.element);
+				}
+			}
+		} else {
+			for (TypeEntry te : otherTypes) {
+				te.reachable = true;
+			}
+		}
+	}
+
+	private void markReachable(ClassElement ce) {
+		for (int i = 0; i < ce.getFieldCount(); i++) {
+			TypeEntry fieldType = otherTypes.get(ce.fields.get(i).classId);
+			if (fieldType != null && !fieldType.reachable) {
+				fieldType.reachable = true;
+				markReachable(fieldType.element);
+			}
+		}
 	}
 
 	void readEvent(long typeId, IDataInput input) throws InvalidJfrFileException, IOException {
@@ -403,22 +476,19 @@ class TypeManager {
 		if (entry == null) {
 			throw new InvalidJfrFileException("Event type with id " + typeId + " was not declared"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		entry.readEvent(input);
+		if (!entry.excluded) {
+			entry.readEvent(input);
+		}
 	}
 
-	void readConstants(long typeId, IDataInput input, int constantCount) throws InvalidJfrFileException, IOException {
+	void readConstants(long typeId, SeekableInputStream input, int constantCount)
+			throws InvalidJfrFileException, IOException {
 		TypeEntry entry = getTypeEntry(typeId);
 		for (int j = 0; j < constantCount; j++) {
 			entry.readConstant(input);
 		}
 	}
 
-	void resolveConstants() throws InvalidJfrFileException {
-		for (TypeEntry classEntry : otherTypes) {
-			classEntry.resolveConstants();
-		}
-	}
-
 	private TypeEntry getTypeEntry(long typeId) throws InvalidJfrFileException {
 		TypeEntry entry = otherTypes.get(typeId);
 		if (entry == null) {
@@ -33,13 +33,12 @@
 package org.openjdk.jmc.flightrecorder.internal.parser.v1;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.openjdk.jmc.common.collection.FastAccessNumberMap;
 import org.openjdk.jmc.common.item.IMemberAccessor;
 import org.openjdk.jmc.common.unit.ContentType;
 import org.openjdk.jmc.common.unit.IQuantity;
@@ -48,6 +47,7 @@ import org.openjdk.jmc.common.unit.StructContentType;
 import org.openjdk.jmc.common.unit.UnitLookup;
 import org.openjdk.jmc.common.util.MemberAccessorToolkit;
 import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+import org.openjdk.jmc.flightrecorder.parser.IPrimitiveEventSink;
 
 class ValueReaders {
 	interface IValueReader {
@@ -78,11 +78,24 @@ class ValueReaders {
 		}
 	}
 
+	/**
+	 * Constants referred from other constants are only resolved once the referring constant is
+	 * completely read, this allows cyclic references between constants.
+	 */
+	private static Object readConstant(ConstantPool constantPool, long constantIndex, boolean allowUnresolvedReference)
+			throws InvalidJfrFileException {
+		if (allowUnresolvedReference) {
+			Object constant = constantPool.peek(constantIndex);
+			return constant == null ? new ConstantReference(constantIndex) : constant;
+		}
+		return constantPool.get(constantIndex);
+	}
+
 	static class PoolReader implements IValueReader {
-		private final FastAccessNumberMap<Object> constantPool;
+		private final ConstantPool constantPool;
 		private final ContentType<?> contentType;
 
-		PoolReader(FastAccessNumberMap<Object> pool, ContentType<?> contentType) {
+		PoolReader(ConstantPool pool, ContentType<?> contentType) {
 			this.constantPool = pool;
 			this.contentType = contentType;
 		}
@@ -91,8 +104,7 @@ class ValueReaders {
 		public Object read(IDataInput in, boolean allowUnresolvedReference)
 				throws IOException, InvalidJfrFileException {
 			long constantIndex = in.readLong();
-			Object constant = constantPool.get(constantIndex);
-			return (allowUnresolvedReference && (constant == null)) ? new ConstantReference(constantIndex) : constant;
+			return readConstant(constantPool, constantIndex, allowUnresolvedReference);
 		}
 
 		@Override
@@ -197,6 +209,23 @@ class ValueReaders {
 			}
 		};
 
+		/**
+		 * Reads the numerical value of the quantity without creating a quantity object, see
+		 * {@link IPrimitiveEventSink#addEvent(Object[], long[], double[])}.
+		 */
+		void readPrimitive(IDataInput in, int index, long[] longValues, double[] doubleValues)
+				throws IOException, InvalidJfrFileException {
+			if (floatingPoint) {
+				double value = PrimitiveReader.readDouble(in, unsignedOrFloat);
+				longValues[index] = (long) value;
+				doubleValues[index] = value;
+			} else {
+				long value = PrimitiveReader.readLong(in, typeIdentifier, unsignedOrFloat);
+				longValues[index] = value;
+				doubleValues[index] = value;
+			}
+		}
+
 		IQuantity quantity(Number numericalValue) {
 			return unit.quantity(numericalValue);
 		}
@@ -229,6 +258,15 @@ class ValueReaders {
 			this.header = header;
 		}
 
+		@Override
+		void readPrimitive(IDataInput in, int index, long[] longValues, double[] doubleValues)
+				throws IOException, InvalidJfrFileException {
+			super.readPrimitive(in, index, longValues, doubleValues);
+			long epochNanos = header.ticsTimestampNanos(longValues[index]);
+			longValues[index] = epochNanos;
+			doubleValues[index] = epochNanos;
+		}
+
 		@Override
 		IQuantity quantity(long numericalValue) {
 			return header.ticsTimestamp(numericalValue);
@@ -253,9 +291,9 @@ class ValueReaders {
 	static class StringReader implements IValueReader {
 		static final String STRING = "java.lang.String"; //$NON-NLS-1$
 
-		private final FastAccessNumberMap<Object> constantPool;
+		private final ConstantPool constantPool;
 
-		StringReader(FastAccessNumberMap<Object> constantPool) {
+		StringReader(ConstantPool constantPool) {
 			this.constantPool = constantPool;
 		}
 
@@ -265,9 +303,7 @@ class ValueReaders {
 			byte encoding = in.readByte();
 			if (encoding == SeekableInputStream.STRING_ENCODING_CONSTANT_POOL) {
 				long constantIndex = in.readLong();
-				Object constant = constantPool.get(constantIndex);
-				return (allowUnresolvedReference && (constant == null)) ? new ConstantReference(constantIndex)
-						: constant;
+				return readConstant(constantPool, constantIndex, allowUnresolvedReference);
 			}
 			return in.readRawString(encoding);
 		}
@@ -488,54 +524,42 @@ class ValueReaders {
 		}
 	}
 
-	static class ReflectiveReader extends AbstractStructReader {
-		// FIXME: Change the reflective setting of fields to avoid the conversion workarounds that some classes have to make. See JMC-5966
-
-		// String to prefix reserved java keywords with when looking for a class field
-		private static final String RESERVED_IDENTIFIER_PREFIX = "_"; //$NON-NLS-1$
-		private final List<Field> fields;
-		private final Class<?> klass;
+	static class BoundStructReader<T> extends AbstractStructReader {
+		private final StructBinding<T> binding;
 		private final ContentType<?> ct;
+		// Bound field index for each value reader, -1 if the field is not kept
+		private int[] fields = new int[0];
 
-		<T> ReflectiveReader(Class<T> klass, int fieldCount, ContentType<? super T> ct) {
+		BoundStructReader(StructBinding<T> binding, int fieldCount, ContentType<? super T> ct) {
 			super(fieldCount);
-			this.klass = klass;
+			this.binding = binding;
 			this.ct = ct;
-			fields = new ArrayList<>(fieldCount);
 		}
 
 		@Override
 		public Object read(IDataInput in, boolean allowUnresolvedReference)
 				throws IOException, InvalidJfrFileException {
-			try {
-				Object thread = klass.newInstance();
-				for (int i = 0; i < valueReaders.size(); i++) {
-					Object val = valueReaders.get(i).read(in, allowUnresolvedReference);
-					Field f = fields.get(i);
-					if (f != null) {
-						f.set(thread, val);
-					}
+			T struct = binding.newInstance();
+			for (int i = 0; i < fields.length; i++) {
+				Object val = valueReaders.get(i).read(in, allowUnresolvedReference);
+				if (fields[i] >= 0) {
+					binding.set(struct, fields[i], val);
 				}
-				return thread;
-			} catch (InstantiationException | IllegalAccessException e) {
-				throw new RuntimeException(e);
 			}
+			return struct;
 		}
 
 		@Override
 		public Object resolve(Object value) throws InvalidJfrFileException {
-			try {
-				for (int i = 0; i < valueReaders.size(); i++) {
-					Field f = fields.get(i);
-					if (f != null) {
-						Object val = valueReaders.get(i).resolve(f.get(value));
-						f.set(value, val);
-					}
+			@SuppressWarnings("unchecked")
+			T struct = (T) value;
+			for (int i = 0; i < fields.length; i++) {
+				int field = fields[i];
+				if (field >= 0) {
+					binding.set(struct, field, valueReaders.get(i).resolve(binding.get(struct, field)));
 				}
-				return value;
-			} catch (IllegalAccessException e) {
-				throw new RuntimeException(e);
 			}
+			return struct;
 		}
 
 		@Override
@@ -546,19 +570,15 @@ class ValueReaders {
 		@Override
 		void addField(String identifier, String name, String description, IValueReader reader)
 				throws InvalidJfrFileException {
-			valueReaders.add(reader);
-			try {
-				try {
-					fields.add(klass.getField(identifier));
-				} catch (NoSuchFieldException e) {
-					fields.add(klass.getField(RESERVED_IDENTIFIER_PREFIX + identifier));
-				}
-			} catch (NoSuchFieldException e) {
-				Logger.getLogger(ReflectiveReader.class.getName()).log(Level.WARNING,
+			int field = binding.indexOf(identifier);
+			if (field < 0) {
+				Logger.getLogger(BoundStructReader.class.getName()).log(Level.WARNING,
 						"Could not find field with name '" + identifier + "' in reader for '" + ct.getIdentifier() //$NON-NLS-1$ //$NON-NLS-2$
 								+ "'"); //$NON-NLS-1$
-				fields.add(null);
 			}
+			valueReaders.add(reader);
+			fields = Arrays.copyOf(fields, fields.length + 1);
+			fields[fields.length - 1] = field;
 		}
 	}
 }
@@ -41,10 +41,15 @@ import java.util.List;
 
 import org.openjdk.jmc.common.item.IMemberAccessor;
 import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
 
 /**
  * An object collector used to place ranged objects in multiple arrays, where the objects in each
  * array are sorted and disjunct
+ * <p>
+ * Start and end of objects are timestamps, they are converted to epoch nanoseconds once per object
+ * and compared as primitives. Lane ends are kept in a {@code long[]} parallel to the lanes, sorted
+ * in descending order, so the lane to place an object in is found by binary search.
  */
 public class DisjointBuilder<T> {
 
@@ -54,27 +59,23 @@ public class DisjointBuilder<T> {
 
 	private static class DisjointArray<T> {
 		private Object[] array = new Object[3];
-		final IQuantity start;
-		IQuantity end;
+		final long start;
+		long end;
 		int size = 0;
 
-		DisjointArray(T e, IQuantity start, IQuantity end) {
+		DisjointArray(T e, long start, long end) {
 			this.start = start;
 			this.end = end;
 			array[size++] = e;
 		}
 
-		boolean accept(T e, IQuantity start, IQuantity end) {
+		void add(T e, long end) {
 			if (size >= array.length) {
 				int newCapacity = array.length < 100 ? array.length * 4 : (array.length * 3) / 2 + 1;
 				array = Arrays.copyOf(array, newCapacity);
 			}
-			if (start.compareTo(this.end) >= 0) {
-				array[size++] = e;
-				this.end = end;
-				return true;
-			}
-			return false;
+			array[size++] = e;
+			this.end = end;
 		}
 
 		private T getElement(int index) {
@@ -84,25 +85,11 @@ public class DisjointBuilder<T> {
 		}
 	}
 
-	private final static IMemberAccessor<IQuantity, DisjointArray<?>> DA_START = new IMemberAccessor<IQuantity, DisjointArray<?>>() {
-
-		@Override
-		public IQuantity getMember(DisjointArray<?> inObject) {
-			return inObject.start;
-		}
-	};
-
-	private final static IMemberAccessor<IQuantity, DisjointArray<?>> DA_END = new IMemberAccessor<IQuantity, DisjointArray<?>>() {
-
-		@Override
-		public IQuantity getMember(DisjointArray<?> inObject) {
-			return inObject.end;
-		}
-	};
-
 	private int noLanes = 0;
 	@SuppressWarnings("unchecked")
 	private DisjointArray<T>[] lanes = new DisjointArray[1];
+	// end of each lane, in descending order
+	private long[] laneEnds = new long[1];
 	private final IMemberAccessor<IQuantity, ? super T> startAccessor;
 	private final IMemberAccessor<IQuantity, ? super T> endAccessor;
 
@@ -113,43 +100,81 @@ public class DisjointBuilder<T> {
 	}
 
 	public void add(T e) {
-		IQuantity start = startAccessor.getMember(e);
-		IQuantity end = endAccessor.getMember(e);
+		add(e, startAccessor.getMember(e).clampedLongValueIn(UnitLookup.EPOCH_NS),
+				endAccessor.getMember(e).clampedLongValueIn(UnitLookup.EPOCH_NS));
+	}
+
+	/**
+	 * Add an object with start and end given in epoch nanoseconds.
+	 */
+	public void add(T e, long start, long end) {
 		if (noLanes == 0) {
 			addToNewLane(e, start, end);
-		} else if (!lanes[0].accept(e, start, end)) {
-			int changedLane = addToOtherLane(e, start, end);
-			sortLanes(changedLane);
+		} else if (start >= laneEnds[0]) {
+			// lane with the latest end still has the latest end
+			lanes[0].add(e, end);
+			laneEnds[0] = end;
+		} else {
+			int changedLane = findLane(start);
+			if (changedLane < noLanes) {
+				lanes[changedLane].add(e, end);
+				laneEnds[changedLane] = end;
+			} else {
+				addToNewLane(e, start, end);
+			}
+			sortLane(changedLane);
 		}
 	}
 
-	private void sortLanes(int fromIndex) {
-		// Sorting the lanes by descending end time
-		for (int i = fromIndex; i > 0; i--) {
-			if (lanes[i].end.compareTo(lanes[i - 1].end) > 0) {
-				DisjointArray<T> tmp = lanes[i - 1];
-				lanes[i - 1] = lanes[i];
-				lanes[i] = tmp;
+	/**
+	 * @return first lane ending not after start, that is the one with the latest end, or noLanes if
+	 *         there is no such lane
+	 */
+	private int findLane(long start) {
+		int low = 1;
+		int high = noLanes;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (laneEnds[mid] <= start) {
+				high = mid;
+			} else {
+				low = mid + 1;
 			}
 		}
+		return low;
 	}
 
-	private int addToOtherLane(T e, IQuantity start, IQuantity end) {
-		// Try with the other existing lanes
-		for (int i = 1; i < noLanes; i++) {
-			if (lanes[i].accept(e, start, end)) {
-				return i;
+	private void sortLane(int index) {
+		// Moving the lane before all lanes with an earlier end, keeping lanes by descending end time
+		long end = laneEnds[index];
+		int low = 0;
+		int high = index;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (laneEnds[mid] < end) {
+				high = mid;
+			} else {
+				low = mid + 1;
 			}
 		}
-		return addToNewLane(e, start, end);
+		if (low < index) {
+			DisjointArray<T> lane = lanes[index];
+			System.arraycopy(lanes, low, lanes, low + 1, index - low);
+			System.arraycopy(laneEnds, low, laneEnds, low + 1, index - low);
+			lanes[low] = lane;
+			laneEnds[low] = end;
+		}
 	}
 
-	private int addToNewLane(T e, IQuantity start, IQuantity end) {
+	private void addToNewLane(T e, long start, long end) {
 		if (noLanes >= lanes.length) {
-			lanes = Arrays.copyOf(lanes, (lanes.length * 3) / 2 + 2);
+			int newLength = (lanes.length * 3) / 2 + 2;
+			lanes = Arrays.copyOf(lanes, newLength);
+			laneEnds = Arrays.copyOf(laneEnds, newLength);
 		}
 		lanes[noLanes] = new DisjointArray<>(e, start, end);
-		return noLanes++;
+		laneEnds[noLanes] = end;
+		noLanes++;
 	}
 
 	public static <U> Collection<U[]> toArrays(
@@ -167,14 +192,14 @@ public class DisjointBuilder<T> {
 
 			@Override
 			public int compare(DisjointArray<?> o1, DisjointArray<?> o2) {
-				return o1.end.compareTo(o2.end);
+				return Long.compare(o1.end, o2.end);
 			}
 
 		});
 
-		DisjointBuilder<DisjointArray<U>> lanesCombiner = new DisjointBuilder<>(DA_START, DA_END);
+		DisjointBuilder<DisjointArray<U>> lanesCombiner = new DisjointBuilder<>(null, null);
 		for (DisjointArray<U> l : allLanes) {
-			lanesCombiner.add(l);
+			lanesCombiner.add(l, l.start, l.end);
 		}
 		List<U[]> result = new ArrayList<>(lanesCombiner.noLanes);
 		for (int i = 0; i < lanesCombiner.noLanes; i++) {
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges lanes of elements with primitive sort keys into a single sequence sorted by key.
+ * <p>
+ * Each lane is expected to be sorted, or nearly so. When a lane is added, runs of elements with
+ * non-decreasing keys are detected and merged pairwise until the lane is sorted, and then the
+ * lanes are merged using a heap of cursors. Keys are compared as primitives and are expected to be
+ * extracted once per element by the caller.
+ * <p>
+ * The merge is stable, elements with equal keys are returned in lane order and then in the order
+ * they were added to the lane. The merger could be used as a lazy iterator, in which case the heap
+ * is built on the first call to {@link #hasNext()} or {@link #next()}.
+ *
+ * @param <T>
+ *            type of elements
+ */
+public class SortedRunMerger<T> implements Iterator<T> {
+
+	private Object[][] laneElements = new Object[4][];
+	private long[][] laneKeys = new long[4][];
+	private int[] lanePos = new int[4];
+	private int[] laneEnd = new int[4];
+	private int noLanes;
+	private int size;
+
+	// binary min heap of lane indexes, null until merge is started
+	private int[] heap;
+	private int heapSize;
+
+	/**
+	 * Add a lane of elements. Elements and keys of the lane are sorted in place.
+	 *
+	 * @param elements
+	 *            elements of the lane
+	 * @param keys
+	 *            sort keys of the elements, same index as element
+	 * @param count
+	 *            number of elements in the lane
+	 */
+	public void addLane(T[] elements, long[] keys, int count) {
+		if (heap != null) {
+			throw new IllegalStateException("Merge has already started"); //$NON-NLS-1$
+		}
+		if (count == 0) {
+			return;
+		}
+		sort(elements, keys, count);
+		if (noLanes == laneElements.length) {
+			int newLength = noLanes * 2;
+			laneElements = Arrays.copyOf(laneElements, newLength);
+			laneKeys = Arrays.copyOf(laneKeys, newLength);
+			lanePos = Arrays.copyOf(lanePos, newLength);
+			laneEnd = Arrays.copyOf(laneEnd, newLength);
+		}
+		laneElements[noLanes] = elements;
+		laneKeys[noLanes] = keys;
+		laneEnd[noLanes] = count;
+		noLanes++;
+		size += count;
+	}
+
+	/**
+	 * Stable natural merge sort, adjacent runs are merged until there is a single run.
+	 */
+	private static void sort(Object[] elements, long[] keys, int count) {
+		int[] runs = findRuns(keys, count);
+		int noRuns = runs.length - 1;
+		if (noRuns == 1) {
+			return;
+		}
+		Object[] srcElements = elements;
+		long[] srcKeys = keys;
+		Object[] dstElements = new Object[count];
+		long[] dstKeys = new long[count];
+		while (noRuns > 1) {
+			int merged = 0;
+			for (int r = 0; r < noRuns; r += 2) {
+				int start = runs[r];
+				int mid = runs[r + 1];
+				int end = r + 2 <= noRuns ? runs[r + 2] : mid;
+				merge(srcElements, srcKeys, start, mid, end, dstElements, dstKeys);
+				runs[merged++] = start;
+			}
+			runs[merged] = count;
+			noRuns = merged;
+			Object[] te = srcElements;
+			srcElements = dstElements;
+			dstElements = te;
+			long[] tk = srcKeys;
+			srcKeys = dstKeys;
+			dstKeys = tk;
+		}
+		if (srcKeys != keys) {
+			System.arraycopy(srcElements, 0, elements, 0, count);
+			System.arraycopy(srcKeys, 0, keys, 0, count);
+		}
+	}
+
+	/**
+	 * @return start indexes of runs with non-decreasing keys followed by count
+	 */
+	private static int[] findRuns(long[] keys, int count) {
+		int[] runs = new int[8];
+		int noRuns = 0;
+		runs[noRuns++] = 0;
+		for (int i = 1; i < count; i++) {
+			if (keys[i] < keys[i - 1]) {
+				if (noRuns + 1 >= runs.length) {
+					runs = Arrays.copyOf(runs, runs.length * 2);
+				}
+				runs[noRuns++] = i;
+			}
+		}
+		runs[noRuns] = count;
+		return Arrays.copyOf(runs, noRuns + 1);
+	}
+
+	private static void merge(
+		Object[] srcElements, long[] srcKeys, int start, int mid, int end, Object[] dstElements, long[] dstKeys) {
+		int i = start;
+		int j = mid;
+		int k = start;
+		while (i < mid && j < end) {
+			if (srcKeys[j] < srcKeys[i]) {
+				dstKeys[k] = srcKeys[j];
+				dstElements[k++] = srcElements[j++];
+			} else {
+				dstKeys[k] = srcKeys[i];
+				dstElements[k++] = srcElements[i++];
+			}
+		}
+		System.arraycopy(srcKeys, i, dstKeys, k, mid - i);
+		System.arraycopy(srcElements, i, dstElements, k, mid - i);
+		k += mid - i;
+		System.arraycopy(srcKeys, j, dstKeys, k, end - j);
+		System.arraycopy(srcElements, j, dstElements, k, end - j);
+	}
+
+	/**
+	 * @return total number of elements in all lanes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Write all remaining elements in sorted order to an array.
+	 *
+	 * @param dst
+	 *            array to write elements to, must fit all remaining elements
+	 * @return number of elements written
+	 */
+	public int drainTo(T[] dst) {
+		int n = 0;
+		while (hasNext()) {
+			// copy elements of the top lane while it stays on top
+			int lane = heap[0];
+			Object[] elements = laneElements[lane];
+			long[] keys = laneKeys[lane];
+			int pos = lanePos[lane];
+			int end = laneEnd[lane];
+			long limit = Long.MAX_VALUE;
+			int limitLane = Integer.MAX_VALUE;
+			if (heapSize > 1) {
+				limitLane = heapSize > 2 && less(heap[2], heap[1]) ? heap[2] : heap[1];
+				limit = key(limitLane);
+			}
+			int from = pos;
+			do {
+				pos++;
+			} while (pos < end && (keys[pos] < limit || (keys[pos] == limit && lane < limitLane)));
+			System.arraycopy(elements, from, dst, n, pos - from);
+			n += pos - from;
+			lanePos[lane] = pos;
+			if (pos < end) {
+				siftDown(0);
+			} else {
+				removeTop();
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (heap == null) {
+			initHeap();
+		}
+		return heapSize > 0;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		int lane = heap[0];
+		@SuppressWarnings("unchecked")
+		T e = (T) laneElements[lane][lanePos[lane]];
+		if (++lanePos[lane] < laneEnd[lane]) {
+			siftDown(0);
+		} else {
+			removeTop();
+		}
+		return e;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void initHeap() {
+		heap = new int[noLanes];
+		for (int i = 0; i < noLanes; i++) {
+			heap[i] = i;
+		}
+		heapSize = noLanes;
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	private void removeTop() {
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			siftDown(0);
+		}
+	}
+
+	private void siftDown(int index) {
+		int lane = heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!less(heap[child], lane)) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = lane;
+	}
+
+	private long key(int lane) {
+		return laneKeys[lane][lanePos[lane]];
+	}
+
+	private boolean less(int lane1, int lane2) {
+		long k1 = key(lane1);
+		long k2 = key(lane2);
+		return k1 < k2 || (k1 == k2 && lane1 < lane2);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.parser;
+
+/**
+ * Event sink that receives numeric event values as primitives, without creating a quantity object
+ * for each value.
+ * <p>
+ * If the sink returned by
+ * {@link IEventSinkFactory#create(String, String, String[], String, java.util.List)
+ * IEventSinkFactory.create} implements this interface, the parser may call
+ * {@link #addEvent(Object[], long[], double[])} instead of {@link #addEvent(Object[])}. Sinks must
+ * still support both methods, since not all recording formats and event types are decoded this way.
+ */
+public interface IPrimitiveEventSink extends IEventSink {
+
+	/**
+	 * Add a new event to the sink for processing.
+	 * <p>
+	 * Values of fields whose {@link ValueField#getContentType() content type} is a
+	 * {@link org.openjdk.jmc.common.unit.KindOfQuantity KindOfQuantity} are passed in
+	 * {@code longValues} and {@code doubleValues}, the corresponding element of {@code values} is
+	 * {@code null}. Both primitive arrays hold the value, so that integral values can be read from
+	 * {@code longValues} and floating point values from {@code doubleValues} without loss. Values
+	 * are the numerical values that the quantities would have had, in the unit of the field:
+	 * <ul>
+	 * <li>timestamps stored as ticks, like the start and end time of events, are converted to
+	 * nanoseconds since epoch;</li>
+	 * <li>timestamps stored as milliseconds since epoch, like {@code jvmStartTime} of
+	 * {@code jdk.JVMInformation}, are passed unscaled, in milliseconds;</li>
+	 * <li>durations stored as ticks are passed unscaled, in ticks of the chunk;</li>
+	 * <li>all other quantities are passed unscaled, in the unit declared for the field.</li>
+	 * </ul>
+	 * The sink is not told the unit, a {@link ValueField} only has the kind of quantity. Only the
+	 * event start and end time can be compared without it. All other fields are passed in
+	 * {@code values} as for {@link #addEvent(Object[])}.
+	 * <p>
+	 * The arrays are reused by the parser and must not be retained after the call.
+	 *
+	 * @param values
+	 *            non-numeric event values
+	 * @param longValues
+	 *            numeric event values as long
+	 * @param doubleValues
+	 *            numeric event values as double
+	 */
+	void addEvent(Object[] values, long[] longValues, double[] doubleValues);
+}
@@ -39,7 +39,7 @@ import org.openjdk.jmc.flightrecorder.jdk.JdkTypeIDs;
  * Contains type IDs for events that are produced by JDK 7 and 8.
  */
 @SuppressWarnings({"nls", "unused"})
-final class JdkTypeIDsPreJdk11 {
+public final class JdkTypeIDsPreJdk11 {
 	/**
 	 * The prefix used for JDK 11 and later
 	 */
@@ -0,0 +1,163 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.openjdk.jmc.common.IPredicate;
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+import org.openjdk.jmc.flightrecorder.internal.IChunkLoader;
+import org.openjdk.jmc.flightrecorder.internal.IChunkSupplier;
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+import org.openjdk.jmc.flightrecorder.internal.parser.LoaderContext;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+import org.openjdk.jmc.flightrecorder.parser.IParserExtension;
+
+/**
+ * Reads JFR data one chunk at a time.
+ * <p>
+ * Each chunk is parsed with its own {@link LoaderContext}, so constant pools and events of
+ * previous chunks can be collected as soon as caller is done with them.
+ * <p>
+ * If parallelism is greater than one, up to that number of chunks is decoded ahead on background
+ * threads. Chunks are still returned in recording order.
+ *
+ * @param <T>
+ *            type of decoded chunk
+ */
+abstract class AbstractChunkReader<T> implements Closeable {
+
+	private final Closeable stream;
+	private final IChunkSupplier chunkSupplier;
+	private final List<? extends IParserExtension> extensions;
+	private final boolean hideExperimentals;
+	private final boolean ignoreTruncatedChunk;
+	private final int parallelism;
+	private final IPredicate<String> eventTypeFilter;
+
+	private byte[] buffer = new byte[0];
+	private int chunkCount;
+	private boolean finished;
+
+	private ExecutorService threadPool;
+	private final ArrayDeque<Future<T>> pending = new ArrayDeque<>();
+	private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+	private boolean exhausted;
+
+	AbstractChunkReader(Closeable stream, IChunkSupplier chunkSupplier, LoaderOptions options) {
+		this.stream = stream;
+		this.chunkSupplier = chunkSupplier;
+		this.extensions = options.getExtensions();
+		this.hideExperimentals = options.isHideExperimentals();
+		this.ignoreTruncatedChunk = options.isIgnoreTruncatedChunk();
+		this.parallelism = options.getParallelism();
+		this.eventTypeFilter = options.getEventTypeFilter();
+	}
+
+	/**
+	 * @return event sink factory receiving events of one chunk, {@code null} to collect events into
+	 *         EventArrays
+	 */
+	abstract IEventSinkFactory createSinkFactory();
+
+	/**
+	 * Called once all events of a chunk have been passed to the sinks.
+	 *
+	 * @param sinkFactory
+	 *            factory returned by {@link #createSinkFactory()} for the chunk
+	 */
+	abstract T buildChunk(LoaderContext context, IEventSinkFactory sinkFactory) throws CouldNotLoadRecordingException;
+
+	/**
+	 * @return next decoded chunk or {@code null} if there are no more chunks
+	 */
+	T readNext() throws CouldNotLoadRecordingException, IOException {
+		if (finished) {
+			return null;
+		}
+		if (parallelism > 1) {
+			return readAhead();
+		}
+		IEventSinkFactory sinkFactory = createSinkFactory();
+		LoaderContext context = new LoaderContext(extensions, hideExperimentals, eventTypeFilter, sinkFactory);
+		IChunkLoader chunkLoader = JFRLoader.createChunkLoader(chunkSupplier, context, buffer, ignoreTruncatedChunk);
+		if (chunkLoader == null) {
+			finished = true;
+			if (chunkCount == 0 && !JFRLoader.hasSkippedChunks(chunkSupplier)) {
+				// Recordings without any chunks are not allowed
+				throw new InvalidJfrFileException("No readable chunks in recording"); //$NON-NLS-1$
+			}
+			return null;
+		}
+		try {
+			buffer = chunkLoader.call();
+		} catch (Exception e) {
+			throw JFRLoader.unwrap(e);
+		}
+		++chunkCount;
+		return buildChunk(context, sinkFactory);
+	}
+
+	private T readAhead() throws CouldNotLoadRecordingException, IOException {
+		if (threadPool == null) {
+			threadPool = JFRLoader.createThreadPool(parallelism);
+		}
+		// Chunk data is read sequentially on caller thread, decoding is done in background
+		while (!exhausted && pending.size() < parallelism) {
+			final IEventSinkFactory sinkFactory = createSinkFactory();
+			final LoaderContext context = new LoaderContext(extensions, hideExperimentals, eventTypeFilter,
+					sinkFactory);
+			byte[] chunkBuffer = buffers.poll();
+			final IChunkLoader chunkLoader = JFRLoader.createChunkLoader(chunkSupplier, context,
+					chunkBuffer == null ? new byte[0] : chunkBuffer, ignoreTruncatedChunk);
+			if (chunkLoader == null) {
+				exhausted = true;
+				break;
+			}
+			++chunkCount;
+			pending.add(threadPool.submit(new Callable<T>() {
+
+				@Override
+				public T call() throws Exception {
+					buffers.add(chunkLoader.call());
+					return buildChunk(context, sinkFactory);
+				}
+			}));
+		}
+		Future<T> next = pending.poll();
+		if (next == null) {
+			finished = true;
+			threadPool.shutdown();
+			if (chunkCount == 0 && !JFRLoader.hasSkippedChunks(chunkSupplier)) {
+				// Recordings without any chunks are not allowed
+				throw new InvalidJfrFileException("No readable chunks in recording"); //$NON-NLS-1$
+			}
+			return null;
+		}
+		try {
+			return next.get();
+		} catch (InterruptedException e) {
+			throw new CouldNotLoadRecordingException(e);
+		} catch (ExecutionException e) {
+			throw JFRLoader.unwrap(e.getCause());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		finished = true;
+		buffer = null;
+		if (threadPool != null) {
+			threadPool.shutdownNow();
+			pending.clear();
+			buffers.clear();
+		}
+		stream.close();
+	}
+}
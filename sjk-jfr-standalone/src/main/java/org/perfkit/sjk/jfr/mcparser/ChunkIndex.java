@@ -0,0 +1,272 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmc.common.IPredicate;
+import org.openjdk.jmc.common.io.IOToolkit;
+import org.openjdk.jmc.common.unit.IRange;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.QuantityRange;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+import org.openjdk.jmc.flightrecorder.internal.ChunkInfo;
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+import org.openjdk.jmc.flightrecorder.internal.VersionNotSupportedException;
+import org.openjdk.jmc.flightrecorder.internal.parser.Chunk;
+import org.openjdk.jmc.flightrecorder.internal.parser.v0.ChunkLoaderV0;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.ChunkLoaderV1;
+import org.openjdk.jmc.flightrecorder.parser.synthetic.JdkTypeIDsPreJdk11;
+
+/**
+ * Position, size, time range and event type counts of each chunk of a JFR file.
+ * <p>
+ * Index is kept in a sidecar file next to the recording (<code>recording.jfr.idx</code>), so
+ * chunks could be selected by time range or event types without scanning chunk headers again.
+ * Sidecar is validated against size and {@link IOToolkit#calculateFileHash(File) hash} of the
+ * recording and rebuilt if the recording has changed.
+ * <p>
+ * Event counts are collected by walking event headers, no constants or event values are decoded.
+ * They are not available for JDK 7/8 chunks, such chunks are selected by time range only.
+ */
+public class ChunkIndex {
+
+	private static final Logger LOGGER = Logger.getLogger(ChunkIndex.class.getName());
+
+	static final String SUFFIX = ".idx"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x4A465249; // "JFRI"
+	private static final int FORMAT_VERSION = 1;
+
+	private final long fileSize;
+	private final String fileHash;
+	private final List<ChunkInfo> chunks;
+	// event counts by type identifier per chunk, null if unknown
+	private final List<Map<String, Long>> eventCounts;
+
+	private ChunkIndex(long fileSize, String fileHash, List<ChunkInfo> chunks, List<Map<String, Long>> eventCounts) {
+		this.fileSize = fileSize;
+		this.fileHash = fileHash;
+		this.chunks = chunks;
+		this.eventCounts = eventCounts;
+	}
+
+	/**
+	 * @return sidecar file for the recording
+	 */
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Loads index of the recording from its sidecar file. If there is no valid sidecar, index is
+	 * built and written to the sidecar. Failure to write sidecar is not an error.
+	 */
+	public static ChunkIndex open(File file) throws CouldNotLoadRecordingException, IOException {
+		ChunkIndex index = load(file);
+		if (index == null) {
+			index = build(file);
+			File indexFile = getIndexFile(file);
+			try {
+				index.write(indexFile);
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.INFO, "Could not write chunk index " + indexFile, e); //$NON-NLS-1$
+				indexFile.delete();
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return index read from sidecar file, or {@code null} if there is no sidecar or it does not
+	 *         match the recording
+	 */
+	public static ChunkIndex load(File file) throws IOException {
+		File indexFile = getIndexFile(file);
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		ChunkIndex index;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			index = read(in);
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.INFO, "Ignoring unreadable chunk index " + indexFile, e); //$NON-NLS-1$
+			return null;
+		}
+		if (index == null || index.fileSize != file.length()
+				|| !index.fileHash.equals(IOToolkit.calculateFileHash(file))) {
+			return null;
+		}
+		return index;
+	}
+
+	/**
+	 * Builds index by reading chunk headers and metadata.
+	 */
+	public static ChunkIndex build(File file) throws CouldNotLoadRecordingException, IOException {
+		List<ChunkInfo> chunks = new ArrayList<>();
+		List<Map<String, Long>> eventCounts = new ArrayList<>();
+		long fileSize;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			fileSize = channel.size();
+			byte[] buffer = new byte[0];
+			long position = 0;
+			while (position < fileSize) {
+				Chunk chunk = JFRLoader.openChunk(channel, position, buffer);
+				ChunkInfo info;
+				Map<String, Long> counts = null;
+				switch (chunk.getMajorVersion()) {
+				case JFRLoader.VERSION_0:
+					info = ChunkLoaderV0.getInfo(chunk, position);
+					break;
+				case JFRLoader.VERSION_1:
+				case JFRLoader.VERSION_2:
+					info = ChunkLoaderV1.getInfo(chunk, position);
+					if (position + info.getChunkSize() <= fileSize) {
+						counts = ChunkLoaderV1.getEventCounts(JFRLoader.openChunk(channel, position, buffer));
+					}
+					break;
+				default:
+					throw new VersionNotSupportedException();
+				}
+				if (info.getChunkSize() <= 0) {
+					throw new InvalidJfrFileException("Invalid chunk size at " + position); //$NON-NLS-1$
+				}
+				buffer = chunk.getReusableBuffer();
+				chunks.add(info);
+				eventCounts.add(counts);
+				// truncated chunk is kept in index, so loader handles it as without index
+				position += info.getChunkSize();
+			}
+		}
+		return new ChunkIndex(fileSize, IOToolkit.calculateFileHash(file), chunks, eventCounts);
+	}
+
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	public ChunkInfo getChunkInfo(int chunk) {
+		return chunks.get(chunk);
+	}
+
+	/**
+	 * @return number of events by event type identifier (as found in the recording), or
+	 *         {@code null} if counts are not known for the chunk
+	 */
+	public Map<String, Long> getEventCounts(int chunk) {
+		Map<String, Long> counts = eventCounts.get(chunk);
+		return counts == null ? null : Collections.unmodifiableMap(counts);
+	}
+
+	/**
+	 * @param timeRange
+	 *            time range, {@code null} to select chunks regardless of time
+	 * @param eventTypeFilter
+	 *            predicate on event type identifiers, same as used by loader, {@code null} to select
+	 *            chunks regardless of event types
+	 * @return chunks overlapping with the time range and having events accepted by the filter, in
+	 *         recording order
+	 */
+	public List<ChunkInfo> selectChunks(TimeRangeFilter timeRange, IPredicate<String> eventTypeFilter) {
+		List<ChunkInfo> result = new ArrayList<>();
+		for (int i = 0; i < chunks.size(); i++) {
+			ChunkInfo info = chunks.get(i);
+			if (timeRange != null && !timeRange.overlaps(info.getChunkRange())) {
+				continue;
+			}
+			if (eventTypeFilter != null && !hasEvents(eventCounts.get(i), eventTypeFilter)) {
+				continue;
+			}
+			result.add(info);
+		}
+		return result;
+	}
+
+	private static boolean hasEvents(Map<String, Long> counts, IPredicate<String> eventTypeFilter) {
+		if (counts == null) {
+			return true;
+		}
+		for (String eventType : counts.keySet()) {
+			// filter is applied to current identifiers, as in LoaderContext
+			if (eventTypeFilter.evaluate(JdkTypeIDsPreJdk11.translate(eventType))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void write(File indexFile) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(fileSize);
+			out.writeUTF(fileHash);
+			out.writeInt(chunks.size());
+			for (int i = 0; i < chunks.size(); i++) {
+				ChunkInfo info = chunks.get(i);
+				out.writeLong(info.getChunkPosistion());
+				out.writeLong(info.getChunkSize());
+				out.writeLong(info.getChunkRange().getStart().clampedLongValueIn(UnitLookup.EPOCH_NS));
+				out.writeLong(info.getChunkRange().getEnd().clampedLongValueIn(UnitLookup.EPOCH_NS));
+				Map<String, Long> counts = eventCounts.get(i);
+				out.writeInt(counts == null ? -1 : counts.size());
+				if (counts != null) {
+					for (Map.Entry<String, Long> entry : counts.entrySet()) {
+						out.writeUTF(entry.getKey());
+						out.writeLong(entry.getValue());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return index or {@code null} if data is in other format
+	 */
+	private static ChunkIndex read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			return null;
+		}
+		long fileSize = in.readLong();
+		String fileHash = in.readUTF();
+		int chunkCount = in.readInt();
+		List<ChunkInfo> chunks = new ArrayList<>(chunkCount);
+		List<Map<String, Long>> eventCounts = new ArrayList<>(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			long position = in.readLong();
+			long size = in.readLong();
+			IRange<IQuantity> range = QuantityRange.createWithEnd(UnitLookup.EPOCH_NS.quantity(in.readLong()),
+					UnitLookup.EPOCH_NS.quantity(in.readLong()));
+			chunks.add(new ChunkInfo(position, size, range));
+			int typeCount = in.readInt();
+			Map<String, Long> counts = null;
+			if (typeCount >= 0) {
+				counts = new HashMap<>(typeCount * 2);
+				for (int j = 0; j < typeCount; j++) {
+					counts.put(in.readUTF(), in.readLong());
+				}
+			}
+			eventCounts.add(counts);
+		}
+		return new ChunkIndex(fileSize, fileHash, chunks, eventCounts);
+	}
+}
@@ -0,0 +1,41 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+import org.openjdk.jmc.flightrecorder.internal.EventArray;
+import org.openjdk.jmc.flightrecorder.internal.IChunkSupplier;
+import org.openjdk.jmc.flightrecorder.internal.parser.LoaderContext;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+
+/**
+ * Reads JFR data one chunk at a time, events of each chunk are returned as {@link EventArray}s.
+ *
+ * @see AbstractChunkReader
+ */
+public class ChunkReader extends AbstractChunkReader<EventArray[]> {
+
+	ChunkReader(Closeable stream, IChunkSupplier chunkSupplier, LoaderOptions options) {
+		super(stream, chunkSupplier, options);
+	}
+
+	/**
+	 * @return events of next chunk (one event type per EventArray) or {@code null} if there are no
+	 *         more chunks
+	 */
+	public EventArray[] readNextChunk() throws CouldNotLoadRecordingException, IOException {
+		return readNext();
+	}
+
+	@Override
+	IEventSinkFactory createSinkFactory() {
+		return null;
+	}
+
+	@Override
+	EventArray[] buildChunk(LoaderContext context, IEventSinkFactory sinkFactory)
+			throws CouldNotLoadRecordingException {
+		return context.buildEventArrays();
+	}
+}
@@ -0,0 +1,148 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.openjdk.jmc.common.item.IItem;
+import org.perfkit.sjk.jfr.mcparser.ColumnarEventStore.Cursor;
+import org.perfkit.sjk.jfr.mcparser.ColumnarEventStore.EventTable;
+
+/**
+ * Merges {@link EventTable}s of a {@link ColumnarEventStore} into a single sequence ordered by event
+ * start time, like {@link EventMerger} does for event arrays.
+ * <p>
+ * Segments of a table, one per chunk, are sorted by time when they are completed, see
+ * {@link ColumnarEventStore}. Segments of all tables are then merged, so only a cursor per segment
+ * is kept on heap, regardless of number of events. Events without timestamp are returned first.
+ * Events with equal timestamp keep order of their tables and then recording order.
+ * <p>
+ * Returned items are table cursors, which are valid until next call to {@link #next()}.
+ */
+class ColumnarEventMerger implements Iterator<IItem> {
+
+	private final PriorityQueue<SegmentCursor> queue = new PriorityQueue<>();
+	// returned by last call to next(), advanced on next call
+	private SegmentCursor current;
+
+	public ColumnarEventMerger(List<EventTable> tables) {
+		for (int i = 0; i < tables.size(); ++i) {
+			EventTable table = tables.get(i);
+			for (int s = 0; s < table.getSegmentCount(); s++) {
+				SegmentCursor cursor = new SegmentCursor(table, i, s);
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		advanceCurrent();
+		return !queue.isEmpty();
+	}
+
+	@Override
+	public IItem next() {
+		advanceCurrent();
+		current = queue.poll();
+		if (current == null) {
+			throw new NoSuchElementException();
+		}
+		return current.cursor;
+	}
+
+	private void advanceCurrent() {
+		if (current != null) {
+			if (current.advance()) {
+				queue.add(current);
+			}
+			current = null;
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stable bottom-up merge sort of row numbers by key, ranges which are already in order are not
+	 * merged. Segments are mostly sorted, so this is close to a single pass over the keys.
+	 *
+	 * @return row numbers in key order
+	 */
+	static int[] sortRows(long[] keys) {
+		int count = keys.length;
+		int[] rows = new int[count];
+		for (int i = 0; i < count; i++) {
+			rows[i] = i;
+		}
+		int[] buffer = null;
+		for (int width = 1; width < count; width *= 2) {
+			for (int start = 0; start < count - width; start += 2 * width) {
+				int mid = start + width;
+				if (keys[rows[mid - 1]] > keys[rows[mid]]) {
+					if (buffer == null) {
+						buffer = new int[count];
+					}
+					merge(rows, keys, start, mid, Math.min(mid + width, count), buffer);
+				}
+			}
+		}
+		return rows;
+	}
+
+	private static void merge(int[] rows, long[] keys, int start, int mid, int end, int[] buffer) {
+		// left range is copied out, right range is merged in place
+		System.arraycopy(rows, start, buffer, start, mid - start);
+		int i = start;
+		int j = mid;
+		int k = start;
+		while (i < mid && j < end) {
+			if (keys[rows[j]] < keys[buffer[i]]) {
+				rows[k++] = rows[j++];
+			} else {
+				rows[k++] = buffer[i++];
+			}
+		}
+		System.arraycopy(buffer, i, rows, k, mid - i);
+	}
+
+	private static class SegmentCursor implements Comparable<SegmentCursor> {
+
+		final Cursor cursor;
+		final int order;
+		final int segment;
+		final int size;
+		int position = -1;
+		long timestamp;
+
+		SegmentCursor(EventTable table, int order, int segment) {
+			this.cursor = table.cursor();
+			this.order = order;
+			this.segment = segment;
+			this.size = table.getSegmentSize(segment);
+		}
+
+		boolean advance() {
+			if (++position < size) {
+				cursor.moveToOrdered(segment, position);
+				timestamp = cursor.getTime();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public int compareTo(SegmentCursor o) {
+			int c = Long.compare(timestamp, o.timestamp);
+			if (c == 0) {
+				c = Integer.compare(order, o.order);
+			}
+			return c != 0 ? c : Integer.compare(segment, o.segment);
+		}
+	}
+}
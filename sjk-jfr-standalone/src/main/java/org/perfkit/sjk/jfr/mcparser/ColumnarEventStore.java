@@ -0,0 +1,939 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmc.common.IDisplayable;
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.item.IType;
+import org.openjdk.jmc.common.unit.ContentType;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.IUnit;
+import org.openjdk.jmc.common.unit.StructContentType;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.JfrAttributes;
+import org.openjdk.jmc.flightrecorder.internal.parser.LoaderContext;
+import org.openjdk.jmc.flightrecorder.parser.IEventSink;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+import org.openjdk.jmc.flightrecorder.parser.ValueField;
+
+/**
+ * Terminal event sink factory, which keeps events in columns rather than as item objects.
+ * <p>
+ * Events of each type are stored in a {@link EventTable}, one segment per chunk. Each field is a
+ * column of a segment: quantities as a primitive {@code long[]} or {@code double[]} in the unit of
+ * the column, and other values (threads, classes, stack traces, strings) as {@code int} ids into a
+ * dictionary of distinct values. A column falls back to plain references if its values do not fit
+ * (e.g. null or mixed unit quantities, or too many distinct values for a dictionary to pay off).
+ * <p>
+ * Events are read through {@link Cursor}, a flyweight item moved over the rows of a table. Event
+ * type of a table has the same attributes and accessors as the type of an
+ * {@link org.openjdk.jmc.flightrecorder.internal.EventArray EventArray}, so accessor based code
+ * works with cursors as long as it does not retain them. Quantities are created on access.
+ * <p>
+ * Optionally, primitive columns are spilled to a memory mapped temporary file as chunks are
+ * decoded, see {@link #ColumnarEventStore(File)}, so recordings larger than heap could be loaded.
+ * Only dictionaries, reference columns and offsets of spilled blocks stay on heap.
+ * <p>
+ * Events are kept in the order they were added, not sorted by time. When a segment is complete,
+ * its time order is computed, so that {@link ColumnarEventMerger} merges sorted segments without
+ * sorting whole tables. {@link #flush()} must be called once all events have been added and before
+ * events are read.
+ */
+public class ColumnarEventStore implements IEventSinkFactory, Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(ColumnarEventStore.class.getName());
+
+	private final Map<String, EventTable> eventTables = new LinkedHashMap<>();
+	private final SpillFile spill;
+	// strings are not always pooled by the loader, equal strings could be distinct objects
+	private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+	// segments being filled by chunk loading thread
+	private final ThreadLocal<List<Segment>> openSegments = new ThreadLocal<List<Segment>>() {
+
+		@Override
+		protected List<Segment> initialValue() {
+			return new ArrayList<>();
+		}
+	};
+
+	/**
+	 * Creates store keeping all events on heap.
+	 */
+	public ColumnarEventStore() {
+		this.spill = null;
+	}
+
+	/**
+	 * Creates store keeping numeric values and dictionary ids in a memory mapped temporary file, so
+	 * that heap usage does not grow with number of events. Such store must be {@link #close()
+	 * closed} once events are no longer read.
+	 *
+	 * @param spillDirectory
+	 *            directory for temporary file, {@code null} for default temporary directory
+	 */
+	public ColumnarEventStore(File spillDirectory) throws IOException {
+		this.spill = new SpillFile(spillDirectory);
+	}
+
+	@Override
+	public IEventSink create(
+		String identifier, String label, String[] category, String description, List<ValueField> dataStructure) {
+		synchronized (eventTables) {
+			EventTable table = eventTables.get(identifier);
+			if (table == null) {
+				table = new EventTable(identifier, label, category, description, dataStructure);
+				eventTables.put(identifier, table);
+			} else {
+				while (!table.isCompatibleWith(dataStructure)) {
+					if (table.next == null) {
+						table.next = new EventTable(identifier + UUID.randomUUID().toString(), label, category,
+								description, dataStructure);
+						LOGGER.log(Level.WARNING, MessageFormat.format(
+								"Created new event table for {0} because the fields did not match those of the previously created one. New identifier is {1}", //$NON-NLS-1$
+								identifier, table.next.eventType.getIdentifier()));
+					}
+					table = table.next;
+				}
+			}
+			Segment segment = table.createSegment(this);
+			openSegments.get().add(segment);
+			return segment;
+		}
+	}
+
+	private String canonical(String value) {
+		String existing = strings.putIfAbsent(value, value);
+		return existing == null ? value : existing;
+	}
+
+	/**
+	 * Completes segments created by current thread, which has finished loading a chunk. Remaining
+	 * values of spilled segments are written out and heap buffers are released, rather than being
+	 * kept until {@link #flush()}.
+	 */
+	void completeSegments() {
+		List<Segment> segments = openSegments.get();
+		for (Segment segment : segments) {
+			segment.trim();
+		}
+		segments.clear();
+	}
+
+	/**
+	 * Completes all tables, events added afterwards are not visible.
+	 */
+	@Override
+	public void flush() {
+		synchronized (eventTables) {
+			for (EventTable table : eventTables.values()) {
+				for (; table != null; table = table.next) {
+					table.complete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return tables of all event types, including types without events
+	 */
+	public List<EventTable> getEventTables() {
+		synchronized (eventTables) {
+			List<EventTable> result = new ArrayList<>();
+			for (EventTable table : eventTables.values()) {
+				for (; table != null; table = table.next) {
+					result.add(table);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * @return table of event type with given identifier, or {@code null} if there is none
+	 */
+	public EventTable getEventTable(String identifier) {
+		synchronized (eventTables) {
+			return eventTables.get(identifier);
+		}
+	}
+
+	/**
+	 * @return total number of events in all tables
+	 */
+	public long getEventCount() {
+		long count = 0;
+		for (EventTable table : getEventTables()) {
+			count += table.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return bytes of event data kept outside of heap
+	 */
+	public long getSpilledSize() {
+		return spill == null ? 0 : spill.size();
+	}
+
+	/**
+	 * Releases temporary file if there is one, events must not be read afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (spill != null) {
+			spill.close();
+		}
+	}
+
+	/**
+	 * Events of one type.
+	 */
+	public static class EventTable {
+
+		private final StructContentType<IItem> eventType;
+		private final String[] category;
+		private final List<ValueField> dataStructure;
+		// column of event time, start time or end time for events without start time, -1 if none
+		private final int timeField;
+		private final List<Segment> segments = new ArrayList<>();
+		private EventTable next; // Event types with the same original identifier but other fields
+
+		private boolean complete;
+		private Segment[] segmentArray;
+		// index of first row of each segment
+		private long[] offsets;
+		private long size;
+
+		EventTable(String identifier, String label, String[] category, String description,
+				List<ValueField> dataStructure) {
+			this.eventType = new StructContentType<>(identifier, label, description);
+			this.category = category;
+			this.dataStructure = dataStructure;
+			for (int i = 0; i < dataStructure.size(); i++) {
+				ValueField vf = dataStructure.get(i);
+				addField(vf.getIdentifier(), vf.getContentType(), vf.getName(), vf.getDescription(),
+						new ColumnAccessor(i));
+			}
+			int startTime = getFieldIndex(JfrAttributes.START_TIME.getIdentifier());
+			this.timeField = startTime >= 0 ? startTime : getFieldIndex(JfrAttributes.END_TIME.getIdentifier());
+		}
+
+		@SuppressWarnings("unchecked")
+		private <M> void addField(
+			String identifier, ContentType<M> contentType, String name, String desc, ColumnAccessor accessor) {
+			eventType.addField(identifier, contentType, name, desc, (IMemberAccessor<M, IItem>) accessor);
+		}
+
+		private boolean isCompatibleWith(List<ValueField> fields) {
+			if (dataStructure.size() == fields.size()) {
+				for (int i = 0; i < dataStructure.size(); i++) {
+					ValueField vf1 = dataStructure.get(i);
+					ValueField vf2 = fields.get(i);
+					if (!vf1.getIdentifier().equals(vf2.getIdentifier())
+							|| !vf1.getContentType().equals(vf2.getContentType())) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return false;
+		}
+
+		private synchronized Segment createSegment(ColumnarEventStore store) {
+			Segment segment = new Segment(dataStructure.size(), timeField, store);
+			segments.add(segment);
+			return segment;
+		}
+
+		private synchronized void complete() {
+			if (complete) {
+				return;
+			}
+			complete = true;
+			LoaderContext.addExtraAttributes(eventType);
+			List<Segment> nonEmpty = new ArrayList<>(segments.size());
+			for (Segment segment : segments) {
+				if (segment.size > 0) {
+					segment.trim();
+					nonEmpty.add(segment);
+				}
+			}
+			segmentArray = nonEmpty.toArray(new Segment[nonEmpty.size()]);
+			offsets = new long[segmentArray.length];
+			for (int i = 0; i < segmentArray.length; i++) {
+				offsets[i] = size;
+				size += segmentArray[i].size;
+			}
+			segments.clear();
+		}
+
+		private void checkComplete() {
+			if (!complete) {
+				throw new IllegalStateException("Events are still being added"); //$NON-NLS-1$
+			}
+		}
+
+		public IType<IItem> getType() {
+			return eventType;
+		}
+
+		public String[] getCategory() {
+			return category;
+		}
+
+		/**
+		 * @return event fields, in column order
+		 */
+		public List<ValueField> getFields() {
+			return dataStructure;
+		}
+
+		/**
+		 * @return column index of field with given identifier, or -1 if there is no such field
+		 */
+		public int getFieldIndex(String identifier) {
+			for (int i = 0; i < dataStructure.size(); i++) {
+				if (dataStructure.get(i).getIdentifier().equals(identifier)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return number of events
+		 */
+		public synchronized long size() {
+			checkComplete();
+			return size;
+		}
+
+		/**
+		 * @return number of segments with events, events of a segment were loaded from one chunk
+		 */
+		synchronized int getSegmentCount() {
+			checkComplete();
+			return segmentArray.length;
+		}
+
+		/**
+		 * @return number of events in a segment
+		 */
+		int getSegmentSize(int segment) {
+			return segmentArray[segment].size;
+		}
+
+		/**
+		 * @return cursor positioned before the first event
+		 */
+		public synchronized Cursor cursor() {
+			checkComplete();
+			return new Cursor(this);
+		}
+
+		/**
+		 * @return item for an event, which could be retained as it is not moved to other events
+		 */
+		public IItem getItem(long index) {
+			Cursor cursor = cursor();
+			cursor.moveTo(index);
+			return cursor;
+		}
+	}
+
+	/**
+	 * Flyweight item, which is moved over events of a table.
+	 */
+	public static final class Cursor implements IItem {
+
+		private final EventTable table;
+		private long index = -1;
+		private int segmentIndex = -1;
+		private Segment segment;
+		private int row;
+
+		Cursor(EventTable table) {
+			this.table = table;
+		}
+
+		@Override
+		public IType<IItem> getType() {
+			return table.eventType;
+		}
+
+		/**
+		 * @return index of current event in table
+		 */
+		public long getIndex() {
+			return index;
+		}
+
+		/**
+		 * Moves to the next event.
+		 *
+		 * @return {@code false} if there are no more events
+		 */
+		public boolean next() {
+			if (index + 1 >= table.size) {
+				return false;
+			}
+			index++;
+			row++;
+			while (segment == null || row >= segment.size) {
+				segment = table.segmentArray[++segmentIndex];
+				row = 0;
+			}
+			return true;
+		}
+
+		/**
+		 * Moves to an event.
+		 */
+		public void moveTo(long index) {
+			if (index < 0 || index >= table.size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + table.size); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			int s = Arrays.binarySearch(table.offsets, index);
+			if (s < 0) {
+				s = -s - 2;
+			}
+			this.index = index;
+			segmentIndex = s;
+			segment = table.segmentArray[s];
+			row = (int) (index - table.offsets[s]);
+		}
+
+		/**
+		 * Moves to an event of a segment in time order.
+		 *
+		 * @param position
+		 *            position of the event in time order of segment events
+		 */
+		void moveToOrdered(int segmentIndex, int position) {
+			this.segmentIndex = segmentIndex;
+			segment = table.segmentArray[segmentIndex];
+			row = segment.row(position);
+			index = table.offsets[segmentIndex] + row;
+		}
+
+		/**
+		 * @return time of current event in epoch nanoseconds, {@link Long#MIN_VALUE} if it has none
+		 */
+		long getTime() {
+			return segment.time(row);
+		}
+
+		/**
+		 * @return value of a field of current event, quantities are created on each call
+		 */
+		public Object getValue(int field) {
+			return segment.columns[field].get(row);
+		}
+
+		/**
+		 * @return numeric value of a quantity field of current event, in the unit of the quantity
+		 */
+		public long getLong(int field) {
+			Column column = segment.columns[field];
+			if (column instanceof LongColumn) {
+				return ((LongColumn) column).values.get(row);
+			}
+			return ((IQuantity) column.get(row)).longValue();
+		}
+
+		/**
+		 * @return numeric value of a quantity field of current event, in the unit of the quantity
+		 */
+		public double getDouble(int field) {
+			Column column = segment.columns[field];
+			if (column instanceof DoubleColumn) {
+				return ((DoubleColumn) column).getDouble(row);
+			}
+			return ((IQuantity) column.get(row)).doubleValue();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(table.eventType.toString());
+			for (int i = 0; i < segment.columns.length; i++) {
+				Object o = getValue(i);
+				sb.append(' ');
+				sb.append(o instanceof IQuantity ? ((IQuantity) o).displayUsing(IDisplayable.AUTO) : String.valueOf(o));
+			}
+			return sb.toString();
+		}
+	}
+
+	private static final class ColumnAccessor implements IMemberAccessor<Object, IItem> {
+
+		private final int field;
+
+		ColumnAccessor(int field) {
+			this.field = field;
+		}
+
+		@Override
+		public Object getMember(IItem item) {
+			return ((Cursor) item).getValue(field);
+		}
+	}
+
+	/**
+	 * Events of one type from one chunk. Events are added from the single thread loading the chunk.
+	 */
+	private static class Segment implements IEventSink {
+
+		private final ColumnarEventStore store;
+		private final int timeField;
+		final Column[] columns;
+		int size;
+		private boolean trimmed;
+		// rows in time order, null if rows were added in time order
+		private Store order;
+
+		Segment(int fieldCount, int timeField, ColumnarEventStore store) {
+			this.store = store;
+			this.timeField = timeField;
+			columns = new Column[fieldCount];
+		}
+
+		@Override
+		public void addEvent(Object[] values) {
+			for (int i = 0; i < columns.length; i++) {
+				Object value = values[i];
+				if (value instanceof String) {
+					value = store.canonical((String) value);
+				}
+				Column column = columns[i];
+				if (column == null) {
+					column = Column.create(value, store);
+				}
+				columns[i] = column.add(size, value);
+			}
+			size++;
+		}
+
+		void trim() {
+			if (trimmed) {
+				return;
+			}
+			trimmed = true;
+			for (Column column : columns) {
+				if (column != null) {
+					column.trim(size);
+				}
+			}
+			sortByTime();
+		}
+
+		/**
+		 * Computes time order of rows, usually on the thread which has loaded the segment. Row
+		 * order is stored like other columns, nothing is kept if rows are already in order. Events
+		 * with equal time keep the order they were added in.
+		 */
+		private void sortByTime() {
+			if (timeField < 0 || size < 2) {
+				return;
+			}
+			long[] times = new long[size];
+			boolean sorted = true;
+			for (int i = 0; i < size; i++) {
+				times[i] = time(i);
+				sorted &= i == 0 || times[i - 1] <= times[i];
+			}
+			if (sorted) {
+				return;
+			}
+			int[] rows = ColumnarEventMerger.sortRows(times);
+			order = Store.create(store.spill, false);
+			for (int i = 0; i < size; i++) {
+				order.add(i, rows[i]);
+			}
+			order.trim(size);
+		}
+
+		/**
+		 * @return row at position in time order
+		 */
+		int row(int position) {
+			return order == null ? position : (int) order.get(position);
+		}
+
+		long time(int row) {
+			Object time = timeField < 0 ? null : columns[timeField].get(row);
+			return time instanceof IQuantity ? ((IQuantity) time).clampedLongValueIn(UnitLookup.EPOCH_NS)
+					: Long.MIN_VALUE;
+		}
+	}
+
+	private abstract static class Column {
+
+		/**
+		 * @return column for values like the first value of a segment
+		 */
+		static Column create(Object value, ColumnarEventStore store) {
+			SpillFile spill = store.spill;
+			if (value instanceof IQuantity) {
+				IQuantity quantity = (IQuantity) value;
+				IUnit unit = quantity.getUnit();
+				// column recreates quantities from unit, which must result in the same kind of quantity
+				if (quantity.numberValue() instanceof Double) {
+					if (unit.quantity(quantity.doubleValue()).getClass() == quantity.getClass()) {
+						return new DoubleColumn(unit, quantity.getClass(), Store.create(spill, true));
+					}
+				} else if (unit.quantity(quantity.longValue()).getClass() == quantity.getClass()) {
+					return new LongColumn(unit, quantity.getClass(), Store.create(spill, true));
+				}
+				return new ObjectColumn();
+			}
+			return new DictionaryColumn(Store.create(spill, false));
+		}
+
+		/**
+		 * Adds value at row, which is the number of rows added before.
+		 *
+		 * @return column to add further values to, which is this column or one it has been converted
+		 *         to if value does not fit
+		 */
+		abstract Column add(int row, Object value);
+
+		abstract Object get(int row);
+
+		/**
+		 * Releases storage not needed for reading.
+		 */
+		abstract void trim(int size);
+
+		Column toObjectColumn(int row, Object value) {
+			ObjectColumn column = new ObjectColumn();
+			for (int i = 0; i < row; i++) {
+				column.add(i, get(i));
+			}
+			return column.add(row, value);
+		}
+	}
+
+	private static final class LongColumn extends Column {
+
+		private final IUnit unit;
+		private final Class<?> quantityClass;
+		final Store values;
+
+		LongColumn(IUnit unit, Class<?> quantityClass, Store values) {
+			this.unit = unit;
+			this.quantityClass = quantityClass;
+			this.values = values;
+		}
+
+		@Override
+		Column add(int row, Object value) {
+			if (value == null || value.getClass() != quantityClass || ((IQuantity) value).getUnit() != unit) {
+				return toObjectColumn(row, value);
+			}
+			values.add(row, ((IQuantity) value).longValue());
+			return this;
+		}
+
+		@Override
+		Object get(int row) {
+			return unit.quantity(values.get(row));
+		}
+
+		@Override
+		void trim(int size) {
+			values.trim(size);
+		}
+	}
+
+	private static final class DoubleColumn extends Column {
+
+		private final IUnit unit;
+		private final Class<?> quantityClass;
+		// raw bits of values
+		final Store values;
+
+		DoubleColumn(IUnit unit, Class<?> quantityClass, Store values) {
+			this.unit = unit;
+			this.quantityClass = quantityClass;
+			this.values = values;
+		}
+
+		@Override
+		Column add(int row, Object value) {
+			if (value == null || value.getClass() != quantityClass || ((IQuantity) value).getUnit() != unit) {
+				return toObjectColumn(row, value);
+			}
+			values.add(row, Double.doubleToRawLongBits(((IQuantity) value).doubleValue()));
+			return this;
+		}
+
+		double getDouble(int row) {
+			return Double.longBitsToDouble(values.get(row));
+		}
+
+		@Override
+		Object get(int row) {
+			return unit.quantity(getDouble(row));
+		}
+
+		@Override
+		void trim(int size) {
+			values.trim(size);
+		}
+	}
+
+	/**
+	 * Ids of values in a dictionary. Values are compared by identity, constants of a recording are
+	 * already canonicalized by the loader or the store. Dictionary is always kept on heap.
+	 */
+	private static final class DictionaryColumn extends Column {
+
+		// above this number of distinct values, column is converted if most values are distinct
+		private static final int MIN_DICTIONARY_SIZE = 256;
+		private static final int NULL_ID = -1;
+
+		private final Store ids;
+		private Object[] dictionary = new Object[Store.INITIAL_CAPACITY];
+		private int dictionarySize;
+		private IdentityHashMap<Object, Integer> idByValue = new IdentityHashMap<>();
+
+		DictionaryColumn(Store ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		Column add(int row, Object value) {
+			int id = NULL_ID;
+			if (value != null) {
+				Integer existing = idByValue.get(value);
+				if (existing != null) {
+					id = existing;
+				} else {
+					if (dictionarySize >= MIN_DICTIONARY_SIZE && dictionarySize * 2 > row) {
+						return toObjectColumn(row, value);
+					}
+					if (dictionarySize == dictionary.length) {
+						dictionary = Arrays.copyOf(dictionary, Store.grow(dictionary.length));
+					}
+					id = dictionarySize++;
+					dictionary[id] = value;
+					idByValue.put(value, id);
+				}
+			}
+			ids.add(row, id);
+			return this;
+		}
+
+		@Override
+		Object get(int row) {
+			int id = (int) ids.get(row);
+			return id == NULL_ID ? null : dictionary[id];
+		}
+
+		@Override
+		void trim(int size) {
+			ids.trim(size);
+			dictionary = Arrays.copyOf(dictionary, dictionarySize);
+			idByValue = null;
+		}
+	}
+
+	/**
+	 * Plain references, always kept on heap.
+	 */
+	private static final class ObjectColumn extends Column {
+
+		private Object[] values = new Object[Store.INITIAL_CAPACITY];
+
+		@Override
+		Column add(int row, Object value) {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, Store.grow(values.length));
+			}
+			values[row] = value;
+			return this;
+		}
+
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+
+		@Override
+		void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Append only storage of primitive column values.
+	 */
+	private abstract static class Store {
+
+		static final int INITIAL_CAPACITY = 16;
+
+		/**
+		 * @param spill
+		 *            file to store values in, or {@code null} to keep them on heap
+		 * @param wide
+		 *            {@code true} for 64 bit values, otherwise values are 32 bit
+		 */
+		static Store create(SpillFile spill, boolean wide) {
+			if (spill != null) {
+				return new SpilledStore(spill, wide ? 8 : 4);
+			}
+			return wide ? new LongStore() : new IntStore();
+		}
+
+		static int grow(int length) {
+			return Math.max(INITIAL_CAPACITY, length + (length >> 1));
+		}
+
+		/**
+		 * Adds value at row, which is the number of rows added before.
+		 */
+		abstract void add(int row, long value);
+
+		abstract long get(int row);
+
+		abstract void trim(int size);
+	}
+
+	private static final class LongStore extends Store {
+
+		private long[] values = new long[INITIAL_CAPACITY];
+
+		@Override
+		void add(int row, long value) {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[row] = value;
+		}
+
+		@Override
+		long get(int row) {
+			return values[row];
+		}
+
+		@Override
+		void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+	private static final class IntStore extends Store {
+
+		private int[] values = new int[INITIAL_CAPACITY];
+
+		@Override
+		void add(int row, long value) {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			values[row] = (int) value;
+		}
+
+		@Override
+		long get(int row) {
+			return values[row];
+		}
+
+		@Override
+		void trim(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Values are collected on heap in blocks of {@link #BLOCK_ROWS} rows, each full block is written
+	 * to the spill file, and so is the last partial block when the segment is complete. Rows are
+	 * read from the mapped file on access.
+	 */
+	private static final class SpilledStore extends Store {
+
+		private static final int BLOCK_SHIFT = 10;
+		private static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+
+		private final SpillFile spill;
+		private final int width;
+		private long[] blockOffsets = new long[1];
+		private int spilledBlocks;
+		// rows of the block being filled
+		private long[] buffer = new long[INITIAL_CAPACITY];
+
+		SpilledStore(SpillFile spill, int width) {
+			this.spill = spill;
+			this.width = width;
+		}
+
+		@Override
+		void add(int row, long value) {
+			int index = row & (BLOCK_ROWS - 1);
+			if (index == buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.min(BLOCK_ROWS, grow(buffer.length)));
+			}
+			buffer[index] = value;
+			if (index == BLOCK_ROWS - 1) {
+				writeBlock(BLOCK_ROWS);
+			}
+		}
+
+		private void writeBlock(int rows) {
+			long offset = spill.allocate(rows * width);
+			ByteBuffer region = spill.region(offset);
+			int position = SpillFile.index(offset);
+			if (width == 8) {
+				for (int i = 0; i < rows; i++) {
+					region.putLong(position + i * 8, buffer[i]);
+				}
+			} else {
+				for (int i = 0; i < rows; i++) {
+					region.putInt(position + i * 4, (int) buffer[i]);
+				}
+			}
+			if (spilledBlocks == blockOffsets.length) {
+				blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+			}
+			blockOffsets[spilledBlocks++] = offset;
+		}
+
+		@Override
+		long get(int row) {
+			int block = row >>> BLOCK_SHIFT;
+			int index = row & (BLOCK_ROWS - 1);
+			if (block >= spilledBlocks) {
+				return buffer[index];
+			}
+			long offset = blockOffsets[block] + index * width;
+			ByteBuffer region = spill.region(offset);
+			return width == 8 ? region.getLong(SpillFile.index(offset)) : region.getInt(SpillFile.index(offset));
+		}
+
+		@Override
+		void trim(int size) {
+			int rows = size - spilledBlocks * BLOCK_ROWS;
+			if (rows > 0) {
+				writeBlock(rows);
+			}
+			buffer = null;
+			blockOffsets = Arrays.copyOf(blockOffsets, spilledBlocks);
+		}
+	}
+}
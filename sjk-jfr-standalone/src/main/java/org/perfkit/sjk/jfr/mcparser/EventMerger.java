@@ -0,0 +1,96 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.item.IType;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.JfrAttributes;
+import org.openjdk.jmc.flightrecorder.internal.EventArray;
+
+/**
+ * Merges sorted {@link EventArray}s into a single sequence ordered by event start time.
+ * <p>
+ * Events without timestamp are returned first. Events with equal timestamp keep order of their
+ * arrays.
+ */
+class EventMerger implements Iterator<IItem> {
+
+	private final PriorityQueue<Cursor> queue = new PriorityQueue<>();
+
+	public EventMerger(EventArray[] arrays) {
+		for (int i = 0; i < arrays.length; ++i) {
+			IItem[] events = arrays[i].getEvents();
+			if (events.length > 0) {
+				queue.add(new Cursor(events, getTimeAccessor(arrays[i].getType()), i));
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !queue.isEmpty();
+	}
+
+	@Override
+	public IItem next() {
+		Cursor cursor = queue.poll();
+		if (cursor == null) {
+			throw new NoSuchElementException();
+		}
+		IItem event = cursor.events[cursor.index];
+		if (cursor.advance()) {
+			queue.add(cursor);
+		}
+		return event;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private static IMemberAccessor<IQuantity, IItem> getTimeAccessor(IType<IItem> type) {
+		IMemberAccessor<IQuantity, IItem> accessor = JfrAttributes.START_TIME.getAccessor(type);
+		return accessor != null ? accessor : JfrAttributes.END_TIME.getAccessor(type);
+	}
+
+	private static class Cursor implements Comparable<Cursor> {
+
+		final IItem[] events;
+		final IMemberAccessor<IQuantity, IItem> timeAccessor;
+		final int order;
+		int index;
+		long timestamp;
+
+		Cursor(IItem[] events, IMemberAccessor<IQuantity, IItem> timeAccessor, int order) {
+			this.events = events;
+			this.timeAccessor = timeAccessor;
+			this.order = order;
+			this.timestamp = timestamp(events[0]);
+		}
+
+		boolean advance() {
+			if (++index < events.length) {
+				timestamp = timestamp(events[index]);
+				return true;
+			}
+			return false;
+		}
+
+		private long timestamp(IItem event) {
+			IQuantity time = timeAccessor == null ? null : timeAccessor.getMember(event);
+			return time == null ? Long.MIN_VALUE : time.clampedLongValueIn(UnitLookup.EPOCH_NS);
+		}
+
+		@Override
+		public int compareTo(Cursor o) {
+			int c = Long.compare(timestamp, o.timestamp);
+			return c != 0 ? c : Integer.compare(order, o.order);
+		}
+	}
+}
@@ -1,25 +1,118 @@
 package org.perfkit.sjk.jfr.mcparser;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
 
+import org.gridkit.jvmtool.spi.parsers.FileInputStreamSource;
 import org.gridkit.jvmtool.spi.parsers.InputStreamSource;
 
+/**
+ * Opens dump data, compression is detected in a single pass over the stream.
+ * <p>
+ * Modules share no code, keep detection in sync with the IOHelper twins in sjk-jfr5 and sjk-jfr6.
+ */
 class IOHelper {
-	
+
+	private static final int BUFFER_SIZE = 64 << 10;
+
+	enum Compression {
+		NONE(),
+		GZIP(0x1F, 0x8B),
+		ZIP('P', 'K', 3, 4);
+
+		private final int[] magic;
+
+		Compression(int... magic) {
+			this.magic = magic;
+		}
+
+		boolean matches(byte[] header, int length) {
+			if (magic.length == 0 || length < magic.length) {
+				return false;
+			}
+			for (int i = 0; i < magic.length; i++) {
+				if ((header[i] & 0xFF) != magic[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
 	public static InputStream openFlatOrCommpressedStream(InputStreamSource iss) throws IOException {
-		
+		return openUncompressedStream(iss.open());
+	}
+
+	/**
+	 * Detects compression by leading magic bytes, stream is read only once. Compressed data is
+	 * decompressed ahead on a separate thread, see {@link ReadAheadInputStream}.
+	 *
+	 * @return buffered stream of uncompressed data
+	 * @throws IOException
+	 *             if compressed data cannot be read, the stream is closed then
+	 */
+	public static InputStream openUncompressedStream(InputStream stream) throws IOException {
+		InputStream in = new BufferedInputStream(stream, BUFFER_SIZE);
 		try {
-			GZIPInputStream gis = new GZIPInputStream(iss.open());
-			gis.read();
-			gis.close();
-			return new GZIPInputStream(iss.open());
+			in.mark(4);
+			Compression compression = detectCompression(in);
+			in.reset();
+			switch (compression) {
+			case GZIP:
+				return new ReadAheadInputStream(new GZIPInputStream(in, BUFFER_SIZE));
+			case ZIP:
+				ZipInputStream zip = new ZipInputStream(in);
+				if (zip.getNextEntry() == null) {
+					throw new IOException("ZIP archive is empty");
+				}
+				return new ReadAheadInputStream(zip);
+			default:
+				return in;
+			}
+		}
+		catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return underlying file if source is a plain (not compressed) file, <code>null</code> otherwise
+	 */
+	public static File getUncompressedFile(InputStreamSource iss) throws IOException {
+		if (!(iss instanceof FileInputStreamSource)) {
+			return null;
+		}
+		File file = ((FileInputStreamSource) iss).getSourceFile();
+		InputStream is = new FileInputStream(file);
+		try {
+			return detectCompression(is) == Compression.NONE ? file : null;
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	private static Compression detectCompression(InputStream in) throws IOException {
+		byte[] header = new byte[4];
+		int length = 0;
+		while (length < header.length) {
+			int n = in.read(header, length, header.length - length);
+			if (n < 0) {
+				break;
+			}
+			length += n;
 		}
-		catch(IOException e) {
-			// stream is probably not compressed
+		for (Compression compression : Compression.values()) {
+			if (compression.matches(header, length)) {
+				return compression;
+			}
 		}
-		
-		return iss.open();		
+		return Compression.NONE;
 	}
 }
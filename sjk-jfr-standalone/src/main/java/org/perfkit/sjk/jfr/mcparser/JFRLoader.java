@@ -1,14 +1,31 @@
 package org.perfkit.sjk.jfr.mcparser;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.openjdk.jmc.flightrecorder.internal.ChunkInfo;
 import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.internal.EventArray;
 import org.openjdk.jmc.flightrecorder.internal.IChunkLoader;
@@ -20,20 +37,19 @@ import org.openjdk.jmc.flightrecorder.internal.parser.LoaderContext;
 import org.openjdk.jmc.flightrecorder.internal.parser.v0.ChunkLoaderV0;
 import org.openjdk.jmc.flightrecorder.internal.parser.v1.ChunkLoaderV1;
 import org.openjdk.jmc.flightrecorder.parser.IParserExtension;
-import org.openjdk.jmc.flightrecorder.parser.ParserExtensionRegistry;
 
 public class JFRLoader {
 
 	private static final Logger LOGGER = Logger.getLogger(JFRLoader.class.getName());
-	private static final short VERSION_0 = 0; // JDK7 & JDK8
-	private static final short VERSION_1 = 1; // JDK9 & JDK10
-	private static final short VERSION_2 = 2; // JDK11
+	static final short VERSION_0 = 0; // JDK7 & JDK8
+	static final short VERSION_1 = 1; // JDK9 & JDK10
+	static final short VERSION_2 = 2; // JDK11
 	private static final byte[] FLIGHT_RECORDER_MAGIC = {'F', 'L', 'R', '\0'};
 
 	public static EventArray[] loadStream(InputStream stream, boolean hideExperimentals, boolean ignoreTruncatedChunk)
 			throws CouldNotLoadRecordingException, IOException {
-		return loadStream(stream, ParserExtensionRegistry.getParserExtensions(), hideExperimentals,
-				ignoreTruncatedChunk);
+		return loadStream(stream,
+				new LoaderOptions().hideExperimentals(hideExperimentals).ignoreTruncatedChunk(ignoreTruncatedChunk));
 	}
 
 	/**
@@ -51,24 +67,313 @@ public class JFRLoader {
 	public static EventArray[] loadStream(
 		InputStream stream, List<? extends IParserExtension> extensions, boolean hideExperimentals,
 		boolean ignoreTruncatedChunk) throws CouldNotLoadRecordingException, IOException {
-		return readChunks(extensions, createChunkSupplier(stream), hideExperimentals, ignoreTruncatedChunk);
+		return loadStream(stream, new LoaderOptions().extensions(extensions).hideExperimentals(hideExperimentals)
+				.ignoreTruncatedChunk(ignoreTruncatedChunk));
 	}
 
-	private static IChunkSupplier createChunkSupplier(final InputStream input)
+	/**
+	 * Read events from an input stream of JFR data. If options have a time range, chunks outside of
+	 * the range are skipped without being decoded.
+	 *
+	 * @param stream
+	 *            input stream
+	 * @return an array of EventArrays (one event type per EventArray)
+	 */
+	public static EventArray[] loadStream(InputStream stream, LoaderOptions options)
+			throws CouldNotLoadRecordingException, IOException {
+		return readChunks(options, createChunkSupplier(stream, options.getTimeRange()));
+	}
+
+	/**
+	 * Open JFR data for chunk by chunk reading. Only the chunk currently being read is kept in
+	 * memory, so memory footprint is bounded by the largest chunk rather than the whole recording.
+	 * Chunks are decoded ahead concurrently up to parallelism of options, they are still returned in
+	 * recording order.
+	 *
+	 * @param stream
+	 *            input stream, it would be closed together with returned reader
+	 * @return a reader producing an array of EventArrays per chunk
+	 */
+	public static ChunkReader openStream(InputStream stream, LoaderOptions options)
+			throws CouldNotLoadRecordingException, IOException {
+		return new ChunkReader(stream, createChunkSupplier(stream, options.getTimeRange()), options);
+	}
+
+	/**
+	 * Read events from a JFR file. Chunk data is accessed through memory mapping of the file
+	 * instead of being copied to heap. Only chunks overlapping with the time range of options are
+	 * read.
+	 *
+	 * @param file
+	 *            uncompressed JFR file
+	 * @param index
+	 *            chunk index of the file, {@code null} to locate chunks by their headers. With an index
+	 *            only chunks which have events accepted by the event type filter are read, chunk
+	 *            headers are not scanned.
+	 * @return an array of EventArrays (one event type per EventArray)
+	 */
+	public static EventArray[] loadFile(File file, ChunkIndex index, LoaderOptions options)
+			throws CouldNotLoadRecordingException, IOException {
+		// mappings stay valid after channel is closed, they are released once buffers are collected
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return readChunks(options, createChunkSupplier(channel, options, index));
+		}
+	}
+
+	/**
+	 * Open a JFR file for chunk by chunk reading. Chunk data is accessed through memory mapping of
+	 * the file instead of being copied to heap.
+	 *
+	 * @see #openStream(InputStream, LoaderOptions)
+	 * @see #loadFile(File, ChunkIndex, LoaderOptions)
+	 */
+	public static ChunkReader openFile(File file, ChunkIndex index, LoaderOptions options)
+			throws CouldNotLoadRecordingException, IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return new ChunkReader(channel, createChunkSupplier(channel, options, index), options);
+	}
+
+	/**
+	 * Read events from an input stream of JFR data into columnar storage, see
+	 * {@link ColumnarEventStore}. If options have a spill directory, columns are backed by a
+	 * temporary file there, so that events do not have to fit in heap. Returned store should be
+	 * closed to release the file.
+	 *
+	 * @see #loadStream(InputStream, LoaderOptions)
+	 */
+	public static ColumnarEventStore loadColumnarStream(InputStream stream, LoaderOptions options)
+			throws CouldNotLoadRecordingException, IOException {
+		ColumnarEventStore store = createColumnarStore(options);
+		boolean loaded = false;
+		try {
+			readChunks(new LoaderContext(options.getExtensions(), options.isHideExperimentals(),
+					options.getEventTypeFilter(), store), createChunkSupplier(stream, options.getTimeRange()), options,
+					store);
+			store.flush();
+			loaded = true;
+			return store;
+		} finally {
+			if (!loaded) {
+				store.close();
+			}
+		}
+	}
+
+	/**
+	 * Read events from a JFR file into columnar storage, see {@link ColumnarEventStore}.
+	 *
+	 * @see #loadColumnarStream(InputStream, LoaderOptions)
+	 * @see #loadFile(File, ChunkIndex, LoaderOptions)
+	 */
+	public static ColumnarEventStore loadColumnarFile(File file, ChunkIndex index, LoaderOptions options)
+			throws CouldNotLoadRecordingException, IOException {
+		ColumnarEventStore store = createColumnarStore(options);
+		boolean loaded = false;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			readChunks(new LoaderContext(options.getExtensions(), options.isHideExperimentals(),
+					options.getEventTypeFilter(), store), createChunkSupplier(channel, options, index), options,
+					store);
+			store.flush();
+			loaded = true;
+			return store;
+		} finally {
+			if (!loaded) {
+				store.close();
+			}
+		}
+	}
+
+	private static ColumnarEventStore createColumnarStore(LoaderOptions options) throws IOException {
+		return options.getSpillDirectory() == null ? new ColumnarEventStore()
+				: new ColumnarEventStore(options.getSpillDirectory());
+	}
+
+	/**
+	 * Open JFR data for chunk by chunk encoding to JSON, see {@link JsonEventEncoder}.
+	 *
+	 * @see #openStream(InputStream, LoaderOptions)
+	 */
+	static JsonChunkReader openJsonStream(InputStream stream, LoaderOptions options, JsonEventAdapter adapter)
+			throws CouldNotLoadRecordingException, IOException {
+		return new JsonChunkReader(stream, createChunkSupplier(stream, options.getTimeRange()), options, adapter);
+	}
+
+	/**
+	 * Open a JFR file for chunk by chunk encoding to JSON, see {@link JsonEventEncoder}.
+	 *
+	 * @see #openFile(File, ChunkIndex, LoaderOptions)
+	 */
+	static JsonChunkReader openJsonFile(File file, ChunkIndex index, LoaderOptions options,
+			JsonEventAdapter adapter) throws CouldNotLoadRecordingException, IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return new JsonChunkReader(channel, createChunkSupplier(channel, options, index), options, adapter);
+	}
+
+	/**
+	 * Open JFR data for chunk by chunk reading of thread samples, see {@link ThreadSampleCollector}.
+	 *
+	 * @see #openStream(InputStream, LoaderOptions)
+	 */
+	static ThreadSampleChunkReader openThreadSampleStream(InputStream stream, boolean ignoreTruncatedChunk)
 			throws CouldNotLoadRecordingException, IOException {
-		return new IChunkSupplier() {
+		return new ThreadSampleChunkReader(stream, createChunkSupplier(stream, null), ignoreTruncatedChunk);
+	}
+
+	private static IChunkSupplier createChunkSupplier(FileChannel channel, LoaderOptions options, ChunkIndex index) {
+		return index == null ? createChunkSupplier(channel, options.getTimeRange())
+				: createChunkSupplier(channel, index.selectChunks(options.getTimeRange(), options.getEventTypeFilter()),
+						index.getChunkCount());
+	}
+
+	/**
+	 * @param timeRange
+	 *            if not {@code null}, chunks not overlapping with the range are skipped
+	 */
+	private static IChunkSupplier createChunkSupplier(final FileChannel channel, final TimeRangeFilter timeRange) {
+		return new SkippingChunkSupplier() {
+
+			private long chunkStart;
+			private Chunk previous;
 
 			@Override
 			public Chunk getNextChunk(byte[] reusableBuffer) throws CouldNotLoadRecordingException, IOException {
-				int value = input.read();
-				if (value < 0) {
-					return null;
+				if (previous != null) {
+					// chunk loader has consumed previous chunk up to its end
+					chunkStart += previous.getPosition();
+					previous = null;
 				}
-				return createChunkInput(new DataInputStream(input), value, reusableBuffer);
+				while (chunkStart < channel.size()) {
+					Chunk chunk = openChunk(channel, chunkStart, reusableBuffer);
+					ChunkInfo info = timeRange == null ? null : readChunkHeader(chunk);
+					if (info != null && !timeRange.overlaps(info.getChunkRange())) {
+						// only the header has been read, seek to next chunk
+						chunkStart += info.getChunkSize();
+						skippedChunks++;
+						continue;
+					}
+					if (info != null) {
+						// header has been consumed, chunk loader would read it again
+						chunk = openChunk(channel, chunkStart, chunk.getReusableBuffer());
+					}
+					previous = chunk;
+					return previous;
+				}
+				return null;
 			}
 		};
 	}
 
+	/**
+	 * Supplies chunks selected from an index, chunks headers are not read to find chunk positions.
+	 *
+	 * @param chunkCount
+	 *            total number of chunks in the file
+	 */
+	private static IChunkSupplier createChunkSupplier(
+		final FileChannel channel, final Collection<ChunkInfo> chunks, int chunkCount) {
+		final Iterator<ChunkInfo> iterator = chunks.iterator();
+		SkippingChunkSupplier supplier = new SkippingChunkSupplier() {
+
+			@Override
+			public Chunk getNextChunk(byte[] reusableBuffer) throws CouldNotLoadRecordingException, IOException {
+				return iterator.hasNext() ? openChunk(channel, iterator.next().getChunkPosistion(), reusableBuffer)
+						: null;
+			}
+		};
+		supplier.skippedChunks = chunkCount - chunks.size();
+		return supplier;
+	}
+
+	/**
+	 * @return chunk starting at a file position
+	 * @throws InvalidJfrFileException
+	 *             if there is no chunk at the position
+	 */
+	static Chunk openChunk(FileChannel channel, long chunkStart, byte[] reusableBuffer)
+			throws CouldNotLoadRecordingException, IOException {
+		ByteBuffer magic = ByteBuffer.allocate(FLIGHT_RECORDER_MAGIC.length);
+		while (magic.hasRemaining()) {
+			if (channel.read(magic, chunkStart + magic.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+		if (!Arrays.equals(magic.array(), FLIGHT_RECORDER_MAGIC)) {
+			throw new InvalidJfrFileException();
+		}
+		return new Chunk(channel, chunkStart, FLIGHT_RECORDER_MAGIC.length, reusableBuffer);
+	}
+
+	/**
+	 * @param timeRange
+	 *            if not {@code null}, chunks not overlapping with the range are skipped
+	 */
+	private static IChunkSupplier createChunkSupplier(final InputStream input, final TimeRangeFilter timeRange)
+			throws CouldNotLoadRecordingException, IOException {
+		return new SkippingChunkSupplier() {
+
+			@Override
+			public Chunk getNextChunk(byte[] reusableBuffer) throws CouldNotLoadRecordingException, IOException {
+				while (true) {
+					int value = input.read();
+					if (value < 0) {
+						return null;
+					}
+					Chunk chunk = createChunkInput(new DataInputStream(input), value, reusableBuffer);
+					ChunkInfo info = timeRange == null ? null : readChunkHeader(chunk);
+					if (info == null) {
+						return chunk;
+					}
+					if (timeRange.overlaps(info.getChunkRange())) {
+						// header has been consumed, replay it to chunk loader
+						byte[] header = Arrays.copyOfRange(chunk.getReusableBuffer(), FLIGHT_RECORDER_MAGIC.length,
+								(int) chunk.getPosition());
+						DataInput replay = new DataInputStream(
+								new SequenceInputStream(new ByteArrayInputStream(header), input));
+						return new Chunk(replay, FLIGHT_RECORDER_MAGIC.length, chunk.getReusableBuffer());
+					}
+					// chunk body is skipped without being decoded
+					chunk.skip(info.getChunkSize());
+					reusableBuffer = chunk.getReusableBuffer();
+					skippedChunks++;
+				}
+			}
+		};
+	}
+
+	private abstract static class SkippingChunkSupplier implements IChunkSupplier {
+
+		int skippedChunks;
+	}
+
+	/**
+	 * @return {@code true} if supplier has skipped chunks outside of time range, so recording is not
+	 *         empty even if no chunks have been supplied
+	 */
+	static boolean hasSkippedChunks(IChunkSupplier chunkSupplier) {
+		return chunkSupplier instanceof SkippingChunkSupplier
+				&& ((SkippingChunkSupplier) chunkSupplier).skippedChunks > 0;
+	}
+
+	/**
+	 * Reads chunk header, which moves chunk position past the header.
+	 *
+	 * @return chunk size and time range or {@code null} if chunk format does not have them in header
+	 */
+	private static ChunkInfo readChunkHeader(Chunk chunk) throws CouldNotLoadRecordingException, IOException {
+		switch (chunk.getMajorVersion()) {
+		case VERSION_1:
+		case VERSION_2:
+			ChunkInfo info = ChunkLoaderV1.getInfo(chunk, 0);
+			if (info.getChunkSize() <= chunk.getPosition()) {
+				throw new InvalidJfrFileException();
+			}
+			return info;
+		default:
+			// JDK 7/8 chunks keep time range in metadata at the end of chunk, chunk is read fully
+			return null;
+		}
+	}
+
 	private static Chunk createChunkInput(DataInput input, int firstByte, byte[] reusableBuffer)
 			throws CouldNotLoadRecordingException, IOException {
 		int i = 0;
@@ -81,47 +386,139 @@ public class JFRLoader {
 		throw new InvalidJfrFileException();
 	}
 
-	private static EventArray[] readChunks(			
-			List<? extends IParserExtension> extensions, 
-			IChunkSupplier chunkSupplier,
-			boolean hideExperimentals, 
-			boolean ignoreTruncatedChunk
-		) throws CouldNotLoadRecordingException, IOException {
-
-		LoaderContext context = new LoaderContext(extensions, hideExperimentals);
+	private static EventArray[] readChunks(LoaderOptions options, IChunkSupplier chunkSupplier)
+			throws CouldNotLoadRecordingException, IOException {
+		LoaderContext context = new LoaderContext(options.getExtensions(), options.isHideExperimentals(),
+				options.getEventTypeFilter());
+		readChunks(context, chunkSupplier, options, null);
+		return context.buildEventArrays();
+	}
 
+	/**
+	 * Passes events of all chunks to sinks of the context.
+	 *
+	 * @param columnarStore
+	 *            store to notify once a chunk is loaded, if sink factory of the context is a
+	 *            {@link ColumnarEventStore}
+	 */
+	private static void readChunks(LoaderContext context, IChunkSupplier chunkSupplier, LoaderOptions options,
+			ColumnarEventStore columnarStore) throws CouldNotLoadRecordingException, IOException {
+		boolean ignoreTruncatedChunk = options.isIgnoreTruncatedChunk();
+		int parallelism = options.getParallelism();
 		int chunkCount = 0;
+		ExecutorService threadPool = parallelism > 1 ? createThreadPool(parallelism) : null;
 		try {
 			byte[] buffer = new byte[0];
 			IChunkLoader chunkLoader;
-			while ((chunkLoader = createChunkLoader(chunkSupplier, context, buffer, ignoreTruncatedChunk)) != null) {
-				try {
-					chunkLoader.call();
+			if (threadPool == null) {
+				while ((chunkLoader = createChunkLoader(chunkSupplier, context, buffer, ignoreTruncatedChunk,
+						columnarStore)) != null) {
+					try {
+						buffer = chunkLoader.call();
+					}
+					catch(Exception e) {
+						throw new ExecutionException(e);
+					}
+					++chunkCount;
+				}
+			}
+			else {
+				// Chunks share a single context, events of all chunks are combined by its sink factory
+				ExecutorCompletionService<byte[]> service = new ExecutorCompletionService<>(threadPool);
+				int outstanding = 0;
+				while ((chunkLoader = createChunkLoader(chunkSupplier, context, buffer, ignoreTruncatedChunk,
+						columnarStore)) != null) {
+					service.submit(chunkLoader);
+					++chunkCount;
+					++outstanding;
+					// Recover buffer from finished chunk loader for reuse or create a new buffer
+					Future<byte[]> available = service.poll();
+					if (available != null) {
+						buffer = available.get();
+						outstanding--;
+					} else if (outstanding < parallelism) {
+						buffer = new byte[0];
+					} else {
+						buffer = service.take().get();
+						outstanding--;
+					}
 				}
-				catch(Exception e) {
-					throw new ExecutionException(e);
+				while (outstanding > 0) {
+					service.take().get();
+					outstanding--;
 				}
-				++chunkCount;
 			}
-			if (chunkCount == 0) {
+			if (chunkCount == 0 && !hasSkippedChunks(chunkSupplier)) {
 				// Recordings without any chunks are not allowed
 				throw new InvalidJfrFileException("No readable chunks in recording"); //$NON-NLS-1$
 			}
+		} catch (InterruptedException e) {
+			throw new CouldNotLoadRecordingException(e);
 		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause instanceof Error) {
-				throw ((Error) cause);
-			} else if (cause instanceof RuntimeException) {
-				throw ((RuntimeException) cause);
-			} else if (cause instanceof IOException) {
-				throw ((IOException) cause);
-			} else if (cause instanceof CouldNotLoadRecordingException) {
-				throw ((CouldNotLoadRecordingException) cause);
-			} else {
-				throw new CouldNotLoadRecordingException(cause);
+			throw unwrap(e.getCause());
+		} finally {
+			if (threadPool != null) {
+				threadPool.shutdownNow();
 			}
 		}
-		return context.buildEventArrays();
+	}
+
+	static ExecutorService createThreadPool(int parallelism) {
+		return Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JfrChunkLoader-" + counter.incrementAndGet()); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Rethrows unchecked and I/O exceptions as is, anything else is converted to
+	 * {@link CouldNotLoadRecordingException}.
+	 */
+	static CouldNotLoadRecordingException unwrap(Throwable cause) throws IOException {
+		if (cause instanceof Error) {
+			throw ((Error) cause);
+		} else if (cause instanceof RuntimeException) {
+			throw ((RuntimeException) cause);
+		} else if (cause instanceof IOException) {
+			throw ((IOException) cause);
+		} else if (cause instanceof CouldNotLoadRecordingException) {
+			return (CouldNotLoadRecordingException) cause;
+		} else {
+			return new CouldNotLoadRecordingException(cause);
+		}
+	}
+
+	private static IChunkLoader createChunkLoader(
+		IChunkSupplier chunkSupplier, LoaderContext context, byte[] buffer, boolean ignoreTruncatedChunk,
+		final ColumnarEventStore columnarStore) throws CouldNotLoadRecordingException, IOException {
+		final IChunkLoader chunkLoader = createChunkLoader(chunkSupplier, context, buffer, ignoreTruncatedChunk);
+		if (chunkLoader == null || columnarStore == null) {
+			return chunkLoader;
+		}
+		return new IChunkLoader() {
+
+			@Override
+			public long getTimestamp() {
+				return chunkLoader.getTimestamp();
+			}
+
+			@Override
+			public byte[] call() throws Exception {
+				try {
+					return chunkLoader.call();
+				} finally {
+					// sinks are created and filled by the thread loading the chunk
+					columnarStore.completeSegments();
+				}
+			}
+		};
 	}
 
 	/**
@@ -137,7 +534,7 @@ public class JFRLoader {
 	 *            ignored and instead make the method return null
 	 * @return a new chunk loader or null if no more data is available from the chunk supplier
 	 */
-	private static IChunkLoader createChunkLoader(
+	static IChunkLoader createChunkLoader(
 		IChunkSupplier chunkSupplier, LoaderContext context, byte[] buffer, boolean ignoreTruncatedChunk)
 			throws CouldNotLoadRecordingException, IOException {
 		try {
@@ -0,0 +1,54 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.gridkit.jvmtool.event.ErrorEvent;
+import org.gridkit.jvmtool.event.Event;
+import org.gridkit.jvmtool.event.EventDumpParser;
+import org.gridkit.jvmtool.event.EventReader;
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
+
+/**
+ * Reads thread samples from JFR files (JDK 7 to 11+) using the standalone parser, see
+ * {@link ThreadSampleEventReader}.
+ * <p>
+ * Events are decoded one chunk at a time, so memory use does not grow with recording size.
+ */
+public class JfrEventDumpParser implements EventDumpParser {
+
+	public boolean isFunctional() {
+		return true;
+	}
+
+	@Override
+	public EventReader<Event> open(InputStreamSource source) throws IOException {
+		InputStream is = IOHelper.openUncompressedStream(source.open());
+		EventReader<Event> reader = null;
+		try {
+			reader = new ThreadSampleEventReader(JFRLoader.openThreadSampleStream(is, true));
+		}
+		catch (CouldNotLoadRecordingException e) {
+			// not a JFR file
+		}
+		finally {
+			if (reader == null) {
+				is.close();
+			}
+		}
+		if (reader == null) {
+			return null;
+		}
+		if (reader.hasNext() && reader.peekNext() instanceof ErrorEvent) {
+			// not a JFR file or cannot read it
+			reader.dispose();
+			return null;
+		}
+		return reader;
+	}
+
+	@Override
+	public String toString() {
+		return "Java Flight Recorder (standalone)";
+	}
+}
@@ -0,0 +1,33 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.Closeable;
+
+import org.openjdk.jmc.flightrecorder.internal.IChunkSupplier;
+import org.openjdk.jmc.flightrecorder.internal.parser.LoaderContext;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+
+/**
+ * Reads JFR data one chunk at a time, events of each chunk are returned ready to be written as
+ * JSON by {@link JsonEventEncoder}.
+ */
+class JsonChunkReader extends AbstractChunkReader<JsonEventEncoder> {
+
+	private final JsonEventAdapter adapter;
+
+	JsonChunkReader(Closeable stream, IChunkSupplier chunkSupplier, LoaderOptions options,
+			JsonEventAdapter adapter) {
+		super(stream, chunkSupplier, options);
+		this.adapter = adapter;
+	}
+
+	@Override
+	IEventSinkFactory createSinkFactory() {
+		return new JsonEventEncoder(adapter);
+	}
+
+	@Override
+	JsonEventEncoder buildChunk(LoaderContext context, IEventSinkFactory sinkFactory) {
+		context.getSinkFactory().flush();
+		return (JsonEventEncoder) sinkFactory;
+	}
+}
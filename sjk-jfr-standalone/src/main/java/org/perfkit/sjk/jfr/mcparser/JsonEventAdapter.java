@@ -1,8 +1,12 @@
 package org.perfkit.sjk.jfr.mcparser;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.gridkit.jvmtool.util.json.JsonStreamWriter;
@@ -16,16 +20,39 @@ import org.openjdk.jmc.common.IMCType;
 import org.openjdk.jmc.common.item.Attribute;
 import org.openjdk.jmc.common.item.IAccessorKey;
 import org.openjdk.jmc.common.item.IItem;
-import org.openjdk.jmc.common.unit.ITypedQuantity;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.item.IType;
+import org.openjdk.jmc.common.unit.KindOfQuantity;
 import org.openjdk.jmc.common.unit.TimestampUnit;
+import org.openjdk.jmc.common.unit.UnitLookup;
 
+/**
+ * Encodes items to JSON.
+ * <p>
+ * Event fields are written according to a plan built once per event type (resolved accessors,
+ * output names and value kinds), so type metadata is not consulted for each event. Plans are cached
+ * by type identity, an instance should be used by one thread at a time.
+ */
 public class JsonEventAdapter {
 
+	private static final int KIND_OBJECT = 0;
+	private static final int KIND_NUMBER = 1;
+	private static final int KIND_STRING = 2;
+	private static final int KIND_BOOLEAN = 3;
+
+	// plan for event types which are not written
+	private static final EventPlan SKIP = new EventPlan();
+
 	private final int maxDepth;
 
 	private Set<String> whiteList;
 	private Set<String> blackList;
 
+	private final Map<IType<?>, EventPlan> plans = new IdentityHashMap<IType<?>, EventPlan>();
+	// consecutive events are often of the same type
+	private IType<?> lastType;
+	private EventPlan lastPlan;
+
 	public JsonEventAdapter() {
 		this(Integer.MAX_VALUE);
 	}
@@ -36,19 +63,31 @@ public class JsonEventAdapter {
 
 	public void setWhiteList(Collection<String> events) {
 		whiteList = new HashSet<String>(events);
+		clearPlans();
 	}
 
 	public void setBlackList(Collection<String> events) {
 		blackList = new HashSet<String>(events);
+		clearPlans();
+	}
+
+	/**
+	 * Forget the plans of all event types seen so far. Types are distinct for each chunk when
+	 * chunks are read one at a time, so this is called before moving to the next chunk.
+	 */
+	void clearPlans() {
+		plans.clear();
+		lastType = null;
+		lastPlan = null;
 	}
 
 	public boolean encodeEvent(IItem event, JsonStreamWriter writer) throws IOException {
-		String eventType = event.getType().getIdentifier();
-		if (shouldOutput(eventType)) {
+		EventPlan plan = getPlan(event.getType());
+		if (plan != SKIP) {
 			writer.writeStartObject();
 			try {
-				writer.writeStringField("eventType", event.getType().getIdentifier());
-				encodeObject(event, writer, 1);
+				writer.writeStringField("eventType", plan.eventType);
+				encodeObject(plan, event, writer, 1);
 			}
 			finally {
 				writer.writeEndObject();
@@ -60,6 +99,20 @@ public class JsonEventAdapter {
 		}
 	}
 
+	private EventPlan getPlan(IType<?> type) {
+		if (type == lastType) {
+			return lastPlan;
+		}
+		EventPlan plan = plans.get(type);
+		if (plan == null) {
+			plan = shouldOutput(type.getIdentifier()) ? new EventPlan(type) : SKIP;
+			plans.put(type, plan);
+		}
+		lastType = type;
+		lastPlan = plan;
+		return plan;
+	}
+
 	private boolean shouldOutput(String eventType) {
 		if (whiteList != null && !whiteList.contains(eventType)) {
 			return false;
@@ -70,7 +123,7 @@ public class JsonEventAdapter {
 		return true;
 	}
 
-	private boolean checkDepthLimit(JsonStreamWriter writer, int depth) throws IOException {
+	boolean checkDepthLimit(JsonStreamWriter writer, int depth) throws IOException {
 		if (depth > maxDepth) {
 			writer.writeStringField("json_depth_limit_reached", "!");
 			return false;
@@ -80,40 +133,53 @@ public class JsonEventAdapter {
 		}
 	}
 
-	@SuppressWarnings("rawtypes")
-	private void encodeObject(IItem obj, JsonStreamWriter writer, int depth) throws IOException {
+	private void encodeObject(EventPlan plan, IItem obj, JsonStreamWriter writer, int depth) throws IOException {
 		if (!checkDepthLimit(writer, depth)) {
 			return;
 		}
-		ITypedQuantity startTime = null;
-		for(IAccessorKey<?> k: obj.getType().getAccessorKeys().keySet()) {
-			String name = k.getIdentifier();
-			if (k instanceof Attribute) {
-				Attribute<?> a = (Attribute<?>) k;
-				Object val = a.getAccessor(obj.getType()).getMember(cast(obj));
-				if ("startTime".equals(name)) {
-					startTime = (ITypedQuantity) val;
+		Object startTime = null;
+		for (int i = 0; i < plan.accessors.length; i++) {
+			Object val = plan.accessors[i].getMember(obj);
+			String name = plan.names[i];
+			if (i == plan.startTimeIndex) {
+				startTime = val;
+			}
+			else if (i == plan.durationIndex) {
+				if (startTime == null) {
+					name = "startTime";
 				}
-				else if ("(endTime)".equals(name)) {
-					if (startTime == null) {
-						name = "startTime";
-					}
-					else {
-						name = "duration";
-						val = ((Number)val).longValue() - ((Number)startTime).longValue();
-					}
+				else {
+					writer.writeFieldName(name);
+					writer.writeNumber(((Number) val).longValue() - ((Number) startTime).longValue());
+					continue;
 				}
-				else if ("eventThread".equals(name) && isThreadSample(obj)) {
-					name = "sampledThread";
+			}
+			writer.writeFieldName(name);
+			switch (plan.kinds[i]) {
+			case KIND_NUMBER:
+				if (val instanceof Number) {
+					encodeNumber((Number) val, writer);
+					continue;
 				}
-				writer.writeFieldName(name);
-				encodeValue(val, writer, depth);
+				break;
+			case KIND_STRING:
+				if (val instanceof String) {
+					writer.writeString((String) val);
+					continue;
+				}
+				break;
+			case KIND_BOOLEAN:
+				if (val instanceof Boolean) {
+					writer.writeBoolean(((Boolean) val).booleanValue());
+					continue;
+				}
+				break;
 			}
+			encodeValue(val, writer, depth);
 		}
 	}
 
-	private boolean isThreadSample(IItem obj) {
-		String type = obj.getType().getIdentifier();
+	static boolean isThreadSample(String type) {
 		return "jdk.NativeMethodSample".equals(type) || "jdk.ExecutionSample".equals(type);
 	}
 
@@ -122,7 +188,7 @@ public class JsonEventAdapter {
 		encodeValue(val, writer, depth);
 	}
 
-	private void encodeValue(Object val, JsonStreamWriter writer, int depth) throws IOException {
+	void encodeValue(Object val, JsonStreamWriter writer, int depth) throws IOException {
  		if (val == null) {
 			writer.writeNull();
 		}
@@ -130,14 +196,7 @@ public class JsonEventAdapter {
 			writer.writeString(val.toString());
 		}
 		else if (val instanceof Number) {
-			// TODO potential double precision error
-			Number num = (Number) val;
-			if (num.longValue() == num.doubleValue()) {
-				writer.writeNumber(num.longValue());
-			}
-			else {
-				writer.writeNumber(num.doubleValue());
-			}
+			encodeNumber((Number) val, writer);
 		}
 		else if (val instanceof IMCThread) {
 			IMCThread thread = (IMCThread) val;
@@ -237,6 +296,16 @@ public class JsonEventAdapter {
 		}
 	}
 
+	private void encodeNumber(Number num, JsonStreamWriter writer) throws IOException {
+		// TODO potential double precision error
+		if (num.longValue() == num.doubleValue()) {
+			writer.writeNumber(num.longValue());
+		}
+		else {
+			writer.writeNumber(num.doubleValue());
+		}
+	}
+
 	private String frameType(Type type) {
 		switch(type) {
 			case JIT_COMPILED: return "JIT compiled";
@@ -247,7 +316,88 @@ public class JsonEventAdapter {
 	}
 
 	@SuppressWarnings("unchecked")
-	private <T> T cast(Object o) {
+	private static <T> T cast(Object o) {
 		return (T)o;
 	}
+
+	/**
+	 * Attributes of an event type in output order.
+	 */
+	private static class EventPlan {
+
+		final String eventType;
+		final IMemberAccessor<?, IItem>[] accessors;
+		final String[] names;
+		final int[] kinds;
+		final int startTimeIndex;
+		// index of "(endTime)" field written as duration if start time is known, -1 if there is none
+		final int durationIndex;
+
+		EventPlan() {
+			this.eventType = null;
+			this.accessors = null;
+			this.names = null;
+			this.kinds = null;
+			this.startTimeIndex = -1;
+			this.durationIndex = -1;
+		}
+
+		EventPlan(IType<?> type) {
+			this.eventType = type.getIdentifier();
+			List<IMemberAccessor<?, IItem>> accessorList = new ArrayList<IMemberAccessor<?, IItem>>();
+			List<String> nameList = new ArrayList<String>();
+			List<Integer> kindList = new ArrayList<Integer>();
+			int startTime = -1;
+			int duration = -1;
+			for (IAccessorKey<?> k : type.getAccessorKeys().keySet()) {
+				if (!(k instanceof Attribute)) {
+					continue;
+				}
+				String name = k.getIdentifier();
+				int index = accessorList.size();
+				// same renaming as in JsonEventEncoder, see encodeObject() for events with null start
+				if ("startTime".equals(name)) {
+					startTime = index;
+				}
+				else if ("(endTime)".equals(name)) {
+					if (startTime < 0) {
+						name = "startTime";
+					}
+					else {
+						name = "duration";
+						duration = index;
+					}
+				}
+				else if ("eventThread".equals(name) && isThreadSample(eventType)) {
+					name = "sampledThread";
+				}
+				accessorList.add(JsonEventAdapter.<IMemberAccessor<?, IItem>> cast(((Attribute<?>) k).getAccessor(type)));
+				nameList.add(name);
+				kindList.add(kindOf(k));
+			}
+			this.accessors = cast(accessorList.toArray(new IMemberAccessor<?, ?>[accessorList.size()]));
+			this.names = nameList.toArray(new String[nameList.size()]);
+			this.kinds = new int[kindList.size()];
+			for (int i = 0; i < kinds.length; i++) {
+				kinds[i] = kindList.get(i);
+			}
+			this.startTimeIndex = startTime;
+			this.durationIndex = duration;
+		}
+
+		private static int kindOf(IAccessorKey<?> key) {
+			if (key.getContentType() instanceof KindOfQuantity) {
+				return KIND_NUMBER;
+			}
+			else if (key.getContentType() == UnitLookup.PLAIN_TEXT) {
+				return KIND_STRING;
+			}
+			else if (key.getContentType() == UnitLookup.FLAG) {
+				return KIND_BOOLEAN;
+			}
+			else {
+				return KIND_OBJECT;
+			}
+		}
+	}
 }
@@ -0,0 +1,203 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gridkit.jvmtool.util.json.JsonStreamWriter;
+import org.openjdk.jmc.common.unit.KindOfQuantity;
+import org.openjdk.jmc.flightrecorder.parser.IEventSink;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+import org.openjdk.jmc.flightrecorder.parser.IPrimitiveEventSink;
+import org.openjdk.jmc.flightrecorder.parser.ValueField;
+
+/**
+ * Terminal event sink factory, which encodes events to JSON straight from decoded field values.
+ * <p>
+ * Unlike {@link JsonEventAdapter}, no items, event arrays or accessors are involved. Field values
+ * of one chunk are kept in flat buffers (numeric fields as primitives) and written on demand by
+ * {@link #encodeNext(JsonStreamWriter)}. Events are written in the order they were decoded, i.e.
+ * in recording order rather than timestamp order. Output of each event is otherwise the same as
+ * produced by {@link JsonEventAdapter}.
+ * <p>
+ * Events must be added from a single thread, which is the case as one instance is used per chunk.
+ */
+class JsonEventEncoder implements IEventSinkFactory {
+
+	private static final Boolean BOXED = Boolean.TRUE;
+	private static final Boolean PRIMITIVE = Boolean.FALSE;
+
+	private final JsonEventAdapter adapter;
+
+	// each event is stored as encoder, row kind and field values
+	private Object[] objects = new Object[256];
+	private int objectCount;
+	// numeric fields of primitive rows, double values are stored as raw bits
+	private long[] numbers = new long[256];
+	private int numberCount;
+
+	private int objectIndex;
+	private int numberIndex;
+
+	public JsonEventEncoder(JsonEventAdapter adapter) {
+		this.adapter = adapter;
+	}
+
+	@Override
+	public synchronized IEventSink create(String identifier, String label, String[] category, String description,
+			List<ValueField> dataStructure) {
+		return new TypeEncoder(identifier, dataStructure);
+	}
+
+	@Override
+	public void flush() {
+		// events are kept until encoded
+	}
+
+	/**
+	 * Writes next buffered event.
+	 *
+	 * @return <code>false</code> if all events have been written
+	 */
+	public boolean encodeNext(JsonStreamWriter writer) throws IOException {
+		if (objectIndex >= objectCount) {
+			// let buffers be collected while caller holds on to this instance
+			objects = null;
+			numbers = null;
+			return false;
+		}
+		TypeEncoder encoder = (TypeEncoder) objects[objectIndex++];
+		encoder.encode(objects[objectIndex++] == BOXED, writer);
+		return true;
+	}
+
+	private void addObject(Object value) {
+		if (objectCount == objects.length) {
+			objects = Arrays.copyOf(objects, objects.length * 2);
+		}
+		objects[objectCount++] = value;
+	}
+
+	private void addNumber(long value) {
+		if (numberCount == numbers.length) {
+			numbers = Arrays.copyOf(numbers, numbers.length * 2);
+		}
+		numbers[numberCount++] = value;
+	}
+
+	private class TypeEncoder implements IPrimitiveEventSink {
+
+		private final String eventType;
+		private final String[] names;
+		private final boolean[] numeric;
+		// index of "(endTime)" field encoded as duration, -1 if there is none
+		private final int durationIndex;
+		private final int startTimeIndex;
+
+		// current row, reused between events
+		private final Object[] values;
+		private final long[] longValues;
+		private final double[] doubleValues;
+
+		TypeEncoder(String eventType, List<ValueField> fields) {
+			this.eventType = eventType;
+			this.names = new String[fields.size()];
+			this.numeric = new boolean[fields.size()];
+			int startTime = -1;
+			int duration = -1;
+			for (int i = 0; i < names.length; i++) {
+				ValueField field = fields.get(i);
+				String name = field.getIdentifier();
+				// same renaming as in JsonEventAdapter.encodeObject()
+				if ("startTime".equals(name)) {
+					startTime = i;
+				}
+				else if ("(endTime)".equals(name)) {
+					if (startTime < 0) {
+						name = "startTime";
+					}
+					else {
+						name = "duration";
+						duration = i;
+					}
+				}
+				else if ("eventThread".equals(name) && JsonEventAdapter.isThreadSample(eventType)) {
+					name = "sampledThread";
+				}
+				names[i] = name;
+				numeric[i] = field.getContentType() instanceof KindOfQuantity;
+			}
+			this.startTimeIndex = startTime;
+			this.durationIndex = duration;
+			this.values = new Object[names.length];
+			this.longValues = new long[names.length];
+			this.doubleValues = new double[names.length];
+		}
+
+		@Override
+		public void addEvent(Object[] values) {
+			addObject(this);
+			addObject(BOXED);
+			for (int i = 0; i < names.length; i++) {
+				addObject(values[i]);
+			}
+		}
+
+		@Override
+		public void addEvent(Object[] values, long[] longValues, double[] doubleValues) {
+			addObject(this);
+			addObject(PRIMITIVE);
+			for (int i = 0; i < names.length; i++) {
+				if (numeric[i]) {
+					addNumber(longValues[i]);
+					addNumber(Double.doubleToRawLongBits(doubleValues[i]));
+				}
+				else {
+					addObject(values[i]);
+				}
+			}
+		}
+
+		void encode(boolean boxed, JsonStreamWriter writer) throws IOException {
+			// row is consumed completely even if depth limit prevents writing it
+			for (int i = 0; i < names.length; i++) {
+				if (boxed || !numeric[i]) {
+					values[i] = objects[objectIndex++];
+				}
+				else {
+					longValues[i] = numbers[numberIndex++];
+					doubleValues[i] = Double.longBitsToDouble(numbers[numberIndex++]);
+				}
+			}
+			writer.writeStartObject();
+			try {
+				writer.writeStringField("eventType", eventType);
+				if (adapter.checkDepthLimit(writer, 1)) {
+					for (int i = 0; i < names.length; i++) {
+						writer.writeFieldName(names[i]);
+						if (i == durationIndex) {
+							writer.writeNumber(longValue(boxed, i) - longValue(boxed, startTimeIndex));
+						}
+						else if (boxed || !numeric[i]) {
+							adapter.encodeValue(values[i], writer, 1);
+						}
+						else if (longValues[i] == doubleValues[i]) {
+							writer.writeNumber(longValues[i]);
+						}
+						else {
+							writer.writeNumber(doubleValues[i]);
+						}
+					}
+				}
+			}
+			finally {
+				writer.writeEndObject();
+				Arrays.fill(values, null);
+			}
+		}
+
+		private long longValue(boolean boxed, int index) {
+			return boxed || !numeric[index] ? ((Number) values[index]).longValue() : longValues[index];
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package org.perfkit.sjk.jfr.mcparser;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.List;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.gridkit.jvmtool.spi.parsers.InputStreamSource;
@@ -13,10 +13,60 @@ import org.gridkit.jvmtool.spi.parsers.JsonEventDumpParserFactory;
 import org.gridkit.jvmtool.spi.parsers.JsonEventSource;
 import org.gridkit.jvmtool.util.json.JsonStreamWriter;
 import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.internal.EventArray;
 
 public class JsonFlightRecordingParserFactory implements JsonEventDumpParserFactory {
 
+    /**
+     * If <code>true</code>, recording is parsed and written chunk by chunk,
+     * instead of loading all events in memory first.
+     */
+    public static final String OPT_JFR_STREAMING = "jfr.streaming";
+
+    /**
+     * Number of chunks decoded concurrently, <code>1</code> by default.
+     * Events are written in timestamp order regardless of parallelism.
+     */
+    public static final String OPT_JFR_PARALLELISM = "jfr.parallelism";
+
+    /**
+     * If <code>true</code> (default), uncompressed recording files are memory mapped
+     * instead of being copied to heap.
+     */
+    public static final String OPT_JFR_MMAP = "jfr.mmap";
+
+    /**
+     * If <code>true</code>, events are encoded to JSON straight from decoded
+     * field values, without building items. Recording is processed chunk by chunk
+     * and events are written in recording order, not in timestamp order.
+     */
+    public static final String OPT_JFR_DIRECT = "jfr.direct";
+
+    /**
+     * Only events starting in given time range are written, range is specified
+     * as <code>from..to</code>. Bounds are ISO-8601 instants or milliseconds since
+     * epoch, either bound could be omitted. Chunks outside of the range are skipped
+     * without being decoded.
+     */
+    public static final String OPT_JFR_TIME_RANGE = "jfr.timeRange";
+
+    /**
+     * If <code>true</code>, chunk index of uncompressed recording file is kept
+     * in a sidecar file (<code>recording.jfr.idx</code>), created on first use.
+     * Chunks are then selected by time range and event types without being scanned.
+     */
+    public static final String OPT_JFR_INDEX = "jfr.index";
+
+    /**
+     * Directory for a temporary file, events are loaded in columns spilled to
+     * that file instead of being kept on heap as items. Events are written in
+     * timestamp order, events of distinct types with equal timestamps could be
+     * in another order than without this option. Ignored in streaming and
+     * direct modes.
+     */
+    public static final String OPT_JFR_SPILL_DIR = "jfr.spillDir";
+
     @Override
     public JsonEventDumpParser createParser(Map<String, String> options) throws Exception {
 
@@ -30,34 +80,79 @@ public class JsonFlightRecordingParserFactory implements JsonEventDumpParserFact
     private static class Parser implements JsonEventDumpParser {
 
         private int jsonMaxDepth = Integer.MAX_VALUE;
-        private List<String> whiteList = null;
-        private List<String> blackList = null;
+        private LoaderOptions loaderOptions = new LoaderOptions();
+        private boolean streaming = false;
+        private boolean mmap = true;
+        private boolean direct = false;
+        private boolean index = false;
 
         @Override
         public JsonEventSource open(InputStreamSource source) throws Exception {
 
-            EventArray[] events = JFRLoader.loadStream(IOHelper.openFlatOrCommpressedStream(source), false, true);
-            List<IItem> items = new ArrayList<>();
-            for(EventArray a: events) {
-                for(IItem i: a.getEvents()) {
-                    items.add(i);
-                }
+            File file = mmap ? IOHelper.getUncompressedFile(source) : null;
+            ChunkIndex chunkIndex = index && file != null ? openIndex(file) : null;
+
+            if (direct) {
+                JsonEventAdapter adapter = new JsonEventAdapter(jsonMaxDepth);
+                JsonChunkReader reader = file != null
+                        ? JFRLoader.openJsonFile(file, chunkIndex, loaderOptions, adapter)
+                        : JFRLoader.openJsonStream(IOHelper.openFlatOrCommpressedStream(source), loaderOptions, adapter);
+                return new DirectEventSource(reader);
             }
 
-            EventSource eventSource = new EventSource(items, jsonMaxDepth);
-            if (whiteList != null) {
-                eventSource.setWhiteList(whiteList);
+            if (streaming) {
+                ChunkReader reader = file != null
+                        ? JFRLoader.openFile(file, chunkIndex, loaderOptions)
+                        : JFRLoader.openStream(IOHelper.openFlatOrCommpressedStream(source), loaderOptions);
+                return new StreamingEventSource(reader, jsonMaxDepth);
             }
-            if (blackList != null) {
-                eventSource.setBlackList(blackList);
+
+            if (loaderOptions.getSpillDirectory() != null) {
+                ColumnarEventStore store = file != null
+                        ? JFRLoader.loadColumnarFile(file, chunkIndex, loaderOptions)
+                        : JFRLoader.loadColumnarStream(IOHelper.openFlatOrCommpressedStream(source), loaderOptions);
+                boolean opened = false;
+                try {
+                    ColumnarEventSource events = new ColumnarEventSource(store, jsonMaxDepth);
+                    opened = true;
+                    return events;
+                }
+                finally {
+                    if (!opened) {
+                        store.close();
+                    }
+                }
             }
 
-            return eventSource;
+            EventArray[] events = file != null
+                    ? JFRLoader.loadFile(file, chunkIndex, loaderOptions)
+                    : JFRLoader.loadStream(IOHelper.openFlatOrCommpressedStream(source), loaderOptions);
+
+            return new EventSource(new EventMerger(events), jsonMaxDepth);
+        }
+
+        private ChunkIndex openIndex(File file) {
+            try {
+                return ChunkIndex.open(file);
+            }
+            catch(Exception e) {
+                // recording is still parsed without index, errors are reported by parser
+                return null;
+            }
         }
 
         public void configure(Map<String, String> options) {
+            try {
+                loaderOptions = LoaderOptions.fromOptions(options);
+            }
+            catch(IllegalArgumentException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
             for(String key: options.keySet()) {
-                if (OPT_USE_NATIVE_JFR_PARSER.equals(key)) {
+                if (LoaderOptions.isLoaderOption(key)) {
+                    continue;
+                }
+                else if (OPT_USE_NATIVE_JFR_PARSER.equals(key)) {
                     if (!"false".equalsIgnoreCase(options.get(key))) {
                         throw new RuntimeException("Unsatisfied option: " + key + "=" + options.get(key));
                     }
@@ -68,17 +163,17 @@ public class JsonFlightRecordingParserFactory implements JsonEventDumpParserFact
                         throw new RuntimeException("Illegal option value: " + key + "=" + options.get(key));
                     }
                 }
-                else if (OPT_JFR_EVENT_BLACKLIST.equals(key)) {
-                    String[] list = options.get(key).split(",");
-                    if (list.length > 0) {
-                        blackList = Arrays.asList(list);
-                    }
+                else if (OPT_JFR_STREAMING.equals(key)) {
+                    streaming = Boolean.valueOf(options.get(key));
                 }
-                else if (OPT_JFR_EVENT_WHITELIST.equals(key)) {
-                    String[] list = options.get(key).split(",");
-                    if (list.length > 0) {
-                        whiteList = Arrays.asList(list);
-                    }
+                else if (OPT_JFR_DIRECT.equals(key)) {
+                    direct = Boolean.valueOf(options.get(key));
+                }
+                else if (OPT_JFR_INDEX.equals(key)) {
+                    index = Boolean.valueOf(options.get(key));
+                }
+                else if (OPT_JFR_MMAP.equals(key)) {
+                    mmap = Boolean.valueOf(options.get(key));
                 }
                 else {
                     throw new RuntimeException("Unknown option: " + key + "=" + options.get(key));
@@ -89,31 +184,21 @@ public class JsonFlightRecordingParserFactory implements JsonEventDumpParserFact
 
     private static class EventSource implements JsonEventSource {
 
-        private final List<IItem> items;
+        private final Iterator<IItem> items;
         private final JsonEventAdapter adapter;
-        private int n;
 
-        public EventSource(List<IItem> items, int maxJsonDepth) {
+        public EventSource(Iterator<IItem> items, int maxJsonDepth) {
             this.items = items;
             this.adapter = new JsonEventAdapter(maxJsonDepth);
         }
 
-        public void setWhiteList(Collection<String> list) {
-            adapter.setWhiteList(list);
-        }
-
-        public void setBlackList(Collection<String> list) {
-            adapter.setBlackList(list);
-        }
-
         @Override
         public boolean readNext(JsonStreamWriter writer) throws IOException {
             while(true) {
-                if (n >= items.size()) {
+                if (!items.hasNext()) {
                     return false;
                 }
-                IItem it = items.get(n);
-                ++n;
+                IItem it = items.next();
                 if (!adapter.encodeEvent(it, writer)) {
                     continue;
                 };
@@ -121,4 +206,139 @@ public class JsonFlightRecordingParserFactory implements JsonEventDumpParserFact
             }
         }
     }
+
+    private static class StreamingEventSource implements JsonEventSource {
+
+        private final ChunkReader reader;
+        private final JsonEventAdapter adapter;
+        private Iterator<IItem> chunk = Collections.<IItem>emptyIterator();
+
+        public StreamingEventSource(ChunkReader reader, int maxJsonDepth) {
+            this.reader = reader;
+            this.adapter = new JsonEventAdapter(maxJsonDepth);
+        }
+
+        @Override
+        public boolean readNext(JsonStreamWriter writer) throws IOException {
+            while(true) {
+                if (!chunk.hasNext()) {
+                    if (!nextChunk()) {
+                        return false;
+                    }
+                    continue;
+                }
+                IItem it = chunk.next();
+                if (adapter.encodeEvent(it, writer)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            // let previous chunk be collected before parsing next one
+            chunk = Collections.<IItem>emptyIterator();
+            // event types of the previous chunk are not seen again
+            adapter.clearPlans();
+            EventArray[] events;
+            try {
+                events = reader.readNextChunk();
+            }
+            catch(CouldNotLoadRecordingException e) {
+                reader.close();
+                throw new IOException(e);
+            }
+            if (events == null) {
+                reader.close();
+                return false;
+            }
+            chunk = new EventMerger(events);
+            return true;
+        }
+    }
+
+    /**
+     * Releases spill file once all events are written or reading has failed,
+     * callers stopping early should {@link #close()} the source.
+     */
+    private static class ColumnarEventSource implements JsonEventSource, Closeable {
+
+        private final ColumnarEventStore store;
+        private final Iterator<IItem> items;
+        private final JsonEventAdapter adapter;
+        private boolean closed;
+
+        public ColumnarEventSource(ColumnarEventStore store, int maxJsonDepth) {
+            this.store = store;
+            this.items = new ColumnarEventMerger(store.getEventTables());
+            this.adapter = new JsonEventAdapter(maxJsonDepth);
+        }
+
+        @Override
+        public boolean readNext(JsonStreamWriter writer) throws IOException {
+            boolean written = false;
+            try {
+                while(!closed && items.hasNext()) {
+                    // cursor is only valid until next event is read
+                    IItem it = items.next();
+                    if (adapter.encodeEvent(it, writer)) {
+                        written = true;
+                        return true;
+                    }
+                }
+                return false;
+            }
+            finally {
+                if (!written) {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                store.close();
+            }
+        }
+    }
+
+    private static class DirectEventSource implements JsonEventSource {
+
+        private final JsonChunkReader reader;
+        private JsonEventEncoder chunk;
+
+        public DirectEventSource(JsonChunkReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean readNext(JsonStreamWriter writer) throws IOException {
+            while(true) {
+                if (chunk != null && chunk.encodeNext(writer)) {
+                    return true;
+                }
+                if (!nextChunk()) {
+                    return false;
+                }
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            // let previous chunk be collected before parsing next one
+            chunk = null;
+            try {
+                chunk = reader.readNext();
+            }
+            catch(CouldNotLoadRecordingException e) {
+                reader.close();
+                throw new IOException(e);
+            }
+            if (chunk == null) {
+                reader.close();
+                return false;
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,229 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.gridkit.jvmtool.spi.parsers.JsonEventDumpParserFactory;
+import org.openjdk.jmc.common.IPredicate;
+import org.openjdk.jmc.flightrecorder.parser.IParserExtension;
+import org.openjdk.jmc.flightrecorder.parser.ParserExtensionRegistry;
+
+/**
+ * Options of {@link JFRLoader}, built from parser options with {@link #fromOptions(Map)} or set one
+ * by one. Setters return this options object.
+ * <p>
+ * Defaults are registered parser extensions, experimental event types shown, truncated last chunk
+ * ignored, one chunk decoded at a time, all event types and all events loaded, columnar events
+ * kept on heap.
+ */
+public class LoaderOptions {
+
+	private static final List<String> KEYS = Arrays.asList(JsonEventDumpParserFactory.OPT_JFR_EVENT_WHITELIST,
+			JsonEventDumpParserFactory.OPT_JFR_EVENT_BLACKLIST, JsonFlightRecordingParserFactory.OPT_JFR_PARALLELISM,
+			JsonFlightRecordingParserFactory.OPT_JFR_TIME_RANGE, JsonFlightRecordingParserFactory.OPT_JFR_SPILL_DIR);
+
+	private List<? extends IParserExtension> extensions = ParserExtensionRegistry.getParserExtensions();
+	private boolean hideExperimentals = false;
+	private boolean ignoreTruncatedChunk = true;
+	private int parallelism = 1;
+	private IPredicate<String> eventTypeFilter;
+	private TimeRangeFilter timeRange;
+	private File spillDirectory;
+
+	/**
+	 * Reads loader options, event type white and black lists, {@code jfr.parallelism},
+	 * {@code jfr.timeRange} and {@code jfr.spillDir}. Other options are left to the caller, see
+	 * {@link #isLoaderOption(String)}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if an option value is not valid
+	 */
+	public static LoaderOptions fromOptions(Map<String, String> options) {
+		LoaderOptions result = new LoaderOptions();
+		List<String> whiteList = null;
+		List<String> blackList = null;
+		for (String key : options.keySet()) {
+			String value = options.get(key);
+			if (JsonEventDumpParserFactory.OPT_JFR_EVENT_WHITELIST.equals(key)) {
+				String[] list = value.split(","); //$NON-NLS-1$
+				if (list.length > 0) {
+					whiteList = Arrays.asList(list);
+				}
+			} else if (JsonEventDumpParserFactory.OPT_JFR_EVENT_BLACKLIST.equals(key)) {
+				String[] list = value.split(","); //$NON-NLS-1$
+				if (list.length > 0) {
+					blackList = Arrays.asList(list);
+				}
+			} else if (JsonFlightRecordingParserFactory.OPT_JFR_PARALLELISM.equals(key)) {
+				int parallelism = parseInt(key, value);
+				if (parallelism < 1) {
+					throw illegalValue(key, value, null);
+				}
+				result.parallelism(parallelism);
+			} else if (JsonFlightRecordingParserFactory.OPT_JFR_TIME_RANGE.equals(key)) {
+				try {
+					result.timeRange(TimeRangeFilter.parse(value));
+				} catch (IllegalArgumentException e) {
+					throw illegalValue(key, value, e);
+				}
+			} else if (JsonFlightRecordingParserFactory.OPT_JFR_SPILL_DIR.equals(key)) {
+				File directory = new File(value);
+				if (!directory.isDirectory()) {
+					throw illegalValue(key, value, null);
+				}
+				result.spillDirectory(directory);
+			}
+		}
+		// event type lists are applied by parser, events of other types are not decoded at all
+		if (whiteList != null || blackList != null) {
+			result.eventTypeFilter(new EventTypeFilter(whiteList, blackList));
+		}
+		return result;
+	}
+
+	/**
+	 * @return {@code true} if option is read by {@link #fromOptions(Map)}
+	 */
+	public static boolean isLoaderOption(String key) {
+		return KEYS.contains(key);
+	}
+
+	private static int parseInt(String key, String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw illegalValue(key, value, e);
+		}
+	}
+
+	private static IllegalArgumentException illegalValue(String key, String value, Exception cause) {
+		return new IllegalArgumentException("Illegal option value: " + key + "=" + value, cause); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * @param extensions
+	 *            the extensions to use when parsing the data
+	 */
+	public LoaderOptions extensions(List<? extends IParserExtension> extensions) {
+		this.extensions = extensions;
+		return this;
+	}
+
+	/**
+	 * @param hideExperimentals
+	 *            if {@code true}, then events of types marked as experimental will be ignored when
+	 *            reading the data
+	 */
+	public LoaderOptions hideExperimentals(boolean hideExperimentals) {
+		this.hideExperimentals = hideExperimentals;
+		return this;
+	}
+
+	/**
+	 * @param ignoreTruncatedChunk
+	 *            if {@code true}, errors reading a chunk end the recording instead of failing it
+	 */
+	public LoaderOptions ignoreTruncatedChunk(boolean ignoreTruncatedChunk) {
+		this.ignoreTruncatedChunk = ignoreTruncatedChunk;
+		return this;
+	}
+
+	/**
+	 * @param parallelism
+	 *            number of chunks to be decoded concurrently, chunks read one by one are still
+	 *            returned in recording order
+	 */
+	public LoaderOptions parallelism(int parallelism) {
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @param eventTypeFilter
+	 *            predicate on event type identifiers, events of other types are skipped without being
+	 *            decoded, {@code null} to load all events
+	 */
+	public LoaderOptions eventTypeFilter(IPredicate<String> eventTypeFilter) {
+		this.eventTypeFilter = eventTypeFilter;
+		return this;
+	}
+
+	/**
+	 * @param timeRange
+	 *            time range of events to load, {@code null} to load all events. Chunks outside of the
+	 *            range are skipped without being decoded.
+	 */
+	public LoaderOptions timeRange(TimeRangeFilter timeRange) {
+		this.timeRange = timeRange;
+		return this;
+	}
+
+	/**
+	 * @param spillDirectory
+	 *            directory for the temporary file of columnar loading, {@code null} to keep columns on
+	 *            heap
+	 * @see ColumnarEventStore#ColumnarEventStore(File)
+	 */
+	public LoaderOptions spillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+		return this;
+	}
+
+	public boolean isHideExperimentals() {
+		return hideExperimentals;
+	}
+
+	public boolean isIgnoreTruncatedChunk() {
+		return ignoreTruncatedChunk;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public IPredicate<String> getEventTypeFilter() {
+		return eventTypeFilter;
+	}
+
+	public TimeRangeFilter getTimeRange() {
+		return timeRange;
+	}
+
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * @return parser extensions, with time range filter prepended if there is one
+	 */
+	public List<? extends IParserExtension> getExtensions() {
+		return timeRange == null ? extensions : timeRange.prependTo(extensions);
+	}
+
+	private static class EventTypeFilter implements IPredicate<String> {
+
+		private final Set<String> whiteList;
+		private final Set<String> blackList;
+
+		public EventTypeFilter(Collection<String> whiteList, Collection<String> blackList) {
+			this.whiteList = whiteList == null ? null : new HashSet<String>(whiteList);
+			this.blackList = blackList == null ? null : new HashSet<String>(blackList);
+		}
+
+		@Override
+		public boolean evaluate(String eventType) {
+			if (whiteList != null && !whiteList.contains(eventType)) {
+				return false;
+			}
+			if (blackList != null && blackList.contains(eventType)) {
+				return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads underlying stream ahead on a background thread, so that decompression of input overlaps
+ * with parsing.
+ * <p>
+ * Data is passed through a bounded ring of buffers, reader thread blocks once all buffers are
+ * filled. Instances are not thread safe, as is usual for streams.
+ * <p>
+ * The underlying stream is read and closed on the reader thread only. The thread ends, closing
+ * the underlying stream, at end of data, on {@link #close()}, or once the stream is garbage
+ * collected without being closed.
+ */
+class ReadAheadInputStream extends InputStream {
+
+	private static final int BLOCK_SIZE = 256 << 10;
+	private static final int BLOCK_COUNT = 8;
+	// how often a blocked reader thread checks whether the stream was abandoned
+	private static final long ABANDON_CHECK_MS = 1000;
+
+	// marks end of data, also after read error
+	private static final Block END = new Block(0);
+
+	private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(BLOCK_COUNT + 1);
+	private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCK_COUNT);
+	private final Reader reader;
+	private final Thread readerThread;
+
+	private boolean closed;
+	private Block current;
+	private int position;
+	private boolean finished;
+
+	public ReadAheadInputStream(InputStream source) {
+		for (int i = 0; i < BLOCK_COUNT; i++) {
+			free.add(new Block(BLOCK_SIZE));
+		}
+		reader = new Reader(source, filled, free, this);
+		readerThread = new Thread(reader, "JFR read ahead"); //$NON-NLS-1$
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	/**
+	 * @return <code>false</code> if there is no more data
+	 */
+	private boolean ensureData() throws IOException {
+		if (current != null && position < current.length) {
+			return true;
+		}
+		if (finished) {
+			return false;
+		}
+		if (closed) {
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		}
+		if (current != null) {
+			free.add(current);
+			current = null;
+		}
+		Block block;
+		try {
+			block = filled.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		if (block == END) {
+			finished = true;
+			if (reader.error != null) {
+				throw new IOException(reader.error.getMessage(), reader.error);
+			}
+			return false;
+		}
+		current = block;
+		position = 0;
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureData()) {
+			return -1;
+		}
+		return current.data[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureData()) {
+			return -1;
+		}
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current.data, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0 || !ensureData()) {
+			return 0;
+		}
+		int skipped = (int) Math.min(n, current.length - position);
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return current == null ? 0 : current.length - position;
+	}
+
+	/**
+	 * Stops the reader thread and waits until it has closed the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			current = null;
+			reader.closed = true;
+			readerThread.interrupt();
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (reader.closeError != null) {
+				throw reader.closeError;
+			}
+		}
+	}
+
+	/**
+	 * Body of the reader thread. It does not reference the stream strongly, so that an abandoned
+	 * stream can be collected.
+	 */
+	private static class Reader implements Runnable {
+
+		private final InputStream source;
+		private final BlockingQueue<Block> filled;
+		private final BlockingQueue<Block> free;
+		private final WeakReference<ReadAheadInputStream> owner;
+
+		volatile boolean closed;
+		volatile IOException error;
+		volatile IOException closeError;
+
+		Reader(InputStream source, BlockingQueue<Block> filled, BlockingQueue<Block> free,
+				ReadAheadInputStream owner) {
+			this.source = source;
+			this.filled = filled;
+			this.free = free;
+			this.owner = new WeakReference<>(owner);
+		}
+
+		@Override
+		public void run() {
+			try {
+				Block block;
+				while ((block = takeFree()) != null) {
+					block.length = 0;
+					int n = 0;
+					while (!closed && block.length < block.data.length
+							&& (n = source.read(block.data, block.length, block.data.length - block.length)) >= 0) {
+						block.length += n;
+					}
+					if (block.length > 0) {
+						filled.put(block);
+					}
+					if (n < 0) {
+						break;
+					}
+				}
+			} catch (InterruptedException e) {
+				// closed
+			} catch (IOException e) {
+				if (!closed) {
+					error = e;
+				}
+			} finally {
+				// there is always room for END, as queue capacity exceeds number of blocks
+				filled.offer(END);
+				try {
+					source.close();
+				} catch (IOException e) {
+					closeError = e;
+				}
+			}
+		}
+
+		/**
+		 * @return <code>null</code> if the stream was closed or abandoned
+		 */
+		private Block takeFree() throws InterruptedException {
+			while (!closed) {
+				Block block = free.poll(ABANDON_CHECK_MS, TimeUnit.MILLISECONDS);
+				if (block != null) {
+					return block;
+				}
+				if (owner.get() == null) {
+					return null;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static class Block {
+
+		final byte[] data;
+		int length;
+
+		Block(int size) {
+			data = new byte[size];
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory mapped temporary file, which holds event data outside of heap.
+ * <p>
+ * File is split into fixed size regions, which are mapped as they are needed. Space is allocated
+ * in blocks, which never cross a region boundary, so a block is always accessed through a single
+ * buffer. Blocks are written and read with absolute buffer operations, so distinct blocks could be
+ * used by different threads concurrently.
+ * <p>
+ * File is deleted as soon as it is opened where the platform allows, and on {@link #close()}
+ * otherwise.
+ */
+class SpillFile implements Closeable {
+
+	static final int REGION_SHIFT = 26; // 64 MiB
+	static final int REGION_SIZE = 1 << REGION_SHIFT;
+	static final int MAX_BLOCK_SIZE = 1 << 16;
+
+	private final File file;
+	private final FileChannel channel;
+	private volatile ByteBuffer[] regions = new ByteBuffer[0];
+	// position of next block in file
+	private long position;
+
+	SpillFile(File directory) throws IOException {
+		this.file = File.createTempFile("sjk-jfr-", ".spill", directory); //$NON-NLS-1$ //$NON-NLS-2$
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (!file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * @return file offset of a new block
+	 */
+	synchronized long allocate(int size) {
+		if (size > MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block is too large: " + size); //$NON-NLS-1$
+		}
+		long offset = position;
+		if ((offset >>> REGION_SHIFT) != ((offset + size - 1) >>> REGION_SHIFT)) {
+			// start new region
+			offset = ((offset >>> REGION_SHIFT) + 1) << REGION_SHIFT;
+		}
+		int region = (int) (offset >>> REGION_SHIFT);
+		if (region >= regions.length) {
+			ByteBuffer[] newRegions = Arrays.copyOf(regions, region + 1);
+			try {
+				newRegions[region] = channel.map(MapMode.READ_WRITE, (long) region << REGION_SHIFT, REGION_SIZE)
+						.order(ByteOrder.nativeOrder());
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException("Could not extend spill file " + file, e); //$NON-NLS-1$
+			}
+			regions = newRegions;
+		}
+		position = offset + size;
+		return offset;
+	}
+
+	/**
+	 * @return buffer of region containing offset, offset in the buffer is {@link #index(long)}
+	 */
+	ByteBuffer region(long offset) {
+		return regions[(int) (offset >>> REGION_SHIFT)];
+	}
+
+	static int index(long offset) {
+		return (int) (offset & (REGION_SIZE - 1));
+	}
+
+	/**
+	 * @return bytes allocated so far
+	 */
+	synchronized long size() {
+		return position;
+	}
+
+	/**
+	 * Closes and deletes the file. Blocks must not be accessed afterwards, mappings are released
+	 * once buffers are collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		}
+		finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.Closeable;
+
+import org.openjdk.jmc.common.IPredicate;
+import org.openjdk.jmc.flightrecorder.internal.IChunkSupplier;
+import org.openjdk.jmc.flightrecorder.internal.parser.LoaderContext;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+
+/**
+ * Reads JFR data one chunk at a time, only thread samples of each chunk are decoded and returned
+ * by {@link ThreadSampleCollector}.
+ */
+class ThreadSampleChunkReader extends AbstractChunkReader<ThreadSampleCollector> {
+
+	private static final IPredicate<String> THREAD_SAMPLES = new IPredicate<String>() {
+
+		@Override
+		public boolean evaluate(String eventTypeId) {
+			return ThreadSampleCollector.EVENT_TYPES.contains(eventTypeId);
+		}
+	};
+
+	ThreadSampleChunkReader(Closeable stream, IChunkSupplier chunkSupplier, boolean ignoreTruncatedChunk) {
+		super(stream, chunkSupplier,
+				new LoaderOptions().ignoreTruncatedChunk(ignoreTruncatedChunk).eventTypeFilter(THREAD_SAMPLES));
+	}
+
+	@Override
+	IEventSinkFactory createSinkFactory() {
+		return new ThreadSampleCollector();
+	}
+
+	@Override
+	ThreadSampleCollector buildChunk(LoaderContext context, IEventSinkFactory sinkFactory) {
+		context.getSinkFactory().flush();
+		return (ThreadSampleCollector) sinkFactory;
+	}
+}
@@ -0,0 +1,132 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmc.common.IMCStackTrace;
+import org.openjdk.jmc.common.IMCThread;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.jdk.JdkTypeIDs;
+import org.openjdk.jmc.flightrecorder.parser.IEventSink;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+import org.openjdk.jmc.flightrecorder.parser.IPrimitiveEventSink;
+import org.openjdk.jmc.flightrecorder.parser.ValueField;
+
+/**
+ * Terminal event sink factory, which keeps timestamp, thread and stack trace of thread sample events
+ * of one chunk. Events of other types are dropped.
+ * <p>
+ * Samples are kept in the order they were decoded, i.e. in recording order rather than timestamp
+ * order. Events must be added from a single thread, which is the case as one instance is used per
+ * chunk.
+ */
+class ThreadSampleCollector implements IEventSinkFactory {
+
+	static final List<String> EVENT_TYPES = Arrays.asList(JdkTypeIDs.EXECUTION_SAMPLE,
+			JdkTypeIDs.NATIVE_METHOD_SAMPLE);
+
+	private static final IEventSink NOP_SINK = new IEventSink() {
+
+		@Override
+		public void addEvent(Object[] values) {
+			// not a thread sample
+		}
+	};
+
+	private long[] timestamps = new long[256];
+	private IMCThread[] threads = new IMCThread[256];
+	private IMCStackTrace[] stackTraces = new IMCStackTrace[256];
+	private int size;
+
+	@Override
+	public synchronized IEventSink create(String identifier, String label, String[] category, String description,
+			List<ValueField> dataStructure) {
+		return EVENT_TYPES.contains(identifier) ? new SampleSink(dataStructure) : NOP_SINK;
+	}
+
+	@Override
+	public void flush() {
+		// samples are kept until read
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return timestamp of sample in epoch nanoseconds
+	 */
+	public long getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	public IMCThread getThread(int index) {
+		return threads[index];
+	}
+
+	public IMCStackTrace getStackTrace(int index) {
+		return stackTraces[index];
+	}
+
+	private void add(long timestamp, Object thread, Object stackTrace) {
+		if (size == timestamps.length) {
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+			threads = Arrays.copyOf(threads, size * 2);
+			stackTraces = Arrays.copyOf(stackTraces, size * 2);
+		}
+		timestamps[size] = timestamp;
+		threads[size] = (IMCThread) thread;
+		stackTraces[size] = (IMCStackTrace) stackTrace;
+		++size;
+	}
+
+	private class SampleSink implements IPrimitiveEventSink {
+
+		private final int timeIndex;
+		private final int threadIndex;
+		private final int stackTraceIndex;
+
+		SampleSink(List<ValueField> fields) {
+			int startTime = -1;
+			int endTime = -1;
+			int thread = -1;
+			int stackTrace = -1;
+			for (int i = 0; i < fields.size(); i++) {
+				String name = fields.get(i).getIdentifier();
+				if ("startTime".equals(name)) {
+					startTime = i;
+				}
+				else if ("(endTime)".equals(name)) {
+					endTime = i;
+				}
+				else if ("eventThread".equals(name) || "sampledThread".equals(name)) {
+					thread = i;
+				}
+				else if ("stackTrace".equals(name)) {
+					stackTrace = i;
+				}
+			}
+			this.timeIndex = startTime < 0 ? endTime : startTime;
+			this.threadIndex = thread;
+			this.stackTraceIndex = stackTrace;
+		}
+
+		@Override
+		public void addEvent(Object[] values) {
+			long timestamp = timeIndex < 0 ? 0
+					: ((IQuantity) values[timeIndex]).clampedLongValueIn(UnitLookup.EPOCH_NS);
+			add(timestamp, value(values, threadIndex), value(values, stackTraceIndex));
+		}
+
+		@Override
+		public void addEvent(Object[] values, long[] longValues, double[] doubleValues) {
+			long timestamp = timeIndex < 0 ? 0 : longValues[timeIndex];
+			add(timestamp, value(values, threadIndex), value(values, stackTraceIndex));
+		}
+
+		private Object value(Object[] values, int index) {
+			return index < 0 ? null : values[index];
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.gridkit.jvmtool.codec.stacktrace.ThreadSnapshotEventPojo;
+import org.gridkit.jvmtool.event.Event;
+import org.gridkit.jvmtool.event.EventMorpher;
+import org.gridkit.jvmtool.event.EventReader;
+import org.gridkit.jvmtool.event.MorphingEventReader;
+import org.gridkit.jvmtool.event.SimpleErrorEvent;
+import org.gridkit.jvmtool.stacktrace.StackFrame;
+import org.gridkit.jvmtool.stacktrace.StackFrameArray;
+import org.gridkit.jvmtool.stacktrace.StackFrameList;
+import org.openjdk.jmc.common.IMCFrame;
+import org.openjdk.jmc.common.IMCMethod;
+import org.openjdk.jmc.common.IMCPackage;
+import org.openjdk.jmc.common.IMCStackTrace;
+import org.openjdk.jmc.common.IMCThread;
+
+/**
+ * Streams thread samples ({@code jdk.ExecutionSample} and {@code jdk.NativeMethodSample}) as
+ * thread snapshot events, reading one chunk at a time.
+ * <p>
+ * Same event instance is returned for every sample, caller should copy it if needed beyond next
+ * call. Samples are produced in recording order within each chunk. Stack frames are interned,
+ * each distinct frame is converted once per chunk and shared across the whole recording.
+ */
+class ThreadSampleEventReader implements EventReader<Event> {
+
+	private final ThreadSampleChunkReader reader;
+
+	private ThreadSampleCollector chunk;
+	private int index;
+
+	private final ThreadSnapshotEventPojo threadPojo = new ThreadSnapshotEventPojo();
+	private Event event = null;
+	private boolean error;
+
+	// JMC objects are unique per chunk, so conversion results are cached by identity
+	private final Map<IMCStackTrace, StackFrameList> chunkTraces = new IdentityHashMap<IMCStackTrace, StackFrameList>();
+	private final Map<IMCFrame, StackFrame> chunkFrames = new IdentityHashMap<IMCFrame, StackFrame>();
+	private final Map<StackFrame, StackFrame> frames = new HashMap<StackFrame, StackFrame>();
+
+	public ThreadSampleEventReader(ThreadSampleChunkReader reader) {
+		this.reader = reader;
+	}
+
+	@Override
+	public Iterator<Event> iterator() {
+		return this;
+	}
+
+	private void seek() {
+		if (error) {
+			return;
+		}
+		try {
+			while (chunk == null || index >= chunk.size()) {
+				chunk = null;
+				chunkTraces.clear();
+				chunkFrames.clear();
+				ThreadSampleCollector next = reader.readNext();
+				if (next == null) {
+					return;
+				}
+				chunk = next;
+				index = 0;
+			}
+			event = parseSample(index++);
+		}
+		catch (Exception e) {
+			event = new SimpleErrorEvent(e);
+			error = true;
+		}
+	}
+
+	private Event parseSample(int n) {
+		threadPojo.timestamp(TimeUnit.NANOSECONDS.toMillis(chunk.getTimestamp(n)));
+		IMCThread thread = chunk.getThread(n);
+		Long threadId = thread == null ? null : thread.getThreadId();
+		threadPojo.threadId(threadId == null ? -1 : threadId);
+		threadPojo.threadName(thread == null ? null : thread.getThreadName());
+		IMCStackTrace stackTrace = chunk.getStackTrace(n);
+		threadPojo.stackTrace(stackTrace == null ? null : trace(stackTrace));
+		return threadPojo;
+	}
+
+	private StackFrameList trace(IMCStackTrace trace) {
+		StackFrameList list = chunkTraces.get(trace);
+		if (list == null) {
+			List<? extends IMCFrame> jfrFrames = trace.getFrames();
+			StackFrame[] t = new StackFrame[jfrFrames.size()];
+			for (int i = 0; i != t.length; ++i) {
+				t[i] = frame(jfrFrames.get(i));
+			}
+			list = new StackFrameArray(t);
+			chunkTraces.put(trace, list);
+		}
+		return list;
+	}
+
+	private StackFrame frame(IMCFrame f) {
+		StackFrame frame = chunkFrames.get(f);
+		if (frame == null) {
+			frame = intern(convert(f));
+			chunkFrames.put(f, frame);
+		}
+		return frame;
+	}
+
+	private StackFrame intern(StackFrame frame) {
+		StackFrame known = frames.get(frame);
+		if (known == null) {
+			frames.put(frame, frame);
+			return frame;
+		}
+		return known;
+	}
+
+	private static StackFrame convert(IMCFrame f) {
+		IMCMethod method = f.getMethod();
+		IMCPackage pkg = method.getType().getPackage();
+		String pn = pkg == null || pkg.getName() == null ? "" : pkg.getName();
+		String cn = method.getType().getTypeName();
+		String mn = method.getMethodName();
+		int line = (f.getFrameLineNumber() == null) ? -1 : f.getFrameLineNumber();
+		if (Boolean.TRUE.equals(method.isNative())) {
+			line = -2;
+		}
+		// fake source to make line numbers visible
+		String src = line >= 0 ? "line" : null;
+
+		return new StackFrame(pn, cn, mn, src, line);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (event == null) {
+			seek();
+		}
+		return event != null;
+	}
+
+	@Override
+	public Event next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Event e = event;
+		event = null;
+		return e;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <M extends Event> EventReader<M> morph(EventMorpher<Event, M> morpher) {
+		return new MorphingEventReader<M>(this, morpher);
+	}
+
+	@Override
+	public Event peekNext() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return event;
+	}
+
+	@Override
+	public void dispose() {
+		chunk = null;
+		chunkTraces.clear();
+		chunkFrames.clear();
+		try {
+			reader.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+}
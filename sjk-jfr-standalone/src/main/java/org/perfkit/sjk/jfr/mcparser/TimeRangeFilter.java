@@ -0,0 +1,190 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.IRange;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.parser.IEventSink;
+import org.openjdk.jmc.flightrecorder.parser.IEventSinkFactory;
+import org.openjdk.jmc.flightrecorder.parser.IParserExtension;
+import org.openjdk.jmc.flightrecorder.parser.IPrimitiveEventSink;
+import org.openjdk.jmc.flightrecorder.parser.ValueField;
+
+/**
+ * Restricts parsing to a time range.
+ * <p>
+ * Chunks whose time range (as recorded in chunk header) does not overlap with the filter are
+ * skipped by the loader without being decoded, see {@link #overlaps(IRange)}. Being a parser
+ * extension, the filter also drops events of remaining chunks which start outside of the range.
+ * Event start is its <code>startTime</code> field, or <code>(endTime)</code> for events without
+ * duration in JDK 7/8 recordings. Events without timestamp are always kept.
+ * <p>
+ * Events are written to the chunk where they end, so an event which has started in the range but
+ * ended after a chunk rotation past the end of the range could be missed.
+ */
+public class TimeRangeFilter implements IParserExtension {
+
+	private static final String RANGE_SEPARATOR = ".."; //$NON-NLS-1$
+
+	private final long startNanos;
+	private final long endNanos;
+
+	/**
+	 * @param startNanos
+	 *            start of range (inclusive) in nanoseconds since epoch
+	 * @param endNanos
+	 *            end of range (inclusive) in nanoseconds since epoch
+	 */
+	public TimeRangeFilter(long startNanos, long endNanos) {
+		if (startNanos > endNanos) {
+			throw new IllegalArgumentException("Empty time range"); //$NON-NLS-1$
+		}
+		this.startNanos = startNanos;
+		this.endNanos = endNanos;
+	}
+
+	/**
+	 * Parses range in <code>from..to</code> format. Either bound could be an ISO-8601 instant (e.g.
+	 * <code>2019-03-01T10:15:30Z</code>) or milliseconds since epoch, either bound could be omitted
+	 * for a range open on that side.
+	 */
+	public static TimeRangeFilter parse(String range) {
+		int n = range.indexOf(RANGE_SEPARATOR);
+		if (n < 0) {
+			throw new IllegalArgumentException("Time range should be in 'from..to' format: " + range); //$NON-NLS-1$
+		}
+		String from = range.substring(0, n).trim();
+		String to = range.substring(n + RANGE_SEPARATOR.length()).trim();
+		return new TimeRangeFilter(from.isEmpty() ? Long.MIN_VALUE : parseNanos(from),
+				to.isEmpty() ? Long.MAX_VALUE : parseNanos(to));
+	}
+
+	private static long parseNanos(String time) {
+		try {
+			return Long.parseLong(time) * 1000000;
+		}
+		catch (NumberFormatException e) {
+			// not epoch millis
+		}
+		try {
+			Instant instant = Instant.parse(time);
+			return instant.getEpochSecond() * 1000000000 + instant.getNano();
+		}
+		catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Cannot parse time: " + time, e); //$NON-NLS-1$
+		}
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	public long getEndNanos() {
+		return endNanos;
+	}
+
+	public boolean contains(long epochNanos) {
+		return epochNanos >= startNanos && epochNanos <= endNanos;
+	}
+
+	/**
+	 * @param range
+	 *            chunk time range
+	 * @return <code>true</code> if chunk may contain events from this range
+	 */
+	public boolean overlaps(IRange<IQuantity> range) {
+		return range.getStart().clampedLongValueIn(UnitLookup.EPOCH_NS) <= endNanos
+				&& range.getEnd().clampedLongValueIn(UnitLookup.EPOCH_NS) >= startNanos;
+	}
+
+	/**
+	 * @return parser extensions with this filter prepended, so events are dropped before any other
+	 *         processing
+	 */
+	public List<IParserExtension> prependTo(List<? extends IParserExtension> extensions) {
+		List<IParserExtension> result = new ArrayList<>(extensions.size() + 1);
+		result.add(this);
+		result.addAll(extensions);
+		return result;
+	}
+
+	@Override
+	public String getValueInterpretation(String eventTypeId, String fieldId) {
+		return null;
+	}
+
+	@Override
+	public IEventSinkFactory getEventSinkFactory(final IEventSinkFactory subFactory) {
+		return new IEventSinkFactory() {
+
+			@Override
+			public IEventSink create(String identifier, String label, String[] category, String description,
+					List<ValueField> dataStructure) {
+				IEventSink sink = subFactory.create(identifier, label, category, description, dataStructure);
+				int timeIndex = -1;
+				for (int i = 0; i < dataStructure.size(); i++) {
+					String field = dataStructure.get(i).getIdentifier();
+					if ("startTime".equals(field)) { //$NON-NLS-1$
+						timeIndex = i;
+						break;
+					}
+					else if ("(endTime)".equals(field)) { //$NON-NLS-1$
+						timeIndex = i;
+					}
+				}
+				if (timeIndex < 0) {
+					return sink;
+				}
+				return sink instanceof IPrimitiveEventSink
+						? new PrimitiveFilterSink((IPrimitiveEventSink) sink, timeIndex)
+						: new FilterSink(sink, timeIndex);
+			}
+
+			@Override
+			public void flush() {
+				subFactory.flush();
+			}
+		};
+	}
+
+	private class FilterSink implements IEventSink {
+
+		private final IEventSink sink;
+		final int timeIndex;
+
+		FilterSink(IEventSink sink, int timeIndex) {
+			this.sink = sink;
+			this.timeIndex = timeIndex;
+		}
+
+		@Override
+		public void addEvent(Object[] values) {
+			Object time = values[timeIndex];
+			if (!(time instanceof IQuantity) || contains(((IQuantity) time).clampedLongValueIn(UnitLookup.EPOCH_NS))) {
+				sink.addEvent(values);
+			}
+		}
+	}
+
+	private class PrimitiveFilterSink extends FilterSink implements IPrimitiveEventSink {
+
+		private final IPrimitiveEventSink sink;
+
+		PrimitiveFilterSink(IPrimitiveEventSink sink, int timeIndex) {
+			super(sink, timeIndex);
+			this.sink = sink;
+		}
+
+		@Override
+		public void addEvent(Object[] values, long[] longValues, double[] doubleValues) {
+			// timestamps are passed as epoch nanoseconds
+			if (contains(longValues[timeIndex])) {
+				sink.addEvent(values, longValues, doubleValues);
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.common.collection;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+/**
+ * Compares random lookups in {@link LongObjectMap} and in {@link FastAccessNumberMap} with the
+ * page layout the parsers used for event types. Dense keys fit into the pages of
+ * FastAccessNumberMap, sparse keys mostly go to its overflow map. Not run as part of the build, use
+ * <code>-Dtest=LongObjectMapBenchmark</code>.
+ */
+@BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+public class LongObjectMapBenchmark extends AbstractBenchmark {
+
+	private static final int KEY_COUNT = 20000;
+	private static final int LOOKUP_COUNT = 1000000;
+
+	private static long[] denseLookups;
+	private static long[] sparseLookups;
+	private static FastAccessNumberMap<Object> denseFastAccessMap = new FastAccessNumberMap<>(100, 5);
+	private static FastAccessNumberMap<Object> sparseFastAccessMap = new FastAccessNumberMap<>(100, 5);
+	private static LongObjectMap<Object> denseMap = new LongObjectMap<>();
+	private static LongObjectMap<Object> sparseMap = new LongObjectMap<>();
+
+	@BeforeClass
+	public static void fillMaps() {
+		Random random = new Random(1);
+		long[] denseKeys = new long[KEY_COUNT];
+		long[] sparseKeys = new long[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++) {
+			denseKeys[i] = random.nextInt(500);
+			sparseKeys[i] = random.nextInt(5000000);
+			Object value = Integer.valueOf(i);
+			denseFastAccessMap.put(denseKeys[i], value);
+			denseMap.put(denseKeys[i], value);
+			sparseFastAccessMap.put(sparseKeys[i], value);
+			sparseMap.put(sparseKeys[i], value);
+		}
+		denseLookups = new long[LOOKUP_COUNT];
+		sparseLookups = new long[LOOKUP_COUNT];
+		for (int i = 0; i < LOOKUP_COUNT; i++) {
+			int key = random.nextInt(KEY_COUNT);
+			denseLookups[i] = denseKeys[key];
+			sparseLookups[i] = sparseKeys[key];
+		}
+	}
+
+	@Test
+	public void dense_fast_access_number_map() {
+		int found = 0;
+		for (long key : denseLookups) {
+			if (denseFastAccessMap.get(key) != null) {
+				found++;
+			}
+		}
+		Assert.assertEquals(LOOKUP_COUNT, found);
+	}
+
+	@Test
+	public void dense_long_object_map() {
+		int found = 0;
+		for (long key : denseLookups) {
+			if (denseMap.get(key) != null) {
+				found++;
+			}
+		}
+		Assert.assertEquals(LOOKUP_COUNT, found);
+	}
+
+	@Test
+	public void sparse_fast_access_number_map() {
+		int found = 0;
+		for (long key : sparseLookups) {
+			if (sparseFastAccessMap.get(key) != null) {
+				found++;
+			}
+		}
+		Assert.assertEquals(LOOKUP_COUNT, found);
+	}
+
+	@Test
+	public void sparse_long_object_map() {
+		int found = 0;
+		for (long key : sparseLookups) {
+			if (sparseMap.get(key) != null) {
+				found++;
+			}
+		}
+		Assert.assertEquals(LOOKUP_COUNT, found);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.common.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LongObjectMapTest {
+
+	@Test
+	public void put_get() {
+		LongObjectMap<String> map = new LongObjectMap<>();
+		Assert.assertNull(map.get(1));
+		map.put(1, "a"); //$NON-NLS-1$
+		map.put(0, "b"); //$NON-NLS-1$
+		map.put(-1, "c"); //$NON-NLS-1$
+		map.put(Long.MIN_VALUE, "d"); //$NON-NLS-1$
+		map.put(Long.MAX_VALUE, "e"); //$NON-NLS-1$
+		Assert.assertEquals(5, map.size());
+		Assert.assertEquals("a", map.get(1)); //$NON-NLS-1$
+		Assert.assertEquals("b", map.get(0)); //$NON-NLS-1$
+		Assert.assertEquals("c", map.get(-1)); //$NON-NLS-1$
+		Assert.assertEquals("d", map.get(Long.MIN_VALUE)); //$NON-NLS-1$
+		Assert.assertEquals("e", map.get(Long.MAX_VALUE)); //$NON-NLS-1$
+		Assert.assertNull(map.get(2));
+	}
+
+	@Test
+	public void overwrite_keeps_position() {
+		LongObjectMap<String> map = new LongObjectMap<>();
+		map.put(10, "a"); //$NON-NLS-1$
+		map.put(20, "b"); //$NON-NLS-1$
+		map.put(30, "c"); //$NON-NLS-1$
+		map.put(20, "B"); //$NON-NLS-1$
+		Assert.assertEquals(3, map.size());
+		Assert.assertEquals("B", map.get(20)); //$NON-NLS-1$
+		Assert.assertEquals(Arrays.asList("a", "B", "c"), toList(map)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void null_value() {
+		new LongObjectMap<String>().put(1, null);
+	}
+
+	@Test
+	public void rehash() {
+		LongObjectMap<Long> map = new LongObjectMap<>(1);
+		List<Long> expected = new ArrayList<>();
+		for (long i = 0; i < 10000; i++) {
+			// keys sharing low bits, as ids with a common stride
+			long key = i << 20;
+			map.put(key, key);
+			expected.add(key);
+			if (i % 1000 == 0) {
+				// earlier keys survive every rehash
+				for (long j = 0; j <= i; j++) {
+					Assert.assertEquals(Long.valueOf(j << 20), map.get(j << 20));
+				}
+			}
+		}
+		Assert.assertEquals(10000, map.size());
+		Assert.assertNull(map.get(1));
+		Assert.assertEquals(expected, toList(map));
+	}
+
+	@Test
+	public void insertion_order_iteration() {
+		LongObjectMap<Long> map = new LongObjectMap<>();
+		List<Long> expected = new ArrayList<>();
+		Random random = new Random(1);
+		for (int i = 0; i < 1000; i++) {
+			long key = random.nextLong();
+			map.put(key, key);
+			expected.add(key);
+		}
+		Assert.assertEquals(expected, toList(map));
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void iterator_end() {
+		LongObjectMap<String> map = new LongObjectMap<>();
+		map.put(1, "a"); //$NON-NLS-1$
+		Iterator<String> it = map.iterator();
+		it.next();
+		Assert.assertFalse(it.hasNext());
+		it.next();
+	}
+
+	@Test
+	public void same_as_hash_map() {
+		LongObjectMap<Integer> map = new LongObjectMap<>();
+		Map<Long, Integer> reference = new HashMap<>();
+		Random random = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			long key = random.nextInt(20000) - 10000;
+			if (random.nextBoolean()) {
+				map.put(key, i);
+				reference.put(key, i);
+			}
+			else {
+				Assert.assertEquals(reference.get(key), map.get(key));
+			}
+		}
+		Assert.assertEquals(reference.size(), map.size());
+		for (Map.Entry<Long, Integer> entry : reference.entrySet()) {
+			Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+	}
+
+	private static <T> List<T> toList(Iterable<T> values) {
+		List<T> list = new ArrayList<>();
+		for (T value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.parser.v1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmc.common.IMCClassLoader;
+import org.openjdk.jmc.common.IMCFrame;
+import org.openjdk.jmc.common.IMCMethod;
+import org.openjdk.jmc.common.IMCStackTrace;
+import org.openjdk.jmc.common.IMCType;
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.flightrecorder.JfrAttributes;
+import org.openjdk.jmc.flightrecorder.internal.EventArray;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaClass;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrJavaClassLoader;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrMethod;
+import org.openjdk.jmc.flightrecorder.internal.util.CanonicalConstantMap;
+import org.perfkit.sjk.jfr.mcparser.ChunkReader;
+import org.perfkit.sjk.jfr.mcparser.JFRLoader;
+import org.perfkit.sjk.jfr.mcparser.LoaderOptions;
+
+/**
+ * Constants shared by chunks loaded with the same context, see TypeManager.
+ */
+public class CanonicalConstantsTest {
+
+	@Test
+	public void classes_of_distinct_loaders_are_not_shared() {
+		JfrJavaClass app = javaClass("com/acme/Main", //$NON-NLS-1$
+				loader("app", "jdk/internal/loader/ClassLoaders$AppClassLoader")); //$NON-NLS-1$ //$NON-NLS-2$
+		JfrJavaClass appAgain = javaClass("com/acme/Main", //$NON-NLS-1$
+				loader("app", "jdk/internal/loader/ClassLoaders$AppClassLoader")); //$NON-NLS-1$ //$NON-NLS-2$
+		JfrJavaClass plugin = javaClass("com/acme/Main", loader("plugin", "com/acme/PluginLoader")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		JfrJavaClass boot = javaClass("com/acme/Main", null); //$NON-NLS-1$
+
+		Assert.assertEquals(app, appAgain);
+		Assert.assertNotEquals(app, plugin);
+		Assert.assertNotEquals(app, boot);
+		Assert.assertEquals(boot, javaClass("com/acme/Main", null)); //$NON-NLS-1$
+
+		CanonicalConstantMap<Object> classes = new CanonicalConstantMap<>();
+		Assert.assertSame(app, classes.canonicalize(app));
+		Assert.assertSame(app, classes.canonicalize(appAgain));
+		Assert.assertSame(plugin, classes.canonicalize(plugin));
+
+		// methods, and so frames and stack traces, follow their class
+		CanonicalConstantMap<Object> methods = new CanonicalConstantMap<>();
+		JfrMethod appMain = method(app, "main"); //$NON-NLS-1$
+		Assert.assertSame(appMain, methods.canonicalize(appMain));
+		Assert.assertSame(appMain, methods.canonicalize(method(appAgain, "main"))); //$NON-NLS-1$
+		JfrMethod pluginMain = method(plugin, "main"); //$NON-NLS-1$
+		Assert.assertSame(pluginMain, methods.canonicalize(pluginMain));
+	}
+
+	@Test
+	public void shared_constants_match_chunk_by_chunk_parse() throws Exception {
+		// one context for all chunks, constants are shared between chunks
+		EventArray[] shared;
+		try (InputStream in = openRecording()) {
+			shared = JFRLoader.loadStream(in, new LoaderOptions());
+		}
+		// one context per chunk, nothing is shared
+		List<EventArray[]> chunks = new ArrayList<>();
+		try (ChunkReader reader = JFRLoader.openStream(openRecording(), new LoaderOptions())) {
+			EventArray[] chunk;
+			while ((chunk = reader.readNextChunk()) != null) {
+				chunks.add(chunk);
+			}
+		}
+		Assert.assertTrue(chunks.size() > 1);
+
+		Map<IMCStackTrace, Boolean> sharedTraces = new IdentityHashMap<>();
+		List<String> expected = new ArrayList<>();
+		List<String> actual = new ArrayList<>();
+		for (EventArray[] chunk : chunks) {
+			collectTraces(chunk, expected, new IdentityHashMap<IMCStackTrace, Boolean>());
+		}
+		collectTraces(shared, actual, sharedTraces);
+		Collections.sort(expected);
+		Collections.sort(actual);
+		Assert.assertTrue(expected.size() > 0);
+		Assert.assertEquals(expected, actual);
+
+		// stack traces repeated in later chunks are the instances of the first chunk
+		Map<IMCStackTrace, Boolean> chunkTraces = new IdentityHashMap<>();
+		for (EventArray[] chunk : chunks) {
+			collectTraces(chunk, new ArrayList<String>(), chunkTraces);
+		}
+		Assert.assertTrue(sharedTraces.size() < chunkTraces.size());
+	}
+
+	private static void collectTraces(EventArray[] arrays, List<String> traces, Map<IMCStackTrace, Boolean> instances) {
+		for (EventArray array : arrays) {
+			IMemberAccessor<IMCStackTrace, IItem> accessor = JfrAttributes.EVENT_STACKTRACE.getAccessor(array.getType());
+			if (accessor == null) {
+				continue;
+			}
+			for (IItem item : array.getEvents()) {
+				IMCStackTrace trace = accessor.getMember(item);
+				if (trace != null) {
+					instances.put(trace, Boolean.TRUE);
+					traces.add(render(trace));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return frames of stack trace, with class loaders of frame methods
+	 */
+	private static String render(IMCStackTrace trace) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(trace.getTruncationState());
+		for (IMCFrame frame : trace.getFrames()) {
+			IMCMethod method = frame.getMethod();
+			sb.append('\n').append(method.getType().getFullName()).append('.').append(method.getMethodName())
+					.append(method.getFormalDescriptor()).append(':').append(frame.getFrameLineNumber()).append(' ')
+					.append(frame.getBCI()).append(' ').append(frame.getType());
+			if (method.getType() instanceof JfrJavaClass) {
+				Object loader = ((JfrJavaClass) method.getType()).classLoader;
+				if (loader instanceof IMCClassLoader) {
+					IMCClassLoader l = (IMCClassLoader) loader;
+					sb.append(" @").append(l.getName()).append(' ') //$NON-NLS-1$
+							.append(l.getType() == null ? null : l.getType().getFullName());
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static InputStream openRecording() throws IOException {
+		InputStream in = CanonicalConstantsTest.class.getClassLoader().getResourceAsStream("recording.jfr.gz"); //$NON-NLS-1$
+		if (in == null) {
+			throw new IOException("Missing test resource recording.jfr.gz"); //$NON-NLS-1$
+		}
+		return new GZIPInputStream(in);
+	}
+
+	private static JfrJavaClass javaClass(String name, IMCClassLoader loader) {
+		JfrJavaClass type = new JfrJavaClass();
+		type.name = name;
+		type.classLoader = loader;
+		return type;
+	}
+
+	private static JfrJavaClassLoader loader(String name, String typeName) {
+		JfrJavaClassLoader loader = new JfrJavaClassLoader();
+		loader.name = name;
+		loader.type = javaClass(typeName, null);
+		return loader;
+	}
+
+	private static JfrMethod method(IMCType type, String name) {
+		JfrMethod method = new JfrMethod();
+		method.type = type;
+		method.name = name;
+		method.descriptor = "()V"; //$NON-NLS-1$
+		return method;
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.parser.v1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openjdk.jmc.common.unit.ContentType;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.internal.InvalidJfrFileException;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.StructTypes.JfrFrame;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.AbstractStructReader;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.BoundStructReader;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.IValueReader;
+import org.openjdk.jmc.flightrecorder.internal.parser.v1.ValueReaders.PrimitiveReader;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+/**
+ * Compares reading of stack frame structs with {@link BoundStructReader} and with the reflective
+ * reader it has replaced. Not run as part of the build, use <code>-Dtest=StructReaderBenchmark</code>.
+ */
+@BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+public class StructReaderBenchmark extends AbstractBenchmark {
+
+	private static final int FRAME_COUNT = 1000000;
+
+	private static byte[] data;
+
+	@BeforeClass
+	public static void writeFrames() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int i = 0; i < FRAME_COUNT; i++) {
+			out.writeLong(i % 1000); // method
+			out.writeInt(i % 500); // lineNumber
+			out.writeInt(i % 100); // bytecodeIndex
+			out.writeLong(i % 4); // type
+		}
+		out.close();
+		data = bytes.toByteArray();
+	}
+
+	@Test
+	public void reflective_reader() throws Exception {
+		readFrames(new ReflectiveReader(JfrFrame.class, 4, UnitLookup.STACKTRACE_FRAME));
+	}
+
+	@Test
+	public void bound_reader() throws Exception {
+		readFrames(new BoundStructReader<>(StructBinding.FRAME, 4, UnitLookup.STACKTRACE_FRAME));
+	}
+
+	private static void readFrames(AbstractStructReader reader) throws Exception {
+		reader.addField("method", "Method", null, new PrimitiveReader("long")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		reader.addField("lineNumber", "Line Number", null, new PrimitiveReader("int")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		reader.addField("bytecodeIndex", "Bytecode Index", null, new PrimitiveReader("int")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		reader.addField("type", "Frame Type", null, new PrimitiveReader("long")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		SeekableInputStream in = new SeekableInputStream(data);
+		long sum = 0;
+		for (int i = 0; i < FRAME_COUNT; i++) {
+			JfrFrame frame = (JfrFrame) reader.resolve(reader.read(in, true));
+			sum += (Long) frame.method + (Integer) frame.lineNumber + (Integer) frame.bytecodeIndex + (Long) frame.type;
+		}
+		Assert.assertEquals(FRAME_COUNT * (499.5 + 249.5 + 49.5 + 1.5), sum, 0);
+	}
+
+	/**
+	 * Reader used before {@link BoundStructReader}, sets fields of struct objects by reflection.
+	 */
+	private static class ReflectiveReader extends AbstractStructReader {
+		private static final String RESERVED_IDENTIFIER_PREFIX = "_"; //$NON-NLS-1$
+		private final List<Field> fields;
+		private final Class<?> klass;
+		private final ContentType<?> ct;
+
+		<T> ReflectiveReader(Class<T> klass, int fieldCount, ContentType<? super T> ct) {
+			super(fieldCount);
+			this.klass = klass;
+			this.ct = ct;
+			fields = new ArrayList<>(fieldCount);
+		}
+
+		@Override
+		public Object read(IDataInput in, boolean allowUnresolvedReference)
+				throws IOException, InvalidJfrFileException {
+			try {
+				Object struct = klass.newInstance();
+				for (int i = 0; i < valueReaders.size(); i++) {
+					Object val = valueReaders.get(i).read(in, allowUnresolvedReference);
+					Field f = fields.get(i);
+					if (f != null) {
+						f.set(struct, val);
+					}
+				}
+				return struct;
+			} catch (InstantiationException | IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public Object resolve(Object value) throws InvalidJfrFileException {
+			try {
+				for (int i = 0; i < valueReaders.size(); i++) {
+					Field f = fields.get(i);
+					if (f != null) {
+						f.set(value, valueReaders.get(i).resolve(f.get(value)));
+					}
+				}
+				return value;
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public ContentType<?> getContentType() {
+			return ct;
+		}
+
+		@Override
+		void addField(String identifier, String name, String description, IValueReader reader) {
+			valueReaders.add(reader);
+			try {
+				try {
+					fields.add(klass.getField(identifier));
+				} catch (NoSuchFieldException e) {
+					fields.add(klass.getField(RESERVED_IDENTIFIER_PREFIX + identifier));
+				}
+			} catch (NoSuchFieldException e) {
+				fields.add(null);
+			}
+		}
+	}
+}
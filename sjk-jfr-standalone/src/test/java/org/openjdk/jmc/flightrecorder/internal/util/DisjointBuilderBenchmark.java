@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+/**
+ * Places 10M overlapping duration events in lanes with {@link DisjointBuilder} and with the linear
+ * lane search of {@link LinearDisjointBuilder}. Events start 0-100 ns apart and last up to 100 us,
+ * which gives about a thousand lanes. Not run as part of the build, use
+ * <code>-Dtest=DisjointBuilderBenchmark</code> with a heap of at least 2 GB. A round of the linear
+ * builder takes minutes.
+ */
+@BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+public class DisjointBuilderBenchmark extends AbstractBenchmark {
+
+	private static final int EVENT_COUNT = 10000000;
+
+	private static Span[] spans;
+
+	@BeforeClass
+	public static void createSpans() {
+		Random random = new Random(1);
+		spans = new Span[EVENT_COUNT];
+		long start = 1000000000L;
+		for (int i = 0; i < EVENT_COUNT; i++) {
+			start += random.nextInt(100);
+			spans[i] = new Span(start, start + random.nextInt(100000));
+		}
+	}
+
+	@Test
+	public void disjoint_builder() {
+		DisjointBuilder<Span> builder = new DisjointBuilder<>(START, END);
+		for (Span span : spans) {
+			builder.add(span);
+		}
+		assertAllPlaced(DisjointBuilder.toArrays(Collections.singletonList(builder), ARRAY_FACTORY));
+	}
+
+	@Test
+	public void linear_disjoint_builder() {
+		LinearDisjointBuilder<Span> builder = new LinearDisjointBuilder<>(START, END);
+		for (Span span : spans) {
+			builder.add(span);
+		}
+		assertAllPlaced(LinearDisjointBuilder.toArrays(Collections.singletonList(builder), ARRAY_FACTORY));
+	}
+
+	private static void assertAllPlaced(Collection<Span[]> arrays) {
+		int count = 0;
+		for (Span[] array : arrays) {
+			count += array.length;
+		}
+		Assert.assertEquals(EVENT_COUNT, count);
+	}
+
+	private static class Span {
+		final long start;
+		final long end;
+
+		Span(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private static final IMemberAccessor<IQuantity, Span> START = new IMemberAccessor<IQuantity, Span>() {
+
+		@Override
+		public IQuantity getMember(Span inObject) {
+			return UnitLookup.EPOCH_NS.quantity(inObject.start);
+		}
+	};
+
+	private static final IMemberAccessor<IQuantity, Span> END = new IMemberAccessor<IQuantity, Span>() {
+
+		@Override
+		public IQuantity getMember(Span inObject) {
+			return UnitLookup.EPOCH_NS.quantity(inObject.end);
+		}
+	};
+
+	private static final DisjointBuilder.ArrayFactory<Span> ARRAY_FACTORY = new DisjointBuilder.ArrayFactory<Span>() {
+
+		@Override
+		public Span[] createArray(int size) {
+			return new Span[size];
+		}
+	};
+}
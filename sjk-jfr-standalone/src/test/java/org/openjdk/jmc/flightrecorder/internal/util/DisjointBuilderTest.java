@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+
+public class DisjointBuilderTest {
+
+	@Test
+	public void same_lanes_for_sorted_starts() {
+		Random random = new Random(1);
+		Span[] spans = new Span[20000];
+		long start = 0;
+		for (int i = 0; i < spans.length; i++) {
+			start += random.nextInt(100);
+			spans[i] = new Span(start, start + random.nextInt(5000));
+		}
+		assertSameLanes(spans);
+	}
+
+	@Test
+	public void same_lanes_for_random_starts() {
+		Random random = new Random(2);
+		Span[] spans = new Span[20000];
+		for (int i = 0; i < spans.length; i++) {
+			long start = random.nextInt(1000000);
+			spans[i] = new Span(start, start + random.nextInt(5000));
+		}
+		assertSameLanes(spans);
+	}
+
+	@Test
+	public void same_lanes_for_equal_timestamps() {
+		// Few distinct values, so lane ends are often equal and spans often empty
+		Random random = new Random(3);
+		Span[] spans = new Span[5000];
+		for (int i = 0; i < spans.length; i++) {
+			long start = random.nextInt(20);
+			spans[i] = new Span(start, start + random.nextInt(3));
+		}
+		assertSameLanes(spans);
+	}
+
+	@Test
+	public void same_lanes_for_nested_spans() {
+		Span[] spans = new Span[200];
+		for (int i = 0; i < spans.length; i++) {
+			spans[i] = new Span(i, 1000 - i);
+		}
+		Collection<Span[]> arrays = assertSameLanes(spans);
+		Assert.assertEquals(spans.length, arrays.size());
+	}
+
+	@Test
+	public void same_arrays_for_multiple_builders() {
+		Random random = new Random(4);
+		List<DisjointBuilder<Span>> builders = new ArrayList<>();
+		List<LinearDisjointBuilder<Span>> linearBuilders = new ArrayList<>();
+		for (int b = 0; b < 8; b++) {
+			DisjointBuilder<Span> builder = new DisjointBuilder<>(START, END);
+			LinearDisjointBuilder<Span> linearBuilder = new LinearDisjointBuilder<>(START, END);
+			long start = random.nextInt(1000);
+			for (int i = 0; i < 2000; i++) {
+				start += random.nextInt(50);
+				Span span = new Span(start, start + random.nextInt(2000));
+				builder.add(span);
+				linearBuilder.add(span);
+			}
+			builders.add(builder);
+			linearBuilders.add(linearBuilder);
+		}
+		Collection<Span[]> arrays = DisjointBuilder.toArrays(builders, ARRAY_FACTORY);
+		assertSameArrays(LinearDisjointBuilder.toArrays(linearBuilders, ARRAY_FACTORY), arrays);
+		assertDisjoint(arrays, 8 * 2000);
+	}
+
+	@Test
+	public void primitive_add_same_as_accessors() {
+		Random random = new Random(5);
+		DisjointBuilder<Span> builder = new DisjointBuilder<>(START, END);
+		DisjointBuilder<Span> primitiveBuilder = new DisjointBuilder<>(null, null);
+		for (int i = 0; i < 5000; i++) {
+			long start = random.nextInt(100000);
+			Span span = new Span(start, start + random.nextInt(1000));
+			builder.add(span);
+			primitiveBuilder.add(span, span.start, span.end);
+		}
+		assertSameArrays(toArrays(builder), toArrays(primitiveBuilder));
+	}
+
+	@Test
+	public void no_spans() {
+		Assert.assertTrue(toArrays(new DisjointBuilder<>(START, END)).isEmpty());
+	}
+
+	private static Collection<Span[]> assertSameLanes(Span ... spans) {
+		DisjointBuilder<Span> builder = new DisjointBuilder<>(START, END);
+		LinearDisjointBuilder<Span> linearBuilder = new LinearDisjointBuilder<>(START, END);
+		for (Span span : spans) {
+			builder.add(span);
+			linearBuilder.add(span);
+		}
+		Collection<Span[]> arrays = toArrays(builder);
+		assertSameArrays(LinearDisjointBuilder.toArrays(Collections.singletonList(linearBuilder), ARRAY_FACTORY),
+				arrays);
+		assertDisjoint(arrays, spans.length);
+		return arrays;
+	}
+
+	private static void assertSameArrays(Collection<Span[]> expected, Collection<Span[]> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		List<Span[]> expectedList = new ArrayList<>(expected);
+		List<Span[]> actualList = new ArrayList<>(actual);
+		for (int i = 0; i < expectedList.size(); i++) {
+			// Same instances in the same order
+			Assert.assertTrue("array " + i, Arrays.equals(expectedList.get(i), actualList.get(i)));
+		}
+	}
+
+	private static void assertDisjoint(Collection<Span[]> arrays, int expectedCount) {
+		int count = 0;
+		for (Span[] array : arrays) {
+			for (int i = 1; i < array.length; i++) {
+				Assert.assertTrue(array[i - 1] + " overlaps " + array[i], array[i - 1].end <= array[i].start);
+			}
+			count += array.length;
+		}
+		Assert.assertEquals(expectedCount, count);
+	}
+
+	private static Collection<Span[]> toArrays(DisjointBuilder<Span> builder) {
+		return DisjointBuilder.toArrays(Collections.singletonList(builder), ARRAY_FACTORY);
+	}
+
+	private static class Span {
+		final long start;
+		final long end;
+
+		Span(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public String toString() {
+			return start + "-" + end; //$NON-NLS-1$
+		}
+	}
+
+	private static final IMemberAccessor<IQuantity, Span> START = new IMemberAccessor<IQuantity, Span>() {
+
+		@Override
+		public IQuantity getMember(Span inObject) {
+			return UnitLookup.EPOCH_NS.quantity(inObject.start);
+		}
+	};
+
+	private static final IMemberAccessor<IQuantity, Span> END = new IMemberAccessor<IQuantity, Span>() {
+
+		@Override
+		public IQuantity getMember(Span inObject) {
+			return UnitLookup.EPOCH_NS.quantity(inObject.end);
+		}
+	};
+
+	private static final DisjointBuilder.ArrayFactory<Span> ARRAY_FACTORY = new DisjointBuilder.ArrayFactory<Span>() {
+
+		@Override
+		public Span[] createArray(int size) {
+			return new Span[size];
+		}
+	};
+}
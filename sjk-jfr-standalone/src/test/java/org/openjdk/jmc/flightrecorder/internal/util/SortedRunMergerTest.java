@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018, Oracle and/or its affiliates. All rights reserved.
+ *
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The contents of this file are subject to the terms of either the Universal Permissive License
+ * v 1.0 as shown at http://oss.oracle.com/licenses/upl
+ *
+ * or the following license:
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to
+ * endorse or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openjdk.jmc.flightrecorder.internal.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SortedRunMergerTest {
+
+	@Test
+	public void equal_keys_keep_lane_order() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		List<Element> all = new ArrayList<>();
+		addLane(merger, all, 0, 1, 1, 2, 2);
+		addLane(merger, all, 1, 1, 2, 2, 3);
+		addLane(merger, all, 2, 0, 1, 2);
+		Assert.assertEquals(expected(all), drainByNext(merger));
+	}
+
+	@Test
+	public void unsorted_lanes_are_sorted_stably() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		List<Element> all = new ArrayList<>();
+		// descending and interleaved runs with repeated keys
+		addLane(merger, all, 0, 5, 4, 4, 3, 1, 1, 0);
+		addLane(merger, all, 1, 2, 7, 1, 8, 1, 9, 2, 2);
+		Assert.assertEquals(expected(all), drainByNext(merger));
+	}
+
+	@Test
+	public void random_lanes() {
+		Random random = new Random(1);
+		for (int test = 0; test < 100; test++) {
+			SortedRunMerger<Element> merger = new SortedRunMerger<>();
+			List<Element> all = new ArrayList<>();
+			int lanes = random.nextInt(20);
+			for (int lane = 0; lane < lanes; lane++) {
+				long[] keys = new long[random.nextInt(200)];
+				long key = random.nextInt(100);
+				for (int i = 0; i < keys.length; i++) {
+					// nearly sorted, as events of one thread
+					key += random.nextInt(10) - 2;
+					keys[i] = key;
+				}
+				addLane(merger, all, lane, keys);
+			}
+			Assert.assertEquals(all.size(), merger.size());
+			Assert.assertEquals(expected(all), drainByNext(merger));
+		}
+	}
+
+	@Test
+	public void drain_to_same_as_next() {
+		Random random = new Random(2);
+		for (int test = 0; test < 100; test++) {
+			SortedRunMerger<Element> iterated = new SortedRunMerger<>();
+			SortedRunMerger<Element> drained = new SortedRunMerger<>();
+			int lanes = random.nextInt(10) + 1;
+			for (int lane = 0; lane < lanes; lane++) {
+				long[] keys = new long[random.nextInt(100)];
+				for (int i = 0; i < keys.length; i++) {
+					// long runs of equal keys, so lanes stay on top for a while
+					keys[i] = random.nextInt(keys.length / 10 + 1);
+				}
+				addLane(iterated, new ArrayList<Element>(), lane, keys);
+				addLane(drained, new ArrayList<Element>(), lane, keys);
+			}
+			// part of the elements are taken by next() before draining
+			List<Element> expected = drainByNext(iterated);
+			List<Element> actual = new ArrayList<>();
+			int skip = random.nextInt(expected.size() + 1);
+			for (int i = 0; i < skip; i++) {
+				actual.add(drained.next());
+			}
+			Element[] rest = new Element[drained.size()];
+			int n = drained.drainTo(rest);
+			Assert.assertEquals(expected.size() - skip, n);
+			actual.addAll(Arrays.asList(rest).subList(0, n));
+			Assert.assertEquals(expected, actual);
+			Assert.assertFalse(drained.hasNext());
+		}
+	}
+
+	@Test
+	public void partially_filled_lane() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		Element first = new Element(0, 0, 3);
+		Element second = new Element(0, 1, 1);
+		// elements past count are not part of the lane
+		merger.addLane(new Element[] {first, second, null, null}, new long[] {3, 1, 0, 0}, 2);
+		Assert.assertEquals(2, merger.size());
+		Assert.assertEquals(Arrays.asList(second, first), drainByNext(merger));
+	}
+
+	@Test
+	public void empty_lanes() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		List<Element> all = new ArrayList<>();
+		addLane(merger, all, 0);
+		addLane(merger, all, 1, 2, 1);
+		addLane(merger, all, 2);
+		addLane(merger, all, 3, 1);
+		addLane(merger, all, 4);
+		Assert.assertEquals(3, merger.size());
+		Assert.assertEquals(expected(all), drainByNext(merger));
+	}
+
+	@Test
+	public void no_elements() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		merger.addLane(new Element[0], new long[0], 0);
+		Assert.assertEquals(0, merger.size());
+		Assert.assertFalse(merger.hasNext());
+		Assert.assertEquals(0, merger.drainTo(new Element[0]));
+		Assert.assertEquals(0, new SortedRunMerger<Element>().drainTo(new Element[0]));
+	}
+
+	@Test
+	public void extreme_keys() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		List<Element> all = new ArrayList<>();
+		addLane(merger, all, 0, Long.MAX_VALUE, 0, Long.MIN_VALUE);
+		addLane(merger, all, 1, Long.MIN_VALUE, Long.MAX_VALUE);
+		Assert.assertEquals(expected(all), drainByNext(merger));
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void next_after_end() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		addLane(merger, new ArrayList<Element>(), 0, 1);
+		merger.next();
+		merger.next();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void add_lane_after_merge_started() {
+		SortedRunMerger<Element> merger = new SortedRunMerger<>();
+		addLane(merger, new ArrayList<Element>(), 0, 1);
+		merger.hasNext();
+		addLane(merger, new ArrayList<Element>(), 1, 2);
+	}
+
+	private static void addLane(SortedRunMerger<Element> merger, List<Element> all, int lane, long ... keys) {
+		Element[] elements = new Element[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			elements[i] = new Element(lane, i, keys[i]);
+			all.add(elements[i]);
+		}
+		merger.addLane(elements, keys.clone(), keys.length);
+	}
+
+	/**
+	 * @return elements sorted by key, then by lane and then by position in lane
+	 */
+	private static List<Element> expected(List<Element> all) {
+		List<Element> sorted = new ArrayList<>(all);
+		// stable, elements are listed lane by lane
+		Collections.sort(sorted, new Comparator<Element>() {
+
+			@Override
+			public int compare(Element e1, Element e2) {
+				return Long.compare(e1.key, e2.key);
+			}
+		});
+		return sorted;
+	}
+
+	private static List<Element> drainByNext(SortedRunMerger<Element> merger) {
+		List<Element> result = new ArrayList<>();
+		while (merger.hasNext()) {
+			result.add(merger.next());
+		}
+		return result;
+	}
+
+	private static class Element {
+		final int lane;
+		final int index;
+		final long key;
+
+		Element(int lane, int index, long key) {
+			this.lane = lane;
+			this.index = index;
+			this.key = key;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Element)) {
+				return false;
+			}
+			Element other = (Element) obj;
+			return lane == other.lane && index == other.index && key == other.key;
+		}
+
+		@Override
+		public int hashCode() {
+			return lane * 31 + index;
+		}
+
+		@Override
+		public String toString() {
+			return lane + ":" + index + "=" + key; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmc.common.IPredicate;
+import org.openjdk.jmc.common.io.IOToolkit;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.internal.ChunkInfo;
+
+public class ChunkIndexTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private File recording;
+
+	@Before
+	public void unpackRecording() throws IOException {
+		recording = TestRecording.unpack(tmp.getRoot());
+	}
+
+	@Test
+	public void index_round_trip() throws Exception {
+		ChunkIndex index = ChunkIndex.build(recording);
+		Assert.assertEquals(TestRecording.CHUNK_COUNT, index.getChunkCount());
+		Assert.assertNull(ChunkIndex.load(recording));
+
+		index.write(ChunkIndex.getIndexFile(recording));
+		ChunkIndex loaded = ChunkIndex.load(recording);
+
+		Assert.assertNotNull(loaded);
+		Assert.assertEquals(index.getChunkCount(), loaded.getChunkCount());
+		long position = 0;
+		for (int i = 0; i < index.getChunkCount(); i++) {
+			ChunkInfo chunk = index.getChunkInfo(i);
+			Assert.assertEquals(position, chunk.getChunkPosistion());
+			assertSameChunk(chunk, loaded.getChunkInfo(i));
+			Assert.assertNotNull(index.getEventCounts(i));
+			Assert.assertEquals(index.getEventCounts(i), loaded.getEventCounts(i));
+			position += chunk.getChunkSize();
+		}
+		Assert.assertEquals(recording.length(), position);
+	}
+
+	@Test
+	public void open_writes_sidecar() throws Exception {
+		ChunkIndex index = ChunkIndex.open(recording);
+		Assert.assertTrue(ChunkIndex.getIndexFile(recording).isFile());
+		ChunkIndex reopened = ChunkIndex.open(recording);
+		Assert.assertEquals(index.getChunkCount(), reopened.getChunkCount());
+		for (int i = 0; i < index.getChunkCount(); i++) {
+			assertSameChunk(index.getChunkInfo(i), reopened.getChunkInfo(i));
+			Assert.assertEquals(index.getEventCounts(i), reopened.getEventCounts(i));
+		}
+	}
+
+	@Test
+	public void event_counts_match_recording() throws Exception {
+		ChunkIndex index = ChunkIndex.build(recording);
+		long samples = 0;
+		for (int i = 0; i < index.getChunkCount(); i++) {
+			Long count = index.getEventCounts(i).get("jdk.ExecutionSample"); //$NON-NLS-1$
+			samples += count == null ? 0 : count;
+		}
+		Assert.assertTrue(samples > 0);
+		LoaderOptions options = new LoaderOptions().ignoreTruncatedChunk(false).eventTypeFilter(only("jdk.ExecutionSample")); //$NON-NLS-1$
+		Assert.assertEquals(samples, JFRLoader.loadFile(recording, null, options)[0].getEvents().length);
+	}
+
+	@Test
+	public void stale_after_size_change() throws Exception {
+		ChunkIndex.build(recording).write(ChunkIndex.getIndexFile(recording));
+		try (RandomAccessFile raf = new RandomAccessFile(recording, "rw")) { //$NON-NLS-1$
+			raf.setLength(raf.length() + 1);
+		}
+		Assert.assertNull(ChunkIndex.load(recording));
+	}
+
+	@Test
+	public void stale_after_content_change() throws Exception {
+		ChunkIndex.build(recording).write(ChunkIndex.getIndexFile(recording));
+		long length = recording.length();
+		try (RandomAccessFile raf = new RandomAccessFile(recording, "rw")) { //$NON-NLS-1$
+			// first block is always part of the hash
+			raf.seek(100);
+			int b = raf.read();
+			raf.seek(100);
+			raf.write(b ^ 0xFF);
+		}
+		Assert.assertEquals(length, recording.length());
+		Assert.assertNull(ChunkIndex.load(recording));
+	}
+
+	@Test
+	public void unreadable_sidecar_is_ignored() throws Exception {
+		try (FileOutputStream out = new FileOutputStream(ChunkIndex.getIndexFile(recording))) {
+			out.write(new byte[] {1, 2, 3});
+		}
+		Assert.assertNull(ChunkIndex.load(recording));
+		// rebuilt and written over
+		Assert.assertEquals(TestRecording.CHUNK_COUNT, ChunkIndex.open(recording).getChunkCount());
+		Assert.assertNotNull(ChunkIndex.load(recording));
+	}
+
+	@Test
+	public void other_format_is_ignored() throws Exception {
+		try (DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(ChunkIndex.getIndexFile(recording)))) {
+			out.writeInt(0x4A465249);
+			out.writeInt(2);
+		}
+		Assert.assertNull(ChunkIndex.load(recording));
+	}
+
+	@Test
+	public void select_by_time_range() throws Exception {
+		ChunkIndex index = ChunkIndex.build(recording);
+		ChunkInfo first = index.getChunkInfo(0);
+		ChunkInfo second = index.getChunkInfo(1);
+		long firstEnd = first.getChunkRange().getEnd().clampedLongValueIn(UnitLookup.EPOCH_NS);
+		long secondStart = second.getChunkRange().getStart().clampedLongValueIn(UnitLookup.EPOCH_NS);
+		Assert.assertTrue(firstEnd < secondStart);
+
+		Assert.assertEquals(Arrays.asList(first, second), index.selectChunks(null, null));
+		Assert.assertEquals(Collections.singletonList(first),
+				index.selectChunks(new TimeRangeFilter(Long.MIN_VALUE, firstEnd), null));
+		Assert.assertEquals(Collections.singletonList(second),
+				index.selectChunks(new TimeRangeFilter(secondStart, Long.MAX_VALUE), null));
+		Assert.assertEquals(Collections.emptyList(),
+				index.selectChunks(new TimeRangeFilter(firstEnd + 1, secondStart - 1), null));
+	}
+
+	@Test
+	public void select_by_event_type() throws Exception {
+		ChunkIndex index = ChunkIndex.build(recording);
+		Assert.assertEquals(TestRecording.CHUNK_COUNT,
+				index.selectChunks(null, only("jdk.ExecutionSample")).size()); //$NON-NLS-1$
+		Assert.assertEquals(0, index.selectChunks(null, only("jdk.NoSuchEvent")).size()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void chunks_without_counts() throws Exception {
+		// as written for JDK 7/8 chunks, where event counts are not collected
+		File file = dummyRecording();
+		writeIndex(file, new long[][] {{0, 100, 1000, 2000}, {100, 200, 3000, 4000}},
+				Arrays.asList(null, counts("jdk.GarbageCollection", 3))); //$NON-NLS-1$
+		ChunkIndex index = ChunkIndex.load(file);
+
+		Assert.assertNotNull(index);
+		Assert.assertEquals(2, index.getChunkCount());
+		Assert.assertNull(index.getEventCounts(0));
+		Assert.assertEquals(counts("jdk.GarbageCollection", 3), index.getEventCounts(1)); //$NON-NLS-1$
+		Assert.assertEquals(100, index.getChunkInfo(1).getChunkPosistion());
+		Assert.assertEquals(200, index.getChunkInfo(1).getChunkSize());
+		Assert.assertEquals(3000,
+				index.getChunkInfo(1).getChunkRange().getStart().clampedLongValueIn(UnitLookup.EPOCH_NS));
+		Assert.assertEquals(4000,
+				index.getChunkInfo(1).getChunkRange().getEnd().clampedLongValueIn(UnitLookup.EPOCH_NS));
+
+		// chunk without counts is selected by time range only
+		List<ChunkInfo> selected = index.selectChunks(null, only("jdk.ExecutionSample")); //$NON-NLS-1$
+		Assert.assertEquals(1, selected.size());
+		Assert.assertSame(index.getChunkInfo(0), selected.get(0));
+		Assert.assertEquals(0, index.selectChunks(new TimeRangeFilter(2500, 5000), only("jdk.ExecutionSample")) //$NON-NLS-1$
+				.size());
+	}
+
+	@Test
+	public void event_types_are_translated() throws Exception {
+		File file = dummyRecording();
+		writeIndex(file, new long[][] {{0, 100, 1000, 2000}, {100, 100, 2000, 3000}, {200, 100, 3000, 4000}},
+				Arrays.asList(counts("com.oracle.jdk.ExecutionSample", 10), //$NON-NLS-1$
+						counts("http://www.oracle.com/hotspot/jvm/vm/prof/execution_sample", 20), //$NON-NLS-1$
+						counts("jdk.GarbageCollection", 30))); //$NON-NLS-1$
+		ChunkIndex index = ChunkIndex.load(file);
+
+		List<ChunkInfo> selected = index.selectChunks(null, only("jdk.ExecutionSample")); //$NON-NLS-1$
+		Assert.assertEquals(Arrays.asList(index.getChunkInfo(0), index.getChunkInfo(1)), selected);
+		// counts keep identifiers as found in the recording
+		Assert.assertEquals(counts("com.oracle.jdk.ExecutionSample", 10), index.getEventCounts(0)); //$NON-NLS-1$
+	}
+
+	private static void assertSameChunk(ChunkInfo expected, ChunkInfo actual) {
+		Assert.assertEquals(expected.getChunkPosistion(), actual.getChunkPosistion());
+		Assert.assertEquals(expected.getChunkSize(), actual.getChunkSize());
+		Assert.assertEquals(expected.getChunkRange().getStart(), actual.getChunkRange().getStart());
+		Assert.assertEquals(expected.getChunkRange().getEnd(), actual.getChunkRange().getEnd());
+	}
+
+	private File dummyRecording() throws IOException {
+		File file = tmp.newFile("dummy.jfr"); //$NON-NLS-1$
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[300]);
+		}
+		return file;
+	}
+
+	/**
+	 * Writes sidecar in index format version 1.
+	 *
+	 * @param chunks
+	 *            position, size, start and end time of each chunk
+	 * @param counts
+	 *            event counts of each chunk, {@code null} if not known
+	 */
+	private static void writeIndex(File file, long[][] chunks, List<Map<String, Long>> counts) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(ChunkIndex.getIndexFile(file)))) {
+			out.writeInt(0x4A465249);
+			out.writeInt(1);
+			out.writeLong(file.length());
+			out.writeUTF(IOToolkit.calculateFileHash(file));
+			out.writeInt(chunks.length);
+			for (int i = 0; i < chunks.length; i++) {
+				for (long value : chunks[i]) {
+					out.writeLong(value);
+				}
+				Map<String, Long> chunkCounts = counts.get(i);
+				out.writeInt(chunkCounts == null ? -1 : chunkCounts.size());
+				if (chunkCounts != null) {
+					for (Map.Entry<String, Long> entry : chunkCounts.entrySet()) {
+						out.writeUTF(entry.getKey());
+						out.writeLong(entry.getValue());
+					}
+				}
+			}
+		}
+	}
+
+	private static Map<String, Long> counts(String eventType, long count) {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		counts.put(eventType, count);
+		return counts;
+	}
+
+	private static IPredicate<String> only(String... eventTypes) {
+		final Set<String> types = new HashSet<>(Arrays.asList(eventTypes));
+		return new IPredicate<String>() {
+
+			@Override
+			public boolean evaluate(String eventType) {
+				return types.contains(eventType);
+			}
+		};
+	}
+}
@@ -0,0 +1,163 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.item.IType;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.JfrAttributes;
+import org.openjdk.jmc.flightrecorder.parser.IEventSink;
+import org.openjdk.jmc.flightrecorder.parser.ValueField;
+import org.perfkit.sjk.jfr.mcparser.ColumnarEventStore.Cursor;
+
+public class ColumnarEventMergerTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void sort_rows_is_stable() {
+		Random random = new Random(1);
+		for (int count : new int[] {0, 1, 2, 3, 100, 1000, 1025}) {
+			long[] keys = new long[count];
+			for (int i = 0; i < count; i++) {
+				keys[i] = random.nextInt(count / 4 + 1);
+			}
+			assertSortedRows(keys);
+		}
+	}
+
+	@Test
+	public void sort_rows_of_nearly_sorted_keys() {
+		Random random = new Random(2);
+		long[] keys = new long[5000];
+		for (int i = 0; i < keys.length; i++) {
+			// runs of increasing keys, as events of several threads
+			keys[i] = (i % 700) * 10 + random.nextInt(30);
+		}
+		assertSortedRows(keys);
+		assertSortedRows(new long[] {Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MIN_VALUE});
+	}
+
+	@Test
+	public void tables_merged_by_start_time() {
+		ColumnarEventStore store = new ColumnarEventStore();
+		addEvents(store, "test.A", 5, 1, 3, 3); //$NON-NLS-1$
+		addEvents(store, "test.B", 3, 2, 6); //$NON-NLS-1$
+		IEventSink untimed = store.create("test.C", null, null, null, //$NON-NLS-1$
+				Collections.singletonList(new ValueField("value", "value", null, UnitLookup.NUMBER))); //$NON-NLS-1$ //$NON-NLS-2$
+		untimed.addEvent(new Object[] {UnitLookup.NUMBER_UNITY.quantity(1)});
+		store.flush();
+
+		List<String> events = new ArrayList<>();
+		ColumnarEventMerger merger = new ColumnarEventMerger(store.getEventTables());
+		while (merger.hasNext()) {
+			IItem item = merger.next();
+			IMemberAccessor<IQuantity, IItem> accessor = JfrAttributes.START_TIME.getAccessor(type(item));
+			events.add(item.getType().getIdentifier() + ":" //$NON-NLS-1$
+					+ (accessor == null ? "-" : accessor.getMember(item).longValue())); //$NON-NLS-1$
+		}
+		// equal timestamps in table order, and within a table in recording order
+		Assert.assertEquals(Arrays.asList("test.C:-", "test.A:1", "test.B:2", "test.A:3", "test.A:3", "test.B:3", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+				"test.A:5", "test.B:6"), events); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			merger.next();
+			Assert.fail();
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void spilled_segments_sorted_and_merged() throws Exception {
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			// two chunks, segments are completed by the loading thread
+			addEvents(store, "test.A", 5, 1, 3); //$NON-NLS-1$
+			addEvents(store, "test.B", 3); //$NON-NLS-1$
+			store.completeSegments();
+			addEvents(store, "test.A", 3, 2, 4); //$NON-NLS-1$
+			store.completeSegments();
+			store.flush();
+			// two columns of 8 bytes per event, and row order of unsorted segments
+			Assert.assertEquals(7 * 16 + 6 * 4, store.getSpilledSize());
+
+			List<String> events = new ArrayList<>();
+			ColumnarEventMerger merger = new ColumnarEventMerger(store.getEventTables());
+			while (merger.hasNext()) {
+				Cursor cursor = (Cursor) merger.next();
+				events.add(cursor.getType().getIdentifier() + ":" + cursor.getLong(0) + "/" + cursor.getLong(1)); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			// equal timestamps in table order, then in segment order
+			Assert.assertEquals(Arrays.asList("test.A:1/1", "test.A:2/1", "test.A:3/2", "test.A:3/0", "test.B:3/0", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+					"test.A:4/2", "test.A:5/0"), events); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	@Test
+	public void recording_in_time_order() throws Exception {
+		ColumnarEventStore store;
+		try (InputStream in = TestRecording.open()) {
+			store = JFRLoader.loadColumnarStream(in, new LoaderOptions());
+		}
+		ColumnarEventMerger merger = new ColumnarEventMerger(store.getEventTables());
+		long count = 0;
+		long last = Long.MIN_VALUE;
+		while (merger.hasNext()) {
+			IItem item = merger.next();
+			IMemberAccessor<IQuantity, IItem> accessor = JfrAttributes.START_TIME.getAccessor(type(item));
+			if (accessor != null) {
+				long time = accessor.getMember(item).clampedLongValueIn(UnitLookup.EPOCH_NS);
+				Assert.assertTrue(time >= last);
+				last = time;
+			}
+			count++;
+		}
+		Assert.assertEquals(store.getEventCount(), count);
+	}
+
+	private static void assertSortedRows(final long[] keys) {
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < keys.length; i++) {
+			expected.add(i);
+		}
+		Collections.sort(expected, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(keys[o1], keys[o2]);
+			}
+		});
+		int[] rows = ColumnarEventMerger.sortRows(keys);
+		List<Integer> actual = new ArrayList<>();
+		for (int row : rows) {
+			actual.add(row);
+		}
+		Assert.assertEquals(expected, actual);
+	}
+
+	private static void addEvents(ColumnarEventStore store, String identifier, long ... startTimes) {
+		IEventSink sink = store.create(identifier, null, null, null, Arrays.asList(
+				new ValueField(JfrAttributes.START_TIME.getIdentifier(), "start", null, UnitLookup.TIMESTAMP), //$NON-NLS-1$
+				new ValueField("value", "value", null, UnitLookup.NUMBER))); //$NON-NLS-1$ //$NON-NLS-2$
+		for (int i = 0; i < startTimes.length; i++) {
+			sink.addEvent(new Object[] {UnitLookup.EPOCH_NS.quantity(startTimes[i]), UnitLookup.NUMBER_UNITY.quantity(i)});
+		}
+	}
+
+	private static IType<IItem> type(IItem item) {
+		return ((Cursor) item).getType();
+	}
+}
@@ -0,0 +1,395 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmc.common.item.IAttribute;
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IType;
+import org.openjdk.jmc.common.unit.ContentType;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.internal.EventArray;
+import org.openjdk.jmc.flightrecorder.parser.IEventSink;
+import org.openjdk.jmc.flightrecorder.parser.ValueField;
+import org.perfkit.sjk.jfr.mcparser.ColumnarEventStore.Cursor;
+import org.perfkit.sjk.jfr.mcparser.ColumnarEventStore.EventTable;
+
+public class ColumnarEventStoreTest {
+
+	private static final String EVENT_TYPE = "test.Event"; //$NON-NLS-1$
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void every_attribute_matches_event_arrays() throws Exception {
+		EventArray[] arrays;
+		try (InputStream in = TestRecording.open()) {
+			arrays = JFRLoader.loadStream(in, new LoaderOptions());
+		}
+		ColumnarEventStore store;
+		try (InputStream in = TestRecording.open()) {
+			store = JFRLoader.loadColumnarStream(in, new LoaderOptions());
+		}
+		assertSameEvents(arrays, store);
+	}
+
+	@Test
+	public void long_column_falls_back_on_unit_mismatch() throws Exception {
+		List<Object> values = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			values.add(UnitLookup.BYTE.quantity(i * 100));
+		}
+		values.add(UnitLookup.GIBIBYTE.quantity(3));
+		values.add(UnitLookup.BYTE.quantity(5));
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			EventTable table = addEvents(store, UnitLookup.MEMORY, values);
+			assertValues(table, values);
+			// values after the first one of another unit are kept as they are
+			Assert.assertSame(values.get(10), ((Cursor) table.getItem(10)).getValue(0));
+			Assert.assertEquals(0, store.getSpilledSize());
+
+			Cursor cursor = table.cursor();
+			cursor.moveTo(10);
+			Assert.assertEquals(3, cursor.getLong(0));
+			cursor.moveTo(9);
+			Assert.assertEquals(900, cursor.getLong(0));
+		}
+	}
+
+	@Test
+	public void long_column_falls_back_on_class_mismatch() throws Exception {
+		List<Object> values = new ArrayList<>();
+		values.add(UnitLookup.NANOSECOND.quantity(1));
+		values.add(UnitLookup.NANOSECOND.quantity(2));
+		values.add(UnitLookup.NANOSECOND.quantity(2.5));
+		values.add(UnitLookup.NANOSECOND.quantity(3));
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			EventTable table = addEvents(store, UnitLookup.TIMESPAN, values);
+			assertValues(table, values);
+			Assert.assertEquals(0, store.getSpilledSize());
+			Cursor cursor = table.cursor();
+			cursor.moveTo(2);
+			Assert.assertEquals(2.5, cursor.getDouble(0), 0);
+		}
+	}
+
+	@Test
+	public void long_column_falls_back_on_null() throws Exception {
+		List<Object> values = Arrays.<Object> asList(UnitLookup.BYTE.quantity(1), null, UnitLookup.BYTE.quantity(2));
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			assertValues(addEvents(store, UnitLookup.MEMORY, values), values);
+			Assert.assertEquals(0, store.getSpilledSize());
+		}
+	}
+
+	@Test
+	public void long_column_keeps_values_of_one_unit() throws Exception {
+		List<Object> values = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			values.add(UnitLookup.BYTE.quantity(i * 7 - 50));
+		}
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			assertValues(addEvents(store, UnitLookup.MEMORY, values), values);
+			Assert.assertEquals(values.size() * 8, store.getSpilledSize());
+		}
+	}
+
+	@Test
+	public void dictionary_column_keeps_repeated_values() throws Exception {
+		List<Object> values = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			// distinct instances of equal strings share an id
+			values.add(i % 7 == 0 ? null : new String("value " + i % 10)); //$NON-NLS-1$
+		}
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			EventTable table = addEvents(store, UnitLookup.PLAIN_TEXT, values);
+			assertValues(table, values);
+			Assert.assertEquals(values.size() * 4, store.getSpilledSize());
+			Assert.assertSame(((Cursor) table.getItem(1)).getValue(0), ((Cursor) table.getItem(11)).getValue(0));
+		}
+	}
+
+	@Test
+	public void dictionary_column_keeps_many_values_if_repeated() throws Exception {
+		List<Object> values = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			// more than 256 distinct values, but never more distinct values than half of the rows
+			values.add("value " + i / 4); //$NON-NLS-1$
+		}
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			assertValues(addEvents(store, UnitLookup.PLAIN_TEXT, values), values);
+			Assert.assertEquals(values.size() * 4, store.getSpilledSize());
+		}
+	}
+
+	@Test
+	public void dictionary_column_converted_for_distinct_values() throws Exception {
+		List<Object> values = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			values.add(i == 1000 ? null : "value " + i); //$NON-NLS-1$
+		}
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			assertValues(addEvents(store, UnitLookup.PLAIN_TEXT, values), values);
+			Assert.assertEquals(0, store.getSpilledSize());
+		}
+	}
+
+	@Test
+	public void dictionary_column_below_minimum_size() throws Exception {
+		List<Object> values = new ArrayList<>();
+		for (int i = 0; i < 256; i++) {
+			values.add("value " + i); //$NON-NLS-1$
+		}
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			assertValues(addEvents(store, UnitLookup.PLAIN_TEXT, values), values);
+			Assert.assertEquals(values.size() * 4, store.getSpilledSize());
+		}
+	}
+
+	@Test
+	public void cursor_get_long_and_double() {
+		ColumnarEventStore store = new ColumnarEventStore();
+		IEventSink sink = store.create(EVENT_TYPE, null, null, null,
+				Arrays.asList(field("size", UnitLookup.MEMORY), field("ratio", UnitLookup.PERCENTAGE), //$NON-NLS-1$ //$NON-NLS-2$
+						field("mixed", UnitLookup.TIMESPAN))); //$NON-NLS-1$
+		sink.addEvent(new Object[] {UnitLookup.BYTE.quantity(10), UnitLookup.PERCENT_UNITY.quantity(0.25),
+				UnitLookup.NANOSECOND.quantity(5)});
+		sink.addEvent(new Object[] {UnitLookup.BYTE.quantity(Long.MAX_VALUE), UnitLookup.PERCENT_UNITY.quantity(-1.5),
+				UnitLookup.MILLISECOND.quantity(7)});
+		store.flush();
+
+		Cursor cursor = store.getEventTable(EVENT_TYPE).cursor();
+		Assert.assertTrue(cursor.next());
+		Assert.assertEquals(10, cursor.getLong(0));
+		Assert.assertEquals(10, cursor.getDouble(0), 0);
+		Assert.assertEquals(0.25, cursor.getDouble(1), 0);
+		Assert.assertEquals(0, cursor.getLong(1));
+		Assert.assertEquals(5, cursor.getLong(2));
+		Assert.assertTrue(cursor.next());
+		Assert.assertEquals(Long.MAX_VALUE, cursor.getLong(0));
+		Assert.assertEquals(-1.5, cursor.getDouble(1), 0);
+		// in the unit of the value, not converted to the unit of the first value
+		Assert.assertEquals(7, cursor.getLong(2));
+		Assert.assertEquals(7.0, cursor.getDouble(2), 0);
+		Assert.assertFalse(cursor.next());
+	}
+
+	@Test
+	public void cursor_over_segments() {
+		ColumnarEventStore store = new ColumnarEventStore();
+		assertCursorOverSegments(store, 3, 0, 1, 5);
+	}
+
+	@Test
+	public void every_attribute_matches_event_arrays_spilled() throws Exception {
+		EventArray[] arrays;
+		try (InputStream in = TestRecording.open()) {
+			arrays = JFRLoader.loadStream(in, new LoaderOptions());
+		}
+		try (InputStream in = TestRecording.open();
+				ColumnarEventStore store = JFRLoader.loadColumnarStream(in,
+						new LoaderOptions().spillDirectory(tmp.getRoot()))) {
+			Assert.assertTrue(store.getSpilledSize() > 0);
+			assertSameEvents(arrays, store);
+		}
+		Assert.assertEquals(0, tmp.getRoot().list().length);
+	}
+
+	@Test
+	public void spilled_partial_blocks() throws Exception {
+		// two full blocks of 1024 rows and a partial one
+		int count = 2500;
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			IEventSink sink = store.create(EVENT_TYPE, null, null, null,
+					Arrays.asList(field("size", UnitLookup.MEMORY), field("name", UnitLookup.PLAIN_TEXT))); //$NON-NLS-1$ //$NON-NLS-2$
+			for (int i = 0; i < count; i++) {
+				sink.addEvent(new Object[] {UnitLookup.BYTE.quantity(i * 3L), "name " + i % 10}); //$NON-NLS-1$
+			}
+			store.flush();
+			Assert.assertEquals(count * (8 + 4), store.getSpilledSize());
+
+			EventTable table = store.getEventTable(EVENT_TYPE);
+			Assert.assertEquals(count, table.size());
+			Cursor cursor = table.cursor();
+			for (int i = 0; i < count; i++) {
+				Assert.assertTrue(cursor.next());
+				Assert.assertEquals(i * 3L, cursor.getLong(0));
+				Assert.assertEquals("name " + i % 10, cursor.getValue(1)); //$NON-NLS-1$
+			}
+			Assert.assertFalse(cursor.next());
+			for (int i : new int[] {2499, 2048, 2047, 1024, 1023, 0}) {
+				cursor.moveTo(i);
+				Assert.assertEquals(UnitLookup.BYTE.quantity(i * 3L), cursor.getValue(0));
+				Assert.assertEquals("name " + i % 10, cursor.getValue(1)); //$NON-NLS-1$
+			}
+		}
+	}
+
+	@Test
+	public void spilled_cursor_over_segments() throws Exception {
+		try (ColumnarEventStore store = new ColumnarEventStore(tmp.getRoot())) {
+			int count = assertCursorOverSegments(store, 1500, 0, 1024, 3, 2000);
+			Assert.assertEquals(count * 8, store.getSpilledSize());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void table_read_before_flush() {
+		ColumnarEventStore store = new ColumnarEventStore();
+		store.create(EVENT_TYPE, null, null, null, Collections.singletonList(field("value", UnitLookup.NUMBER))); //$NON-NLS-1$
+		store.getEventTable(EVENT_TYPE).cursor();
+	}
+
+	/**
+	 * Adds events to a segment of given size for each chunk, and checks that cursor moves over all
+	 * segments.
+	 *
+	 * @return number of events
+	 */
+	private static int assertCursorOverSegments(ColumnarEventStore store, int ... segmentSizes) {
+		List<Object> values = new ArrayList<>();
+		for (int segmentSize : segmentSizes) {
+			// each sink is a segment, as for a chunk
+			IEventSink sink = store.create(EVENT_TYPE, null, null, null,
+					Collections.singletonList(field("value", UnitLookup.NUMBER))); //$NON-NLS-1$
+			for (int i = 0; i < segmentSize; i++) {
+				Object value = UnitLookup.NUMBER_UNITY.quantity(values.size());
+				values.add(value);
+				sink.addEvent(new Object[] {value});
+			}
+			// as done by the loader once a chunk is loaded
+			store.completeSegments();
+		}
+		store.flush();
+		EventTable table = store.getEventTable(EVENT_TYPE);
+		assertValues(table, values);
+
+		Cursor cursor = table.cursor();
+		for (int i = values.size() - 1; i >= 0; i--) {
+			cursor.moveTo(i);
+			Assert.assertEquals(i, cursor.getIndex());
+			Assert.assertEquals(i, cursor.getLong(0));
+		}
+		// next() from last row of a segment
+		int end = 0;
+		for (int segmentSize : segmentSizes) {
+			end += segmentSize;
+			if (segmentSize > 0 && end < values.size()) {
+				cursor.moveTo(end - 1);
+				Assert.assertTrue(cursor.next());
+				Assert.assertEquals(end, cursor.getIndex());
+				Assert.assertEquals(end, cursor.getLong(0));
+			}
+		}
+		try {
+			cursor.moveTo(values.size());
+			Assert.fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		return values.size();
+	}
+
+	static void assertSameEvents(EventArray[] arrays, ColumnarEventStore store) {
+		Map<String, List<String>> expected = new TreeMap<>();
+		long count = 0;
+		for (EventArray array : arrays) {
+			if (array.getEvents().length == 0) {
+				continue;
+			}
+			// events of a type with duration are in several arrays of disjoint events
+			List<String> events = expected.get(array.getType().getIdentifier());
+			if (events == null) {
+				events = new ArrayList<>();
+				expected.put(array.getType().getIdentifier(), events);
+			}
+			for (IItem item : array.getEvents()) {
+				events.add(render(item));
+			}
+			count += array.getEvents().length;
+		}
+		for (List<String> events : expected.values()) {
+			Collections.sort(events);
+		}
+		Map<String, List<String>> actual = new TreeMap<>();
+		for (EventTable table : store.getEventTables()) {
+			if (table.size() == 0) {
+				continue;
+			}
+			List<String> events = new ArrayList<>();
+			Cursor cursor = table.cursor();
+			while (cursor.next()) {
+				events.add(render(cursor));
+			}
+			Assert.assertEquals(events.get(events.size() - 1), render(table.getItem(table.size() - 1)));
+			Collections.sort(events);
+			actual.put(table.getType().getIdentifier(), events);
+		}
+		Assert.assertTrue(count > 0);
+		Assert.assertEquals(count, store.getEventCount());
+		Assert.assertEquals(expected.keySet(), actual.keySet());
+		for (String type : expected.keySet()) {
+			Assert.assertEquals(type, expected.get(type), actual.get(type));
+		}
+	}
+
+	/**
+	 * @return all attributes of an event, quantities with their unit and class
+	 */
+	private static String render(IItem item) {
+		@SuppressWarnings("unchecked")
+		IType<IItem> type = (IType<IItem>) item.getType();
+		StringBuilder sb = new StringBuilder();
+		for (IAttribute<?> attribute : type.getAttributes()) {
+			Object value = attribute.getAccessor(type).getMember(item);
+			sb.append(attribute.getIdentifier()).append('=');
+			if (value instanceof IQuantity) {
+				sb.append(((IQuantity) value).persistableString()).append('/')
+						.append(value.getClass().getSimpleName());
+			} else if (value instanceof IType) {
+				sb.append(((IType<?>) value).getIdentifier());
+			} else {
+				sb.append(value);
+			}
+			sb.append(' ');
+		}
+		return sb.toString();
+	}
+
+	private static EventTable addEvents(ColumnarEventStore store, ContentType<?> contentType,
+			List<Object> values) {
+		IEventSink sink = store.create(EVENT_TYPE, null, null, null,
+				Collections.singletonList(field("value", contentType))); //$NON-NLS-1$
+		for (Object value : values) {
+			sink.addEvent(new Object[] {value});
+		}
+		store.flush();
+		return store.getEventTable(EVENT_TYPE);
+	}
+
+	private static void assertValues(EventTable table, List<Object> values) {
+		Assert.assertEquals(values.size(), table.size());
+		Cursor cursor = table.cursor();
+		for (int i = 0; i < values.size(); i++) {
+			Assert.assertTrue(cursor.next());
+			Assert.assertEquals(i, cursor.getIndex());
+			Assert.assertEquals("row " + i, values.get(i), cursor.getValue(0)); //$NON-NLS-1$
+		}
+		Assert.assertFalse(cursor.next());
+	}
+
+	private static ValueField field(String identifier, ContentType<?> contentType) {
+		return new ValueField(identifier, identifier, null, contentType);
+	}
+}
@@ -0,0 +1,103 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.JfrAttributes;
+import org.openjdk.jmc.flightrecorder.internal.ChunkInfo;
+import org.openjdk.jmc.flightrecorder.internal.EventArray;
+
+public class JFRLoaderTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private File recording;
+	private ChunkIndex index;
+
+	@Before
+	public void unpackRecording() throws Exception {
+		recording = TestRecording.unpack(tmp.getRoot());
+		index = ChunkIndex.build(recording);
+	}
+
+	@Test
+	public void time_range_skips_chunks_then_events() throws Exception {
+		ChunkInfo first = index.getChunkInfo(0);
+		ChunkInfo last = index.getChunkInfo(TestRecording.CHUNK_COUNT - 1);
+		long lastStart = nanos(last.getChunkRange().getStart());
+		long lastEnd = nanos(last.getChunkRange().getEnd());
+		// range starts in the middle of the last chunk, earlier chunks do not overlap with it
+		long start = lastStart + (lastEnd - lastStart) / 2;
+		Assert.assertTrue(nanos(first.getChunkRange().getEnd()) < start);
+
+		List<List<Long>> all = readChunks(new LoaderOptions());
+		Assert.assertEquals(TestRecording.CHUNK_COUNT, all.size());
+		List<Long> expected = new ArrayList<>();
+		for (long time : all.get(all.size() - 1)) {
+			if (time >= start) {
+				expected.add(time);
+			}
+		}
+		// some events of the last chunk are before the range and dropped one by one
+		Assert.assertTrue(expected.size() > 0);
+		Assert.assertTrue(expected.size() < all.get(all.size() - 1).size());
+
+		LoaderOptions options = LoaderOptions.fromOptions(Collections.singletonMap(
+				JsonFlightRecordingParserFactory.OPT_JFR_TIME_RANGE, Instant.ofEpochSecond(0, start) + "..")); //$NON-NLS-1$
+		List<List<Long>> filtered = readChunks(options);
+		// earlier chunks are skipped as a whole, only the last chunk is decoded
+		Assert.assertEquals(1, filtered.size());
+		Assert.assertEquals(expected, filtered.get(0));
+
+		EventArray[] loaded = JFRLoader.loadFile(recording, index, options);
+		Assert.assertEquals(expected, startTimes(loaded));
+	}
+
+	private List<List<Long>> readChunks(LoaderOptions options) throws Exception {
+		List<List<Long>> chunks = new ArrayList<>();
+		try (ChunkReader reader = JFRLoader.openStream(new FileInputStream(recording), options)) {
+			EventArray[] chunk;
+			while ((chunk = reader.readNextChunk()) != null) {
+				chunks.add(startTimes(chunk));
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * @return sorted start times of events which have one
+	 */
+	private static List<Long> startTimes(EventArray[] arrays) {
+		List<Long> times = new ArrayList<>();
+		for (EventArray array : arrays) {
+			IMemberAccessor<IQuantity, IItem> accessor = JfrAttributes.START_TIME.getAccessor(array.getType());
+			if (accessor == null) {
+				continue;
+			}
+			for (IItem item : array.getEvents()) {
+				times.add(nanos(accessor.getMember(item)));
+			}
+		}
+		Collections.sort(times);
+		return times;
+	}
+
+	private static long nanos(IQuantity time) {
+		return time.clampedLongValueIn(UnitLookup.EPOCH_NS);
+	}
+}
@@ -0,0 +1,147 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.gridkit.jvmtool.codec.stacktrace.ThreadSnapshotEventPojo;
+import org.gridkit.jvmtool.event.Event;
+import org.gridkit.jvmtool.event.EventDumpParser.InputStreamSource;
+import org.gridkit.jvmtool.event.EventReader;
+import org.gridkit.jvmtool.stacktrace.StackFrame;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmc.common.IMCFrame;
+import org.openjdk.jmc.common.IMCMethod;
+import org.openjdk.jmc.common.IMCStackTrace;
+import org.openjdk.jmc.common.IMCThread;
+import org.openjdk.jmc.common.item.IAttribute;
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IType;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.internal.EventArray;
+
+public class JfrEventDumpParserTest {
+
+	@Test
+	public void samples_match_event_arrays() throws Exception {
+		// same events as written by the JSON parser, see JsonEventAdapter
+		List<String> expected = new ArrayList<>();
+		try (InputStream in = TestRecording.open()) {
+			for (EventArray array : JFRLoader.loadStream(in, new LoaderOptions())) {
+				if (ThreadSampleCollector.EVENT_TYPES.contains(array.getType().getIdentifier())) {
+					for (IItem item : array.getEvents()) {
+						expected.add(render(item));
+					}
+				}
+			}
+		}
+
+		TrackingSource source = new TrackingSource(null);
+		EventReader<Event> reader = new JfrEventDumpParser().open(source);
+		Assert.assertNotNull(reader);
+		List<String> actual = new ArrayList<>();
+		for (Event event : reader) {
+			actual.add(render((ThreadSnapshotEventPojo) event));
+		}
+		reader.dispose();
+		Assert.assertTrue(source.closed);
+
+		Assert.assertTrue(expected.size() > 0);
+		// samples are read in recording order, arrays are ordered by time
+		Collections.sort(expected);
+		Collections.sort(actual);
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void abandoned_reader_closes_stream() throws Exception {
+		TrackingSource source = new TrackingSource(null);
+		EventReader<Event> reader = new JfrEventDumpParser().open(source);
+		Assert.assertTrue(reader.hasNext());
+		reader.next();
+		Assert.assertFalse(source.closed);
+		reader.dispose();
+		Assert.assertTrue(source.closed);
+	}
+
+	@Test
+	public void not_a_recording() throws Exception {
+		TrackingSource source = new TrackingSource("not a recording".getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+		Assert.assertNull(new JfrEventDumpParser().open(source));
+		Assert.assertTrue(source.closed);
+	}
+
+	private static String render(IItem item) {
+		@SuppressWarnings("unchecked")
+		IType<IItem> type = (IType<IItem>) item.getType();
+		long timestamp = 0;
+		IMCThread thread = null;
+		IMCStackTrace trace = null;
+		for (IAttribute<?> attribute : type.getAttributes()) {
+			String name = attribute.getIdentifier();
+			Object value = attribute.getAccessor(type).getMember(item);
+			if ("startTime".equals(name)) { //$NON-NLS-1$
+				timestamp = TimeUnit.NANOSECONDS.toMillis(((IQuantity) value).clampedLongValueIn(UnitLookup.EPOCH_NS));
+			} else if ("eventThread".equals(name) || "sampledThread".equals(name)) { //$NON-NLS-1$ //$NON-NLS-2$
+				thread = (IMCThread) value;
+			} else if ("stackTrace".equals(name)) { //$NON-NLS-1$
+				trace = (IMCStackTrace) value;
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(timestamp).append(' ').append(thread.getThreadId()).append(' ').append(thread.getThreadName());
+		for (IMCFrame frame : trace.getFrames()) {
+			IMCMethod method = frame.getMethod();
+			int line = frame.getFrameLineNumber() == null ? -1 : frame.getFrameLineNumber();
+			if (Boolean.TRUE.equals(method.isNative())) {
+				line = -2;
+			}
+			sb.append('\n').append(method.getType().getFullName()).append('.').append(method.getMethodName())
+					.append(':').append(line);
+		}
+		return sb.toString();
+	}
+
+	private static String render(ThreadSnapshotEventPojo event) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(event.timestamp()).append(' ').append(event.threadId()).append(' ').append(event.threadName());
+		for (StackFrame frame : event.stackTrace()) {
+			sb.append('\n').append(frame.getClassName()).append('.').append(frame.getMethodName()).append(':')
+					.append(frame.getLineNumber());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Opens the test recording, or given data, and records whether the stream was closed.
+	 */
+	private static class TrackingSource implements InputStreamSource {
+
+		private final byte[] data;
+		boolean closed;
+
+		TrackingSource(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public InputStream open() throws IOException {
+			InputStream in = data == null ? TestRecording.open() : new ByteArrayInputStream(data);
+			return new FilterInputStream(in) {
+
+				@Override
+				public void close() throws IOException {
+					closed = true;
+					super.close();
+				}
+			};
+		}
+	}
+}
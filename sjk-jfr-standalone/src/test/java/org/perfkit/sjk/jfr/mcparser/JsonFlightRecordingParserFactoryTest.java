@@ -0,0 +1,68 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+
+import org.gridkit.jvmtool.spi.parsers.InputStreamSource;
+import org.gridkit.jvmtool.spi.parsers.JsonEventSource;
+import org.gridkit.jvmtool.util.json.JsonStreamWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonFlightRecordingParserFactoryTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void spilled_source_closed_by_caller() throws Exception {
+		Map<String, String> options = Collections.singletonMap(JsonFlightRecordingParserFactory.OPT_JFR_SPILL_DIR,
+				tmp.getRoot().getPath());
+		JsonEventSource events = new JsonFlightRecordingParserFactory().createParser(options).open(new TestSource());
+		Assert.assertTrue(events instanceof Closeable);
+		JsonStreamWriter writer = discardingWriter();
+		try {
+			// caller stops before all events are written
+			for (int i = 0; i < 10; i++) {
+				Assert.assertTrue(events.readNext(writer));
+			}
+		} finally {
+			((Closeable) events).close();
+		}
+		Assert.assertFalse(events.readNext(writer));
+		((Closeable) events).close();
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void illegal_loader_option_rejected() throws Exception {
+		new JsonFlightRecordingParserFactory().createParser(
+				Collections.singletonMap(JsonFlightRecordingParserFactory.OPT_JFR_TIME_RANGE, "2000..1000")); //$NON-NLS-1$
+	}
+
+	private static JsonStreamWriter discardingWriter() {
+		return (JsonStreamWriter) Proxy.newProxyInstance(JsonStreamWriter.class.getClassLoader(),
+				new Class<?>[] {JsonStreamWriter.class}, new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						return null;
+					}
+				});
+	}
+
+	private static class TestSource implements InputStreamSource {
+
+		@Override
+		public InputStream open() throws IOException {
+			return TestRecording.open();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+	private static final String READER_THREAD = "JFR read ahead"; //$NON-NLS-1$
+
+	@Test
+	public void reads_all_data() throws IOException {
+		byte[] data = new byte[3 << 20];
+		new Random(1).nextBytes(data);
+		TestSource source = new TestSource(new ByteArrayInputStream(data), 0);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new ReadAheadInputStream(source)) {
+			byte[] buffer = new byte[10000];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, n);
+			}
+		}
+		Assert.assertArrayEquals(data, out.toByteArray());
+		Assert.assertEquals(READER_THREAD, source.closedBy);
+	}
+
+	@Test
+	public void close_while_reading() throws Exception {
+		// reads of the source are slow and ignore interrupts
+		TestSource source = new TestSource(new InfiniteInputStream(), 200);
+		InputStream in = new ReadAheadInputStream(source);
+		while (!source.reading) {
+			Thread.sleep(10);
+		}
+		in.close();
+		Assert.assertEquals(READER_THREAD, source.closedBy);
+		Assert.assertFalse(source.readingWhenClosed);
+		try {
+			in.read();
+			Assert.fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void abandoned_stream_closes_source() throws Exception {
+		TestSource source = new TestSource(new InfiniteInputStream(), 0);
+		InputStream in = new ReadAheadInputStream(source);
+		Assert.assertEquals(0, in.read());
+		in = null;
+		long deadline = System.currentTimeMillis() + 30000;
+		while (source.closedBy == null && System.currentTimeMillis() < deadline) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		Assert.assertEquals(READER_THREAD, source.closedBy);
+	}
+
+	/**
+	 * Records which thread closed the stream, and whether a read was in progress then.
+	 */
+	private static class TestSource extends InputStream {
+
+		private final InputStream in;
+		private final long readDelay;
+		volatile boolean reading;
+		volatile boolean readingWhenClosed;
+		volatile String closedBy;
+
+		TestSource(InputStream in, long readDelay) {
+			this.in = in;
+			this.readDelay = readDelay;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			reading = true;
+			try {
+				long deadline = System.currentTimeMillis() + readDelay;
+				while (System.currentTimeMillis() < deadline) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						// ignored, like blocking reads do
+					}
+				}
+				return in.read(b, off, len);
+			} finally {
+				reading = false;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			readingWhenClosed = reading;
+			closedBy = Thread.currentThread().getName();
+			in.close();
+		}
+	}
+
+	private static class InfiniteInputStream extends InputStream {
+
+		@Override
+		public int read() {
+			return 0;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			return len;
+		}
+	}
+}
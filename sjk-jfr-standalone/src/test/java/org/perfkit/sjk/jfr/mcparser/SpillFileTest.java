@@ -0,0 +1,102 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpillFileTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void blocks_are_allocated_in_sequence() throws IOException {
+		try (SpillFile spill = new SpillFile(tmp.getRoot())) {
+			Assert.assertEquals(0, spill.size());
+			Assert.assertEquals(0, spill.allocate(100));
+			Assert.assertEquals(100, spill.allocate(8));
+			Assert.assertEquals(108, spill.allocate(SpillFile.MAX_BLOCK_SIZE));
+			Assert.assertEquals(108 + SpillFile.MAX_BLOCK_SIZE, spill.size());
+			Assert.assertSame(spill.region(0), spill.region(108));
+			Assert.assertEquals(108, SpillFile.index(108));
+		}
+	}
+
+	@Test
+	public void block_is_not_split_across_regions() throws IOException {
+		try (SpillFile spill = new SpillFile(tmp.getRoot())) {
+			fillFirstRegion(spill, 100);
+			Assert.assertEquals(SpillFile.REGION_SIZE - SpillFile.MAX_BLOCK_SIZE + 100, spill.size());
+
+			// does not fit the remaining bytes of the first region
+			long offset = spill.allocate(SpillFile.MAX_BLOCK_SIZE);
+			Assert.assertEquals(SpillFile.REGION_SIZE, offset);
+			Assert.assertEquals(0, SpillFile.index(offset));
+			Assert.assertNotSame(spill.region(0), spill.region(offset));
+			Assert.assertEquals(SpillFile.REGION_SIZE + SpillFile.MAX_BLOCK_SIZE, spill.size());
+		}
+	}
+
+	@Test
+	public void block_ending_at_region_end() throws IOException {
+		try (SpillFile spill = new SpillFile(tmp.getRoot())) {
+			long last = fillFirstRegion(spill, 0);
+			Assert.assertEquals(SpillFile.REGION_SIZE - SpillFile.MAX_BLOCK_SIZE, last);
+			Assert.assertSame(spill.region(0), spill.region(last));
+			long offset = spill.allocate(8);
+			Assert.assertEquals(SpillFile.REGION_SIZE, offset);
+			Assert.assertEquals(0, SpillFile.index(offset));
+		}
+	}
+
+	@Test
+	public void values_at_region_boundary() throws IOException {
+		try (SpillFile spill = new SpillFile(tmp.getRoot())) {
+			long last = fillFirstRegion(spill, 0);
+			long next = spill.allocate(8);
+
+			long lastValue = last + SpillFile.MAX_BLOCK_SIZE - 8;
+			spill.region(lastValue).putLong(SpillFile.index(lastValue), Long.MIN_VALUE);
+			spill.region(next).putLong(SpillFile.index(next), Long.MAX_VALUE);
+
+			Assert.assertEquals(SpillFile.REGION_SIZE - 8, SpillFile.index(lastValue));
+			Assert.assertEquals(Long.MIN_VALUE, spill.region(lastValue).getLong(SpillFile.index(lastValue)));
+			Assert.assertEquals(Long.MAX_VALUE, spill.region(next).getLong(SpillFile.index(next)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void block_larger_than_max_size() throws IOException {
+		try (SpillFile spill = new SpillFile(tmp.getRoot())) {
+			spill.allocate(SpillFile.MAX_BLOCK_SIZE + 1);
+		}
+	}
+
+	@Test
+	public void file_is_removed() throws IOException {
+		SpillFile spill = new SpillFile(tmp.getRoot());
+		spill.allocate(SpillFile.MAX_BLOCK_SIZE);
+		ByteBuffer region = spill.region(0);
+		region.putInt(0, 1);
+		spill.close();
+		Assert.assertEquals(0, tmp.getRoot().list().length);
+	}
+
+	/**
+	 * Allocates blocks of maximum size after a first block of given size, until the next block of
+	 * maximum size would not fit into the first region.
+	 *
+	 * @return offset of the last block
+	 */
+	private static long fillFirstRegion(SpillFile spill, int firstBlockSize) {
+		long offset = firstBlockSize > 0 ? spill.allocate(firstBlockSize) : 0;
+		while (spill.size() + SpillFile.MAX_BLOCK_SIZE <= SpillFile.REGION_SIZE) {
+			offset = spill.allocate(SpillFile.MAX_BLOCK_SIZE);
+		}
+		return offset;
+	}
+}
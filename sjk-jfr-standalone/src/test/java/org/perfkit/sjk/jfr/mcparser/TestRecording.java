@@ -0,0 +1,42 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Recording used by tests, two chunks of a short JDK 17 recording with default settings (events
+ * describing the host and its environment disabled).
+ */
+class TestRecording {
+
+	static final String RESOURCE = "recording.jfr.gz"; //$NON-NLS-1$
+
+	static final int CHUNK_COUNT = 2;
+
+	static InputStream open() throws IOException {
+		InputStream in = TestRecording.class.getClassLoader().getResourceAsStream(RESOURCE);
+		if (in == null) {
+			throw new IOException("Missing test resource " + RESOURCE); //$NON-NLS-1$
+		}
+		return new GZIPInputStream(in);
+	}
+
+	/**
+	 * @return uncompressed recording written to the directory
+	 */
+	static File unpack(File dir) throws IOException {
+		File file = new File(dir, "recording.jfr"); //$NON-NLS-1$
+		try (InputStream in = open(); OutputStream out = new FileOutputStream(file)) {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+		}
+		return file;
+	}
+}
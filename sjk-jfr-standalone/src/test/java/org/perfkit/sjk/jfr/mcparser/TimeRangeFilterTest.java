@@ -0,0 +1,110 @@
+package org.perfkit.sjk.jfr.mcparser;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmc.common.unit.IQuantity;
+import org.openjdk.jmc.common.unit.IRange;
+import org.openjdk.jmc.common.unit.QuantityRange;
+import org.openjdk.jmc.common.unit.UnitLookup;
+
+public class TimeRangeFilterTest {
+
+	private static final long MS = 1000000;
+
+	@Test
+	public void parse_epoch_millis() {
+		TimeRangeFilter filter = TimeRangeFilter.parse("1000..2000");
+		Assert.assertEquals(1000 * MS, filter.getStartNanos());
+		Assert.assertEquals(2000 * MS, filter.getEndNanos());
+	}
+
+	@Test
+	public void parse_iso_instants() {
+		TimeRangeFilter filter = TimeRangeFilter.parse("2019-03-01T10:15:30Z..2019-03-01T10:15:31.000000500Z");
+		Assert.assertEquals(1551435330000L * MS, filter.getStartNanos());
+		Assert.assertEquals(1551435331000L * MS + 500, filter.getEndNanos());
+	}
+
+	@Test
+	public void parse_mixed_bounds_with_spaces() {
+		TimeRangeFilter filter = TimeRangeFilter.parse(" 1551435330000 .. 2019-03-01T10:15:31Z ");
+		Assert.assertEquals(1551435330000L * MS, filter.getStartNanos());
+		Assert.assertEquals(1551435331000L * MS, filter.getEndNanos());
+	}
+
+	@Test
+	public void parse_open_start() {
+		TimeRangeFilter filter = TimeRangeFilter.parse("..2000");
+		Assert.assertEquals(Long.MIN_VALUE, filter.getStartNanos());
+		Assert.assertEquals(2000 * MS, filter.getEndNanos());
+	}
+
+	@Test
+	public void parse_open_end() {
+		TimeRangeFilter filter = TimeRangeFilter.parse("1000..");
+		Assert.assertEquals(1000 * MS, filter.getStartNanos());
+		Assert.assertEquals(Long.MAX_VALUE, filter.getEndNanos());
+	}
+
+	@Test
+	public void parse_open_range() {
+		TimeRangeFilter filter = TimeRangeFilter.parse("..");
+		Assert.assertEquals(Long.MIN_VALUE, filter.getStartNanos());
+		Assert.assertEquals(Long.MAX_VALUE, filter.getEndNanos());
+	}
+
+	@Test
+	public void parse_single_instant_range() {
+		TimeRangeFilter filter = TimeRangeFilter.parse("1000..1000");
+		Assert.assertTrue(filter.contains(1000 * MS));
+		Assert.assertFalse(filter.contains(1000 * MS + 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parse_reversed_range() {
+		TimeRangeFilter.parse("2000..1000");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parse_without_separator() {
+		TimeRangeFilter.parse("1000-2000");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parse_bad_time() {
+		TimeRangeFilter.parse("yesterday..");
+	}
+
+	@Test
+	public void contains_is_inclusive() {
+		TimeRangeFilter filter = new TimeRangeFilter(100, 200);
+		Assert.assertFalse(filter.contains(99));
+		Assert.assertTrue(filter.contains(100));
+		Assert.assertTrue(filter.contains(200));
+		Assert.assertFalse(filter.contains(201));
+	}
+
+	@Test
+	public void overlaps() {
+		TimeRangeFilter filter = new TimeRangeFilter(100, 200);
+		Assert.assertFalse(filter.overlaps(range(0, 99)));
+		Assert.assertTrue(filter.overlaps(range(0, 100)));
+		Assert.assertTrue(filter.overlaps(range(50, 150)));
+		Assert.assertTrue(filter.overlaps(range(120, 180)));
+		Assert.assertTrue(filter.overlaps(range(0, 300)));
+		Assert.assertTrue(filter.overlaps(range(150, 250)));
+		Assert.assertTrue(filter.overlaps(range(200, 300)));
+		Assert.assertFalse(filter.overlaps(range(201, 300)));
+	}
+
+	@Test
+	public void open_range_overlaps_everything() {
+		TimeRangeFilter filter = TimeRangeFilter.parse("..");
+		Assert.assertTrue(filter.overlaps(range(0, 1)));
+		Assert.assertTrue(filter.overlaps(range(Long.MAX_VALUE - 1, Long.MAX_VALUE)));
+	}
+
+	private static IRange<IQuantity> range(long start, long end) {
+		return QuantityRange.createWithEnd(UnitLookup.EPOCH_NS.quantity(start), UnitLookup.EPOCH_NS.quantity(end));
+	}
+}
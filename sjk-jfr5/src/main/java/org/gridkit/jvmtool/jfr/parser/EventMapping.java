@@ -0,0 +1,211 @@
+/**
+ * Copyright 2017 Alexey Ragozin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gridkit.jvmtool.jfr.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gridkit.jvmtool.event.GenericEvent;
+
+/**
+ * Selects JFR event types reported as {@link GenericEvent}s, in addition to
+ * method profiling samples reported as thread snapshots.
+ * <p>
+ * Same contract as EventMapping of sjk-jfr6, keep both in sync. Event types
+ * are given by short name (see {@link #KNOWN_TYPES}) or by JDK 7/8 event name,
+ * e.g. <code>Java Monitor Wait</code>. Fields of a mapped event type are reported
+ * as <code>jfr.&lt;field&gt;</code> counters (numbers) and tags (classes, threads,
+ * text), unless renamed or excluded. Native method samples, if mapped, are reported
+ * as thread snapshots.
+ * <p>
+ * Fields of an event type are not listed by MC5, so fields of known types are
+ * taken from a table, other fields are reported only if renamed.
+ */
+public class EventMapping {
+
+	/**
+	 * System property with comma separated list of event types to map,
+	 * <code>all</code> stands for all {@link #KNOWN_TYPES}.
+	 */
+	public static final String OPTION = "sjk.jfr.events";
+
+	public static final String NATIVE_METHOD_SAMPLE = "NativeMethodSample";
+	public static final String ALLOCATION_IN_NEW_TLAB = "ObjectAllocationInNewTLAB";
+	public static final String ALLOCATION_OUTSIDE_TLAB = "ObjectAllocationOutsideTLAB";
+
+	public static final List<String> KNOWN_TYPES = Collections.unmodifiableList(Arrays.asList(
+			ALLOCATION_IN_NEW_TLAB,
+			ALLOCATION_OUTSIDE_TLAB,
+			"JavaMonitorEnter",
+			"JavaMonitorWait",
+			"ThreadPark",
+			"SocketRead",
+			"SocketWrite",
+			"FileRead",
+			"FileWrite",
+			NATIVE_METHOD_SAMPLE));
+
+	// short name -> JDK 7/8 event name
+	private static final Map<String, String> TYPE_NAMES = new HashMap<String, String>();
+	// JDK 7/8 event name -> field -> name, fields of known types
+	private static final Map<String, Map<String, String>> KNOWN_FIELDS = new HashMap<String, Map<String, String>>();
+
+	static {
+		known(ALLOCATION_IN_NEW_TLAB, "Allocation in new TLAB", "class", "jfr.allocClass", "allocationSize", "jfr.allocationSize", "tlabSize", "jfr.tlabSize");
+		known(ALLOCATION_OUTSIDE_TLAB, "Allocation outside TLAB", "class", "jfr.allocClass", "allocationSize", "jfr.allocationSize");
+		known("JavaMonitorEnter", "Java Monitor Blocked", "(duration)", "jfr.duration", "klass", "jfr.monitorClass", "previousOwner", "jfr.previousOwner", "address", "jfr.address");
+		known("JavaMonitorWait", "Java Monitor Wait", "(duration)", "jfr.duration", "klass", "jfr.monitorClass", "notifier", "jfr.notifier", "timeout", "jfr.timeout", "timedOut", "jfr.timedOut", "address", "jfr.address");
+		known("ThreadPark", "Java Thread Park", "(duration)", "jfr.duration", "klass", "jfr.parkedClass", "timeout", "jfr.timeout", "address", "jfr.address");
+		known("SocketRead", "Socket Read", "(duration)", "jfr.duration", "host", "jfr.host", "address", "jfr.address", "port", "jfr.port", "timeout", "jfr.timeout", "bytesRead", "jfr.bytesRead", "endOfStream", "jfr.endOfStream");
+		known("SocketWrite", "Socket Write", "(duration)", "jfr.duration", "host", "jfr.host", "address", "jfr.address", "port", "jfr.port", "bytesWritten", "jfr.bytesWritten");
+		known("FileRead", "File Read", "(duration)", "jfr.duration", "path", "jfr.path", "bytesRead", "jfr.bytesRead", "endOfFile", "jfr.endOfFile");
+		known("FileWrite", "File Write", "(duration)", "jfr.duration", "path", "jfr.path", "bytesWritten", "jfr.bytesWritten");
+		known(NATIVE_METHOD_SAMPLE, "Method Profiling Sample Native");
+	}
+
+	private static void known(String shortName, String eventType, String... fieldsAndNames) {
+		Map<String, String> fields = new LinkedHashMap<String, String>();
+		for(int i = 0; i < fieldsAndNames.length; i += 2) {
+			fields.put(fieldsAndNames[i], fieldsAndNames[i + 1]);
+		}
+		TYPE_NAMES.put(shortName, eventType);
+		KNOWN_FIELDS.put(eventType, fields);
+	}
+
+	// event type name -> field -> name, null name excludes field
+	private final Map<String, Map<String, String>> types = new LinkedHashMap<String, Map<String, String>>();
+
+	/**
+	 * @return mapping of new TLAB allocations, reported before mapping was configurable
+	 */
+	public static EventMapping defaultMapping() {
+		return new EventMapping().map(ALLOCATION_IN_NEW_TLAB);
+	}
+
+	/**
+	 * @return mapping configured by {@link #OPTION} system property, or {@link #defaultMapping()}
+	 */
+	public static EventMapping fromSystemProperties() {
+		String spec = System.getProperty(OPTION);
+		return spec == null ? defaultMapping() : parse(spec);
+	}
+
+	/**
+	 * @param spec comma separated list of event types, see {@link #OPTION}
+	 */
+	public static EventMapping parse(String spec) {
+		EventMapping mapping = new EventMapping();
+		for(String type: spec.split(",")) {
+			type = type.trim();
+			if (type.length() == 0) {
+				continue;
+			}
+			if ("all".equals(type)) {
+				for(String known: KNOWN_TYPES) {
+					mapping.map(known);
+				}
+			}
+			else {
+				mapping.map(type);
+			}
+		}
+		return mapping;
+	}
+
+	/**
+	 * @return event type name used by the parser for short name, other names unchanged
+	 */
+	public static String typeId(String eventType) {
+		String name = TYPE_NAMES.get(eventType);
+		return name == null ? eventType : name;
+	}
+
+	/**
+	 * Maps event type, fields of known types are mapped too.
+	 */
+	public EventMapping map(String eventType) {
+		String typeId = typeId(eventType);
+		if (!types.containsKey(typeId)) {
+			Map<String, String> fields = new LinkedHashMap<String, String>();
+			if (KNOWN_FIELDS.containsKey(typeId)) {
+				fields.putAll(KNOWN_FIELDS.get(typeId));
+			}
+			types.put(typeId, fields);
+		}
+		return this;
+	}
+
+	/**
+	 * Changes tag or counter name for field of event type, maps event type if needed.
+	 * Fields not known for the type are added.
+	 *
+	 * @param name new name, <code>null</code> to exclude field
+	 */
+	public EventMapping rename(String eventType, String attribute, String name) {
+		map(eventType);
+		types.get(typeId(eventType)).put(attribute, name);
+		return this;
+	}
+
+	public boolean isMapped(String eventType) {
+		return types.containsKey(typeId(eventType));
+	}
+
+	/**
+	 * @return names of mapped event types
+	 */
+	public List<String> getEventTypes() {
+		return new ArrayList<String>(types.keySet());
+	}
+
+	/**
+	 * @return tag or counter name for field, <code>null</code> if field is excluded
+	 *         or event type is not mapped
+	 */
+	public String nameOf(String eventType, String attribute) {
+		Map<String, String> names = types.get(typeId(eventType));
+		if (names == null) {
+			return null;
+		}
+		return names.containsKey(attribute) ? names.get(attribute) : "jfr." + attribute;
+	}
+
+	/**
+	 * @return fields of event type reported by adapter, empty array if type is not mapped
+	 */
+	String[] fieldsOf(String eventType) {
+		Map<String, String> names = types.get(typeId(eventType));
+		List<String> fields = new ArrayList<String>();
+		if (names != null) {
+			for(String field: names.keySet()) {
+				if (names.get(field) != null) {
+					fields.add(field);
+				}
+			}
+		}
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	@Override
+	public String toString() {
+		return types.keySet().toString();
+	}
+}
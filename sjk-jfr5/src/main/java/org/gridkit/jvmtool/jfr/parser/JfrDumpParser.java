@@ -18,7 +18,6 @@ package org.gridkit.jvmtool.jfr.parser;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
 
 import org.gridkit.jvmtool.event.ErrorEvent;
 import org.gridkit.jvmtool.event.Event;
@@ -51,17 +50,16 @@ public class JfrDumpParser implements EventDumpParser {
 	public EventReader<Event> open(InputStreamSource source) throws IOException {
  
 		try {
-			InputStream is = null;
-			if (isGZip(source)) {
-				is = new GZIPInputStream(source.open());
+			InputStream is = IOHelper.openUncompressedStream(source.open());
+			FlightRecording frl;
+			try {
+				frl = FlightRecordingLoader.loadStream(is);
 			}
-			else {
-				is = source.open();
+			finally {
+				is.close();
 			}
 			
-			FlightRecording frl = FlightRecordingLoader.loadStream(is);
-			
-			EventReader<Event> adapter = new JfrEventAdapter(frl);
+			EventReader<Event> adapter = new JfrEventAdapter(frl, EventMapping.fromSystemProperties());
 			if (!adapter.hasNext() || adapter.hasNext() && adapter.peekNext() instanceof ErrorEvent) {
 				// cannot read file
 				return null;
@@ -76,17 +74,4 @@ public class JfrDumpParser implements EventDumpParser {
 			return null;
 		}
 	}
-
-	private boolean isGZip(InputStreamSource source) {
-		
-		try {
-			GZIPInputStream gzi = new GZIPInputStream(source.open());
-			gzi.read();
-			return true;
-		}
-		catch(IOException e) {
-		}
-		
-		return false;
-	}
 }
@@ -15,7 +15,10 @@
  */
 package org.gridkit.jvmtool.jfr.parser;
 
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
 
@@ -41,17 +44,40 @@ import com.jrockit.mc.flightrecorder.spi.IEvent;
 public class JfrEventAdapter implements EventReader<Event> {
 
 	private static final String METHOD_PROFILING_SAMPLE = "Method Profiling Sample";
-	private static final String ALLOCATION_IN_NEW_TLAB = "Allocation in new TLAB";
 	
 	private final Iterator<IEvent> it;
+	private final EventMapping mapping;
+	// event type (by identity) -> mapped fields
+	private final Map<Object, EventFields> typeCache = new IdentityHashMap<Object, EventFields>();
 
 	private ThreadSnapshotEventPojo threadPojo = new ThreadSnapshotEventPojo();
-	private NewTLABEventPojo allocPojo = new NewTLABEventPojo();
+	private TraceEventPojo genericPojo = new TraceEventPojo();
 	private Event event = null;
 	private boolean error;
+
+	// stack traces and methods are pooled constants, so they are cached by identity
+	private final Map<FLRStackTrace, StackFrameList> traceCache = new IdentityHashMap<FLRStackTrace, StackFrameList>();
+	private final Map<FrameKey, StackFrame> frameCache = new HashMap<FrameKey, StackFrame>();
+	private final FrameKey frameLookup = new FrameKey(null, 0);
 	
 	public JfrEventAdapter(FlightRecording recording) {
-		this.it = recording.createView().iterator();
+		this(recording, EventMapping.defaultMapping());
+	}
+
+	/**
+	 * @param mapping event types to be reported in addition to method profiling samples
+	 */
+	public JfrEventAdapter(FlightRecording recording, EventMapping mapping) {
+		this(recording.createView(), mapping);
+	}
+
+	/**
+	 * @param events events of a recording in reporting order
+	 * @param mapping event types to be reported in addition to method profiling samples
+	 */
+	public JfrEventAdapter(Iterable<IEvent> events, EventMapping mapping) {
+		this.it = events.iterator();
+		this.mapping = mapping;
 	}
 
 	@Override
@@ -66,13 +92,17 @@ public class JfrEventAdapter implements EventReader<Event> {
 		try {
 			while(it.hasNext()) {
 				IEvent e = it.next();
-				String type = e.getEventType().getName();
-				if (METHOD_PROFILING_SAMPLE.equals(type)) {
+				EventFields fields = typeCache.get(e.getEventType());
+				if (fields == null) {
+					fields = new EventFields(e.getEventType().getName(), mapping);
+					typeCache.put(e.getEventType(), fields);
+				}
+				if (fields.threadSample) {
 					event = parseThreadSample(e);
 					return;
 				}
-				else if (ALLOCATION_IN_NEW_TLAB.equals(type)) {
-					event = parseAllocation(e);
+				else if (fields.mapped) {
+					event = parseGenericEvent(e, fields);
 					return;
 				}
 			}
@@ -106,40 +136,43 @@ public class JfrEventAdapter implements EventReader<Event> {
 		return threadPojo;
 	}
 
-	private Event parseAllocation(IEvent e) {
-		allocPojo.counters().clear();
-		allocPojo.tags().clear();
+	private Event parseGenericEvent(IEvent e, EventFields fields) {
+		genericPojo.counters().clear();
+		genericPojo.tags().clear();
 
-		allocPojo.tags().put("jfr.event", "");
-		allocPojo.tags().put("jfr.event.name", e.getEventType().getName());
+		genericPojo.tags().put("jfr.event", "");
+		genericPojo.tags().put("jfr.event.name", e.getEventType().getName());
 
-		allocPojo.timestamp(TimeUnit.NANOSECONDS.toMillis(e.getStartTimestamp()));
+		genericPojo.timestamp(TimeUnit.NANOSECONDS.toMillis(e.getStartTimestamp()));
 		FLRThread thread = (FLRThread) e.getValue("(thread)");
 		if (thread != null) {
-			allocPojo.counters().set("jfr.threadId", thread.getThreadId());
-			allocPojo.tags().put("jfr.threadName", thread.getThreadName());
+			genericPojo.counters().set("jfr.threadId", thread.getThreadId());
+			genericPojo.tags().put("jfr.threadName", thread.getThreadName());
 		}
 		FLRStackTrace flrStackTrace = (FLRStackTrace) e.getValue("(stackTrace)");
 		if (flrStackTrace != null) {
-			allocPojo.stackTrace(trace(flrStackTrace));
+			genericPojo.stackTrace(trace(flrStackTrace));
 		}
 		else {
-			allocPojo.stackTrace(null);
-		}
-		FLRType type = (FLRType) e.getValue("class");
-		if (type != null) {
-			allocPojo.tags().put("jfr.allocClass", name(type));
+			genericPojo.stackTrace(null);
 		}
-		Long allocaSize = (Long) e.getValue("allocationSize");
-		if (allocaSize != null) {
-			allocPojo.counters().set("jfr.allocationSize", allocaSize);
-		}
-		Long tlabSize = (Long) e.getValue("tlabSize");
-		if (tlabSize != null) {
-			allocPojo.counters().set("jfr.tlabSize", tlabSize);
+		for(int i = 0; i != fields.fields.length; ++i) {
+			Object value = e.getValue(fields.fields[i]);
+			if (value instanceof Number) {
+				genericPojo.counters().set(fields.names[i], ((Number) value).longValue());
+			}
+			else if (value instanceof FLRType) {
+				genericPojo.tags().put(fields.names[i], name((FLRType) value));
+			}
+			else if (value instanceof FLRThread) {
+				genericPojo.tags().put(fields.names[i], ((FLRThread) value).getThreadName());
+			}
+			else if (value != null) {
+				genericPojo.tags().put(fields.names[i], String.valueOf(value));
+			}
 		}
 		
-		return allocPojo;
+		return genericPojo;
 	}
 	
 	private String name(FLRType type) {
@@ -150,15 +183,33 @@ public class JfrEventAdapter implements EventReader<Event> {
 	}
 
 	private StackFrameList trace(FLRStackTrace trace) {
+		StackFrameList cached = traceCache.get(trace);
+		if (cached != null) {
+			return cached;
+		}
 		StackFrame[] t = new StackFrame[trace.getFrames().size()];
 		for(int i = 0; i != t.length; ++i) {
 			t[i] = frame(trace.getFrames().get(i));
 		}
 		
-		return new StackFrameArray(t);
+		StackFrameList list = new StackFrameArray(t);
+		traceCache.put(trace, list);
+		return list;
 	}
 
 	private StackFrame frame(IMCFrame f) {
+		int line = (f.getFrameLineNumber() == null) ? -1 : f.getFrameLineNumber();
+		frameLookup.method = f.getMethod();
+		frameLookup.line = line;
+		StackFrame frame = frameCache.get(frameLookup);
+		if (frame == null) {
+			frame = newFrame(f);
+			frameCache.put(new FrameKey(f.getMethod(), line), frame);
+		}
+		return frame;
+	}
+
+	private StackFrame newFrame(IMCFrame f) {
 		String pn = f.getMethod().getPackageName();
 		String cn = f.getMethod().getClassName();
 		String mn = f.getMethod().getMethodName();
@@ -215,7 +266,57 @@ public class JfrEventAdapter implements EventReader<Event> {
 		// do nothing
 	}
 	
-	private static class NewTLABEventPojo extends GenericEvent implements ThreadTraceEvent {
+	/**
+	 * Method (by identity) and line number of a frame.
+	 */
+	private static class FrameKey {
+
+		private Object method;
+		private int line;
+
+		public FrameKey(Object method, int line) {
+			this.method = method;
+			this.line = line;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(method) + line;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FrameKey)) {
+				return false;
+			}
+			FrameKey other = (FrameKey) obj;
+			return method == other.method && line == other.line;
+		}
+	}
+
+	/**
+	 * Mapping of one event type, resolved once per type.
+	 */
+	private static class EventFields {
+
+		final boolean threadSample;
+		final boolean mapped;
+		final String[] fields;
+		final String[] names;
+
+		public EventFields(String eventType, EventMapping mapping) {
+			mapped = mapping.isMapped(eventType);
+			threadSample = METHOD_PROFILING_SAMPLE.equals(eventType)
+					|| (mapped && EventMapping.typeId(EventMapping.NATIVE_METHOD_SAMPLE).equals(eventType));
+			fields = mapping.fieldsOf(eventType);
+			names = new String[fields.length];
+			for(int i = 0; i != fields.length; ++i) {
+				names[i] = mapping.nameOf(eventType, fields[i]);
+			}
+		}
+	}
+
+	private static class TraceEventPojo extends GenericEvent implements ThreadTraceEvent {
 
 		private StackFrameList trace;
 		
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2017 Alexey Ragozin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gridkit.jvmtool.jfr.parser;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gridkit.jvmtool.codec.stacktrace.ThreadSnapshotEvent;
+import org.gridkit.jvmtool.event.Event;
+import org.gridkit.jvmtool.event.GenericEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.jrockit.mc.flightrecorder.spi.IEvent;
+import com.jrockit.mc.flightrecorder.spi.IEventType;
+
+/**
+ * Runs adapter over events built in memory, JDK 7/8 recordings
+ * cannot be produced by the build JDK.
+ */
+public class JfrEventAdapterTest {
+
+	private final Map<String, IEventType> types = new HashMap<String, IEventType>();
+
+	@Test
+	public void default_mapping_reports_samples_and_new_tlab_allocations() {
+		List<IEvent> recording = Arrays.asList(
+				event("Method Profiling Sample", 1000000),
+				event("Allocation in new TLAB", 2000000, "allocationSize", 16L, "tlabSize", 4096L),
+				event("Allocation outside TLAB", 3000000, "allocationSize", 1L << 20),
+				event("Java Monitor Wait", 4000000, "(duration)", 10L, "timeout", 0L));
+
+		Assert.assertEquals(Arrays.asList(
+				"sample 1 -1",
+				"Allocation in new TLAB 2 allocationSize=16 tlabSize=4096"),
+				read(new JfrEventAdapter(recording, EventMapping.defaultMapping())));
+	}
+
+	@Test
+	public void mapped_types_reported_by_short_name() {
+		List<IEvent> recording = Arrays.asList(
+				event("Method Profiling Sample", 1000000),
+				event("Allocation in new TLAB", 2000000, "allocationSize", 16L, "tlabSize", 4096L),
+				event("Java Monitor Wait", 4000000, "(duration)", 10L, "timeout", 0L, "address", 12345L),
+				event("Method Profiling Sample Native", 5000000));
+		EventMapping mapping = EventMapping.parse("JavaMonitorWait, NativeMethodSample")
+				.rename("JavaMonitorWait", "address", null)
+				.rename("JavaMonitorWait", "timeout", "jfr.waitTimeout");
+
+		Assert.assertEquals(Arrays.asList(
+				"sample 1 -1",
+				"Java Monitor Wait 4 duration=10 waitTimeout=0",
+				"sample 5 -1"),
+				read(new JfrEventAdapter(recording, mapping)));
+	}
+
+	private static List<String> read(JfrEventAdapter adapter) {
+		List<String> events = new ArrayList<String>();
+		for(Event e: adapter) {
+			if (e instanceof ThreadSnapshotEvent) {
+				ThreadSnapshotEvent s = (ThreadSnapshotEvent) e;
+				events.add("sample " + s.timestamp() + " " + s.threadId());
+			}
+			else {
+				GenericEvent g = (GenericEvent) e;
+				StringBuilder sb = new StringBuilder(g.tags().firstTagFor("jfr.event.name"));
+				sb.append(' ').append(g.timestamp());
+				for(String counter: new String[] {"jfr.allocationSize", "jfr.tlabSize", "jfr.duration", "jfr.timeout", "jfr.waitTimeout", "jfr.address"}) {
+					if (g.counters().getValue(counter) != Long.MIN_VALUE) {
+						sb.append(' ').append(counter.substring(4)).append('=').append(g.counters().getValue(counter));
+					}
+				}
+				events.add(sb.toString());
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * @param fieldsAndValues field identifiers followed by values
+	 */
+	private IEvent event(String eventType, final long startTime, Object... fieldsAndValues) {
+		if (!types.containsKey(eventType)) {
+			types.put(eventType, proxy(IEventType.class, "getName", eventType));
+		}
+		final IEventType type = types.get(eventType);
+		final Map<String, Object> values = new HashMap<String, Object>();
+		for(int i = 0; i < fieldsAndValues.length; i += 2) {
+			values.put((String) fieldsAndValues[i], fieldsAndValues[i + 1]);
+		}
+		return proxy(IEvent.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getEventType")) {
+					return type;
+				}
+				else if (method.getName().equals("getStartTimestamp")) {
+					return startTime;
+				}
+				else if (method.getName().equals("getValue")) {
+					return values.get(args[0]);
+				}
+				return identity(proxy, method, args);
+			}
+		});
+	}
+
+	private static <T> T proxy(Class<T> iface, final String method, final Object answer) {
+		return proxy(iface, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				return m.getName().equals(method) ? answer : identity(proxy, m, args);
+			}
+		});
+	}
+
+	private static <T> T proxy(Class<T> iface, InvocationHandler handler) {
+		return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] {iface}, handler));
+	}
+
+	private static Object identity(Object proxy, Method method, Object[] args) {
+		if (method.getName().equals("equals")) {
+			return proxy == args[0];
+		}
+		else if (method.getName().equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		}
+		else if (method.getName().equals("toString")) {
+			return method.getDeclaringClass().getSimpleName();
+		}
+		throw new UnsupportedOperationException(method.getName());
+	}
+}
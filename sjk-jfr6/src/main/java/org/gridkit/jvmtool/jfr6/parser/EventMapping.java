@@ -0,0 +1,167 @@
+/**
+ * Copyright 2017 Alexey Ragozin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gridkit.jvmtool.jfr6.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gridkit.jvmtool.event.GenericEvent;
+
+/**
+ * Selects JFR event types reported as {@link GenericEvent}s, in addition to
+ * execution samples reported as thread snapshots.
+ * <p>
+ * Same contract as EventMapping of sjk-jfr5, keep both in sync. Event types
+ * are given by short name (see {@link #KNOWN_TYPES}) or by identifier,
+ * short names are event identifiers without <code>com.oracle.jdk.</code> prefix.
+ * Attributes of a mapped event type are reported as <code>jfr.&lt;attribute&gt;</code>
+ * counters (numeric attributes) and tags (classes, threads, text and flags),
+ * unless renamed or excluded. Native method samples, if mapped, are reported
+ * as thread snapshots.
+ */
+public class EventMapping {
+
+	/**
+	 * System property with comma separated list of event types to map,
+	 * <code>all</code> stands for all {@link #KNOWN_TYPES}.
+	 */
+	public static final String OPTION = "sjk.jfr.events";
+
+	public static final String NATIVE_METHOD_SAMPLE = "NativeMethodSample";
+	public static final String ALLOCATION_IN_NEW_TLAB = "ObjectAllocationInNewTLAB";
+	public static final String ALLOCATION_OUTSIDE_TLAB = "ObjectAllocationOutsideTLAB";
+
+	public static final List<String> KNOWN_TYPES = Collections.unmodifiableList(Arrays.asList(
+			ALLOCATION_IN_NEW_TLAB,
+			ALLOCATION_OUTSIDE_TLAB,
+			"JavaMonitorEnter",
+			"JavaMonitorWait",
+			"ThreadPark",
+			"SocketRead",
+			"SocketWrite",
+			"FileRead",
+			"FileWrite",
+			NATIVE_METHOD_SAMPLE));
+
+	private static final String PREFIX = "com.oracle.jdk.";
+
+	// event type identifier -> attribute -> name, null name excludes attribute
+	private final Map<String, Map<String, String>> types = new LinkedHashMap<String, Map<String, String>>();
+
+	/**
+	 * @return empty mapping, only execution samples were reported before mapping was configurable
+	 */
+	public static EventMapping defaultMapping() {
+		return new EventMapping();
+	}
+
+	/**
+	 * @return mapping configured by {@link #OPTION} system property, or {@link #defaultMapping()}
+	 */
+	public static EventMapping fromSystemProperties() {
+		String spec = System.getProperty(OPTION);
+		return spec == null ? defaultMapping() : parse(spec);
+	}
+
+	/**
+	 * @param spec comma separated list of event types, see {@link #OPTION}
+	 */
+	public static EventMapping parse(String spec) {
+		EventMapping mapping = new EventMapping();
+		for(String type: spec.split(",")) {
+			type = type.trim();
+			if (type.length() == 0) {
+				continue;
+			}
+			if ("all".equals(type)) {
+				for(String known: KNOWN_TYPES) {
+					mapping.map(known);
+				}
+			}
+			else {
+				mapping.map(type);
+			}
+		}
+		return mapping;
+	}
+
+	/**
+	 * @return event type identifier used by the parser for short name, other names unchanged
+	 */
+	public static String typeId(String eventType) {
+		return eventType.indexOf('.') < 0 ? PREFIX + eventType : eventType;
+	}
+
+	/**
+	 * Maps all attributes of given event type.
+	 */
+	public EventMapping map(String eventType) {
+		String typeId = typeId(eventType);
+		if (!types.containsKey(typeId)) {
+			Map<String, String> names = new HashMap<String, String>();
+			if (typeId.equals(typeId(ALLOCATION_IN_NEW_TLAB)) || typeId.equals(typeId(ALLOCATION_OUTSIDE_TLAB))) {
+				// name used before mapping was configurable
+				names.put("objectClass", "jfr.allocClass");
+			}
+			types.put(typeId, names);
+		}
+		return this;
+	}
+
+	/**
+	 * Changes tag or counter name for attribute of event type, maps event type if needed.
+	 *
+	 * @param name new name, <code>null</code> to exclude attribute
+	 */
+	public EventMapping rename(String eventType, String attribute, String name) {
+		map(eventType);
+		types.get(typeId(eventType)).put(attribute, name);
+		return this;
+	}
+
+	public boolean isMapped(String eventType) {
+		return types.containsKey(typeId(eventType));
+	}
+
+	/**
+	 * @return identifiers of mapped event types
+	 */
+	public List<String> getEventTypes() {
+		return new ArrayList<String>(types.keySet());
+	}
+
+	/**
+	 * @return tag or counter name for attribute, <code>null</code> if attribute is excluded
+	 *         or event type is not mapped
+	 */
+	public String nameOf(String eventType, String attribute) {
+		Map<String, String> names = types.get(typeId(eventType));
+		if (names == null) {
+			return null;
+		}
+		return names.containsKey(attribute) ? names.get(attribute) : "jfr." + attribute;
+	}
+
+	@Override
+	public String toString() {
+		return types.keySet().toString();
+	}
+}
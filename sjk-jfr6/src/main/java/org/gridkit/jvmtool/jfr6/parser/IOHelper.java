@@ -0,0 +1,105 @@
+/**
+ * Copyright 2017 Alexey Ragozin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gridkit.jvmtool.jfr6.parser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Detects compression of dump data in a single pass over the stream.
+ * <p>
+ * Modules share no code, keep in sync with the IOHelper twins in sjk-jfr5 and sjk-jfr-standalone.
+ */
+class IOHelper {
+
+	private static final int BUFFER_SIZE = 64 << 10;
+
+	enum Compression {
+		NONE(),
+		GZIP(0x1F, 0x8B),
+		ZIP('P', 'K', 3, 4);
+
+		private final int[] magic;
+
+		Compression(int... magic) {
+			this.magic = magic;
+		}
+
+		boolean matches(byte[] header, int length) {
+			if (magic.length == 0 || length < magic.length) {
+				return false;
+			}
+			for(int i = 0; i != magic.length; ++i) {
+				if ((header[i] & 0xFF) != magic[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Detects compression by leading magic bytes, stream is read only once.
+	 * 
+	 * @return buffered stream of uncompressed data
+	 * @throws IOException if compressed data cannot be read, the stream is closed then
+	 */
+	public static InputStream openUncompressedStream(InputStream stream) throws IOException {
+		InputStream in = new BufferedInputStream(stream, BUFFER_SIZE);
+		try {
+			in.mark(4);
+			Compression compression = detectCompression(in);
+			in.reset();
+			switch(compression) {
+			case GZIP:
+				return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+			case ZIP:
+				ZipInputStream zip = new ZipInputStream(in);
+				if (zip.getNextEntry() == null) {
+					throw new IOException("ZIP archive is empty");
+				}
+				return new BufferedInputStream(zip, BUFFER_SIZE);
+			default:
+				return in;
+			}
+		}
+		catch(IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	private static Compression detectCompression(InputStream in) throws IOException {
+		byte[] header = new byte[4];
+		int length = 0;
+		while(length < header.length) {
+			int n = in.read(header, length, header.length - length);
+			if (n < 0) {
+				break;
+			}
+			length += n;
+		}
+		for(Compression compression: Compression.values()) {
+			if (compression.matches(header, length)) {
+				return compression;
+			}
+		}
+		return Compression.NONE;
+	}
+}
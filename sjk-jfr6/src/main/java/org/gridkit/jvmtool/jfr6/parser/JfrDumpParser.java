@@ -18,7 +18,6 @@ package org.gridkit.jvmtool.jfr6.parser;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
 
 import org.gridkit.jvmtool.event.ErrorEvent;
 import org.gridkit.jvmtool.event.Event;
@@ -31,6 +30,12 @@ import com.oracle.jmc.flightrecorder.internal.FlightRecordingLoader;
 
 public class JfrDumpParser implements EventDumpParser {
 
+	/**
+	 * System property, if <code>true</code> events of all types are reported in timestamp order,
+	 * otherwise type by type. Reported event types are configured by {@link EventMapping#OPTION}.
+	 */
+	public static final String TIME_ORDERED_OPTION = "sjk.jfr.timeOrdered";
+
 	public boolean isFunctional() {
 		return true;
 	}
@@ -52,17 +57,16 @@ public class JfrDumpParser implements EventDumpParser {
 	public EventReader<Event> open(InputStreamSource source) throws IOException {
  
 		try {
-			InputStream is = null;
-			if (isGZip(source)) {
-				is = new GZIPInputStream(source.open());
+			InputStream is = IOHelper.openUncompressedStream(source.open());
+			EventArray[] events;
+			try {
+				events = FlightRecordingLoader.loadStream(is, false);
 			}
-			else {
-				is = source.open();
+			finally {
+				is.close();
 			}
 			
-			EventArray[] events = FlightRecordingLoader.loadStream(is, false);
-			
-			EventReader<Event> adapter = new JfrEventAdapter(events);
+			EventReader<Event> adapter = createAdapter(events);
 			if (!adapter.hasNext() || adapter.hasNext() && adapter.peekNext() instanceof ErrorEvent) {
 				// cannot read file
 				return null;
@@ -80,16 +84,7 @@ public class JfrDumpParser implements EventDumpParser {
 		}
 	}
 
-	private boolean isGZip(InputStreamSource source) {
-		
-		try {
-			GZIPInputStream gzi = new GZIPInputStream(source.open());
-			gzi.read();
-			return true;
-		}
-		catch(IOException e) {
-		}
-		
-		return false;
+	static JfrEventAdapter createAdapter(EventArray[] events) {
+		return new JfrEventAdapter(events, Boolean.getBoolean(TIME_ORDERED_OPTION), EventMapping.fromSystemProperties());
 	}
 }
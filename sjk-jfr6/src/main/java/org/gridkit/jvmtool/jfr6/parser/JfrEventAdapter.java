@@ -17,9 +17,13 @@ package org.gridkit.jvmtool.jfr6.parser;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.gridkit.jvmtool.codec.stacktrace.ThreadSnapshotEventPojo;
@@ -35,16 +39,18 @@ import org.gridkit.jvmtool.stacktrace.StackFrameArray;
 import org.gridkit.jvmtool.stacktrace.StackFrameList;
 
 import com.oracle.jmc.common.IMCFrame;
+import com.oracle.jmc.common.IMCMethod;
 import com.oracle.jmc.common.IMCStackTrace;
 import com.oracle.jmc.common.IMCThread;
 import com.oracle.jmc.common.IMCType;
 import com.oracle.jmc.common.IMemberAccessor;
-import com.oracle.jmc.common.item.Attribute;
-import com.oracle.jmc.common.item.IAccessorFactory;
+import com.oracle.jmc.common.item.IAttribute;
 import com.oracle.jmc.common.item.IItem;
 import com.oracle.jmc.common.item.IType;
+import com.oracle.jmc.common.unit.ContentType;
 import com.oracle.jmc.common.unit.IQuantity;
-import com.oracle.jmc.common.unit.LinearKindOfQuantity;
+import com.oracle.jmc.common.unit.IUnit;
+import com.oracle.jmc.common.unit.KindOfQuantity;
 import com.oracle.jmc.common.unit.UnitLookup;
 import com.oracle.jmc.flightrecorder.JfrAttributes;
 import com.oracle.jmc.flightrecorder.internal.EventArray;
@@ -52,36 +58,69 @@ import com.oracle.jmc.flightrecorder.internal.EventArray;
 public class JfrEventAdapter implements EventReader<Event> {
 
 	private static final String EXECUTION_SAMPLING = "com.oracle.jdk.ExecutionSample";
-	private static final String ALLOCATION_IN_NEW_TLAB = "com.oracle.jdk.ObjectAllocationInNewTLAB";
-	
-	private static final IAccessorFactory<IMCType> ATTR_OBJECT_CLASS = Attribute.attr("objectClass", UnitLookup.CLASS);
-	private static final IAccessorFactory<IQuantity> ATTR_ALLOC_SIZE = Attribute.attr("allocationSize", new LinearKindOfQuantity("memory", "byte"));
-	private static final IAccessorFactory<IQuantity> ATTR_TLAB_SIZE = Attribute.attr("tlabSize", new LinearKindOfQuantity("memory", "byte"));
-	
-	private static final List<String> EVENTS = Arrays.asList(EXECUTION_SAMPLING, ALLOCATION_IN_NEW_TLAB);
+
+	// attributes reported in dedicated event fields
+	private static final List<String> COMMON_ATTRIBUTES = Arrays.asList(
+			JfrAttributes.START_TIME.getIdentifier(),
+			JfrAttributes.END_TIME.getIdentifier(),
+			JfrAttributes.EVENT_THREAD.getIdentifier(),
+			JfrAttributes.EVENT_STACKTRACE.getIdentifier());
 	
-	private final Iterator<IItem> it;
+	private final List<EventArray> arrays = new ArrayList<EventArray>();
+	private final Map<IType<?>, TypeAccessors> accessorCache = new IdentityHashMap<IType<?>, TypeAccessors>();
+
+	private int arrayIndex;
+	private IItem[] events = new IItem[0];
+	private int eventIndex;
+	private TypeAccessors accessors;
+	// not null if events are merged by timestamp
+	private final PriorityQueue<ArrayCursor> merge;
 
 	private ThreadSnapshotEventPojo threadPojo = new ThreadSnapshotEventPojo();
-	private NewTLABEventPojo allocPojo = new NewTLABEventPojo();
+	private TraceEventPojo genericPojo = new TraceEventPojo();
 	private Event event = null;
 	private boolean error;
 
-	private EventAttr<IQuantity> E_TIMESTAMP = new EventAttr<IQuantity>(JfrAttributes.EVENT_TIMESTAMP);
-	private EventAttr<IMCThread> E_THREAD = new EventAttr<IMCThread>(JfrAttributes.EVENT_THREAD);
-	private EventAttr<IMCStackTrace> E_STACK_TRACE = new EventAttr<IMCStackTrace>(JfrAttributes.EVENT_STACKTRACE); 
-	private EventAttr<IMCType> E_OBJECT_CLASS = new EventAttr<IMCType>(ATTR_OBJECT_CLASS); 
-	private EventAttr<IQuantity> E_ALLOC_SIZE = new EventAttr<IQuantity>(ATTR_ALLOC_SIZE); 
-	private EventAttr<IQuantity> E_NEW_TLAB_SIZE = new EventAttr<IQuantity>(ATTR_TLAB_SIZE); 
+	// stack traces and methods are pooled constants, so they are cached by identity
+	private final Map<IMCStackTrace, StackFrameList> traceCache = new IdentityHashMap<IMCStackTrace, StackFrameList>();
+	private final Map<FrameKey, StackFrame> frameCache = new HashMap<FrameKey, StackFrame>();
+	private final FrameKey frameLookup = new FrameKey(null, 0);
 	
 	public JfrEventAdapter(EventArray[] recording) {
-		List<IItem> events = new ArrayList<IItem>();
+		this(recording, false);
+	}
+
+	public JfrEventAdapter(EventArray[] recording, boolean timeOrdered) {
+		this(recording, timeOrdered, EventMapping.defaultMapping());
+	}
+
+	/**
+	 * @param timeOrdered if <code>true</code> events of all types are merged by timestamp,
+	 *        otherwise events are produced type by type
+	 * @param mapping event types to be reported in addition to execution samples
+	 */
+	public JfrEventAdapter(EventArray[] recording, boolean timeOrdered, EventMapping mapping) {
 		for(EventArray ea: recording) {
-			if (EVENTS.contains(ea.getType().getIdentifier())) {
-				events.addAll(Arrays.asList(ea.getEvents()));
+			String typeId = ea.getType().getIdentifier();
+			if (EXECUTION_SAMPLING.equals(typeId) || mapping.isMapped(typeId)) {
+				arrays.add(ea);
+				if (!accessorCache.containsKey(ea.getType())) {
+					accessorCache.put(ea.getType(), new TypeAccessors(ea.getType(), mapping));
+				}
+			}
+		}
+		if (timeOrdered) {
+			merge = new PriorityQueue<ArrayCursor>(Math.max(1, arrays.size()));
+			for(int i = 0; i != arrays.size(); ++i) {
+				EventArray ea = arrays.get(i);
+				if (ea.getEvents().length > 0) {
+					merge.add(new ArrayCursor(ea.getEvents(), accessorCache.get(ea.getType()), i));
+				}
 			}
 		}
-		this.it = events.iterator();
+		else {
+			merge = null;
+		}
 	}
 
 	@Override
@@ -94,15 +133,15 @@ public class JfrEventAdapter implements EventReader<Event> {
 			return;
 		}
 		try {
-			while(it.hasNext()) {
-				IItem e = it.next();
-				if (EXECUTION_SAMPLING.equals(e.getType().getIdentifier())) {
+			IItem e;
+			while((e = nextItem()) != null) {
+				if (accessors.threadSample) {
 					event = parseMethodSamplingEvent(e);					
-					return;
 				}
-				if (ALLOCATION_IN_NEW_TLAB.equals(e.getType().getIdentifier())) {
-					event = parseAllocationEvent(e);
+				else {
+					event = parseGenericEvent(e);
 				}
+				return;
 			}
 		}
 		catch(Exception e) {
@@ -111,6 +150,34 @@ public class JfrEventAdapter implements EventReader<Event> {
 		}
 	}
 
+	/**
+	 * Moves to next event and sets {@link #accessors} for its type.
+	 */
+	private IItem nextItem() {
+		if (merge != null) {
+			ArrayCursor cursor = merge.poll();
+			if (cursor == null) {
+				return null;
+			}
+			IItem e = cursor.events[cursor.index];
+			accessors = cursor.accessors;
+			if (cursor.advance()) {
+				merge.add(cursor);
+			}
+			return e;
+		}
+		while (eventIndex >= events.length) {
+			if (arrayIndex >= arrays.size()) {
+				return null;
+			}
+			EventArray ea = arrays.get(arrayIndex++);
+			events = ea.getEvents();
+			eventIndex = 0;
+			accessors = accessorCache.get(ea.getType());
+		}
+		return events[eventIndex++];
+	}
+
 	private Event parseMethodSamplingEvent(IItem e) {
 		threadPojo.timestamp(timestamp(e));
 		IMCThread thread = thread(e);
@@ -132,73 +199,81 @@ public class JfrEventAdapter implements EventReader<Event> {
 		return threadPojo;
 	}
 
-	private Event parseAllocationEvent(IItem e) {
-		allocPojo.counters().clear();
-		allocPojo.tags().clear();
+	private Event parseGenericEvent(IItem e) {
+		genericPojo.counters().clear();
+		genericPojo.tags().clear();
 		
-		allocPojo.tags().put("jfr.event", "");
-		allocPojo.tags().put("jfr.event.type", e.getType().getIdentifier());
-		allocPojo.tags().put("jfr.event.name", e.getType().getName());
-		allocPojo.timestamp(timestamp(e));
+		genericPojo.tags().put("jfr.event", "");
+		genericPojo.tags().put("jfr.event.type", e.getType().getIdentifier());
+		genericPojo.tags().put("jfr.event.name", e.getType().getName());
+		genericPojo.timestamp(timestamp(e));
 		IMCThread thread = thread(e);
 		if (thread != null) {
-			allocPojo.counters().set("jfr.threadId", thread.getThreadId());
-			allocPojo.tags().put("jfr.threadName", thread.getThreadName());
+			genericPojo.counters().set("jfr.threadId", thread.getThreadId());
+			genericPojo.tags().put("jfr.threadName", thread.getThreadName());
 		}
 		IMCStackTrace flrStackTrace = stacktrace(e);
 		if (flrStackTrace != null) {
-			allocPojo.stackTrace(trace(flrStackTrace));
+			genericPojo.stackTrace(trace(flrStackTrace));
 		}
 		else {
-			allocPojo.stackTrace(null);
+			genericPojo.stackTrace(null);
 		}
-		IMCType type = allocatedType(e);
-		if (type != null) {
-			allocPojo.tags().put("jfr.allocClass", type.getFullName());
+		for(AttributeExtractor extractor: accessors.extractors) {
+			extractor.extract(e, genericPojo);
 		}
-		allocPojo.counters().set("jfr.allocationSize", allocationSize(e));
-		allocPojo.counters().set("jfr.tlabSize", newTlabSize(e));
-		return allocPojo;
+		return genericPojo;
 	}
 	
 	private long timestamp(IItem e) {
-		IQuantity qty = E_TIMESTAMP.get(e);
+		IQuantity qty = accessors.timestamp.getMember(e);
 		// TODO unit handling
 		return TimeUnit.NANOSECONDS.toMillis(qty.longValue());
 	}
 
 	private IMCThread thread(IItem e) {
-		IMCThread thread = E_THREAD.get(e);
+		IMCThread thread = get(accessors.thread, e);
 		return thread;
 	}
 
 	private IMCStackTrace stacktrace(IItem e) {
-		IMCStackTrace trace = E_STACK_TRACE.get(e);
+		IMCStackTrace trace = get(accessors.stackTrace, e);
 		return trace;
 	}
 
-	private IMCType allocatedType(IItem e) {
-		return E_OBJECT_CLASS.get(e);
-	}
-
-	private long allocationSize(IItem e) {
-		return E_ALLOC_SIZE.get(e).longValue();
-	}
-
-	private long newTlabSize(IItem e) {
-		return E_NEW_TLAB_SIZE.get(e).longValue();
+	private static <T> T get(IMemberAccessor<? extends T, IItem> accessor, IItem e) {
+		return accessor == null ? null : accessor.getMember(e);
 	}
 	
 	private StackFrameList trace(IMCStackTrace trace) {
-		StackFrame[] t = new StackFrame[trace.getFrames().size()];
+		StackFrameList cached = traceCache.get(trace);
+		if (cached != null) {
+			return cached;
+		}
+		List<? extends IMCFrame> frames = trace.getFrames();
+		StackFrame[] t = new StackFrame[frames.size()];
 		for(int i = 0; i != t.length; ++i) {
-			t[i] = frame(trace.getFrames().get(i));
+			t[i] = frame(frames.get(i));
 		}
 		
-		return new StackFrameArray(t);
+		StackFrameList list = new StackFrameArray(t);
+		traceCache.put(trace, list);
+		return list;
 	}
 
 	private StackFrame frame(IMCFrame f) {
+		int line = (f.getFrameLineNumber() == null) ? -1 : f.getFrameLineNumber();
+		frameLookup.method = f.getMethod();
+		frameLookup.line = line;
+		StackFrame frame = frameCache.get(frameLookup);
+		if (frame == null) {
+			frame = newFrame(f);
+			frameCache.put(new FrameKey(f.getMethod(), line), frame);
+		}
+		return frame;
+	}
+
+	private StackFrame newFrame(IMCFrame f) {
 		String pn = f.getMethod().getType().getPackageName();
 		String cn = f.getMethod().getType().getTypeName();
 		String mn = f.getMethod().getMethodName();
@@ -255,27 +330,196 @@ public class JfrEventAdapter implements EventReader<Event> {
 		// do nothing
 	}
 
-	private class EventAttr<T> {
-		
-		private final IAccessorFactory<T> factory;
+	/**
+	 * Accessors of one event type, resolved once when events are enumerated.
+	 * Accessors of attributes missing in the type are <code>null</code>.
+	 */
+	private static class TypeAccessors {
 
-		private IType<?> lastType;
-		private IMemberAccessor<T, IItem> lastKey;
-		
-		public EventAttr(IAccessorFactory<T> factory) {
-			this.factory = factory;
+		final boolean threadSample;
+
+		final IMemberAccessor<? extends IQuantity, IItem> timestamp;
+		final IMemberAccessor<? extends IMCThread, IItem> thread;
+		final IMemberAccessor<? extends IMCStackTrace, IItem> stackTrace;
+		// mapped attributes of generic events
+		final AttributeExtractor[] extractors;
+
+		public TypeAccessors(IType<IItem> type, EventMapping mapping) {
+			String typeId = type.getIdentifier();
+			threadSample = EXECUTION_SAMPLING.equals(typeId) || EventMapping.typeId(EventMapping.NATIVE_METHOD_SAMPLE).equals(typeId);
+			timestamp = JfrAttributes.EVENT_TIMESTAMP.getAccessor(type);
+			thread = JfrAttributes.EVENT_THREAD.getAccessor(type);
+			stackTrace = JfrAttributes.EVENT_STACKTRACE.getAccessor(type);
+			List<AttributeExtractor> list = new ArrayList<AttributeExtractor>();
+			if (!threadSample) {
+				for(IAttribute<?> attr: type.getAttributes()) {
+					String name = mapping.nameOf(typeId, attr.getIdentifier());
+					if (name != null && !COMMON_ATTRIBUTES.contains(attr.getIdentifier())) {
+						AttributeExtractor extractor = AttributeExtractor.create(name, attr, type);
+						if (extractor != null) {
+							list.add(extractor);
+						}
+					}
+				}
+			}
+			extractors = list.toArray(new AttributeExtractor[list.size()]);
 		}
+	}
+
+	/**
+	 * Copies value of one attribute to tags or counters of {@link GenericEvent}.
+	 */
+	private static abstract class AttributeExtractor {
+
+		final String name;
+
+		public AttributeExtractor(String name) {
+			this.name = name;
+		}
+
+		abstract void extract(IItem e, GenericEvent target);
 
+		/**
+		 * @return <code>null</code> if attribute type cannot be represented as tag or counter
+		 */
 		@SuppressWarnings("unchecked")
-		public T get(IItem item) {
-			if (item.getType() != lastType) {
-				lastKey = (IMemberAccessor<T, IItem>) factory.getAccessor(item.getType());
+		static AttributeExtractor create(String name, IAttribute<?> attr, IType<IItem> type) {
+			ContentType<?> contentType = attr.getContentType();
+			IMemberAccessor<?, IItem> accessor = attr.getAccessor(type);
+			if (accessor == null || contentType == UnitLookup.TIMESTAMP) {
+				return null;
+			}
+			else if (contentType == UnitLookup.TIMESPAN) {
+				return new CounterExtractor(name, (IMemberAccessor<? extends IQuantity, IItem>) accessor, UnitLookup.NANOSECOND);
+			}
+			else if (contentType instanceof KindOfQuantity) {
+				IUnit unit = ((KindOfQuantity<?>) contentType).getDefaultUnit();
+				return new CounterExtractor(name, (IMemberAccessor<? extends IQuantity, IItem>) accessor, unit);
+			}
+			else if (contentType == UnitLookup.CLASS || contentType == UnitLookup.THREAD
+					|| contentType == UnitLookup.PLAIN_TEXT || contentType == UnitLookup.FLAG) {
+				return new TagExtractor(name, accessor);
+			}
+			else {
+				return null;
 			}
-			return lastKey.getMember(item);
 		}
 	}
-	
-	private static class NewTLABEventPojo extends GenericEvent implements ThreadTraceEvent {
+
+	private static class CounterExtractor extends AttributeExtractor {
+
+		private final IMemberAccessor<? extends IQuantity, IItem> accessor;
+		private final IUnit unit;
+
+		public CounterExtractor(String name, IMemberAccessor<? extends IQuantity, IItem> accessor, IUnit unit) {
+			super(name);
+			this.accessor = accessor;
+			this.unit = unit;
+		}
+
+		@Override
+		void extract(IItem e, GenericEvent target) {
+			IQuantity qty = accessor.getMember(e);
+			if (qty != null) {
+				target.counters().set(name, qty.clampedLongValueIn(unit));
+			}
+		}
+	}
+
+	private static class TagExtractor extends AttributeExtractor {
+
+		private final IMemberAccessor<?, IItem> accessor;
+
+		public TagExtractor(String name, IMemberAccessor<?, IItem> accessor) {
+			super(name);
+			this.accessor = accessor;
+		}
+
+		@Override
+		void extract(IItem e, GenericEvent target) {
+			Object value = accessor.getMember(e);
+			if (value instanceof IMCType) {
+				target.tags().put(name, ((IMCType) value).getFullName());
+			}
+			else if (value instanceof IMCThread) {
+				target.tags().put(name, ((IMCThread) value).getThreadName());
+			}
+			else if (value != null) {
+				target.tags().put(name, String.valueOf(value));
+			}
+		}
+	}
+
+	/**
+	 * Position in a time sorted event array, ordered by timestamp of current event.
+	 * Events with equal timestamps keep order of their arrays.
+	 */
+	private static class ArrayCursor implements Comparable<ArrayCursor> {
+
+		final IItem[] events;
+		final TypeAccessors accessors;
+		final int order;
+		int index;
+		long timestamp;
+
+		public ArrayCursor(IItem[] events, TypeAccessors accessors, int order) {
+			this.events = events;
+			this.accessors = accessors;
+			this.order = order;
+			this.timestamp = timestamp(events[0]);
+		}
+
+		boolean advance() {
+			if (++index < events.length) {
+				timestamp = timestamp(events[index]);
+				return true;
+			}
+			return false;
+		}
+
+		private long timestamp(IItem e) {
+			IQuantity qty = get(accessors.timestamp, e);
+			return qty == null ? Long.MIN_VALUE : qty.longValue();
+		}
+
+		@Override
+		public int compareTo(ArrayCursor o) {
+			if (timestamp != o.timestamp) {
+				return timestamp < o.timestamp ? -1 : 1;
+			}
+			return order < o.order ? -1 : (order == o.order ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Method (by identity) and line number of a frame.
+	 */
+	private static class FrameKey {
+
+		private IMCMethod method;
+		private int line;
+
+		public FrameKey(IMCMethod method, int line) {
+			this.method = method;
+			this.line = line;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(method) + line;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FrameKey)) {
+				return false;
+			}
+			FrameKey other = (FrameKey) obj;
+			return method == other.method && line == other.line;
+		}
+	}
+
+	private static class TraceEventPojo extends GenericEvent implements ThreadTraceEvent {
 
 		private StackFrameList trace;
 		
@@ -25,7 +25,11 @@ import java.util.zip.GZIPInputStream;
 import org.gridkit.jvmtool.event.EventDumpParser.InputStreamSource;
 import org.junit.Test;
 
+import com.oracle.jmc.common.IMemberAccessor;
+import com.oracle.jmc.common.item.IItem;
+import com.oracle.jmc.common.unit.IQuantity;
 import com.oracle.jmc.flightrecorder.CouldNotLoadRecordingException;
+import com.oracle.jmc.flightrecorder.JfrAttributes;
 import com.oracle.jmc.flightrecorder.internal.EventArray;
 import com.oracle.jmc.flightrecorder.internal.FlightRecordingLoader;
 
@@ -55,4 +59,40 @@ public class JfrParserCheck {
 //			}
 		}
 	}	
+
+	/**
+	 * Compares timestamp access with accessor looked up per event (as it used to be done
+	 * in JfrEventAdapter) and with accessor resolved once per event type.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void accessor_benchmark() throws IOException, CouldNotLoadRecordingException {
+
+		EventArray[] recording = FlightRecordingLoader.loadStream(source.open(), false);
+		for(int r = 0; r != 5; ++r) {
+			long sum = 0;
+			int n = 0;
+			long t0 = System.nanoTime();
+			for(int k = 0; k != 200; ++k) {
+				for(EventArray ea: recording) {
+					for(IItem e: ea.getEvents()) {
+						IMemberAccessor<IQuantity, IItem> accessor = (IMemberAccessor<IQuantity, IItem>) JfrAttributes.EVENT_TIMESTAMP.getAccessor(e.getType());
+						sum += accessor.getMember(e).longValue();
+						++n;
+					}
+				}
+			}
+			long t1 = System.nanoTime();
+			for(int k = 0; k != 200; ++k) {
+				for(EventArray ea: recording) {
+					IMemberAccessor<IQuantity, IItem> accessor = (IMemberAccessor<IQuantity, IItem>) JfrAttributes.EVENT_TIMESTAMP.getAccessor(ea.getType());
+					for(IItem e: ea.getEvents()) {
+						sum += accessor.getMember(e).longValue();
+					}
+				}
+			}
+			long t2 = System.nanoTime();
+			System.out.println(String.format("Per event lookup %.1f ns/event, per type lookup %.1f ns/event (%d)", (t1 - t0) / (double) n, (t2 - t1) / (double) n, sum & 1));
+		}
+	}
 }
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2017 Alexey Ragozin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gridkit.jvmtool.jfr6.parser;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gridkit.jvmtool.codec.stacktrace.ThreadSnapshotEvent;
+import org.gridkit.jvmtool.event.Event;
+import org.gridkit.jvmtool.event.GenericEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.jmc.common.IMCThread;
+import com.oracle.jmc.common.IMCType;
+import com.oracle.jmc.common.IMemberAccessor;
+import com.oracle.jmc.common.item.Attribute;
+import com.oracle.jmc.common.item.IAccessorKey;
+import com.oracle.jmc.common.item.IAttribute;
+import com.oracle.jmc.common.item.IItem;
+import com.oracle.jmc.common.item.IType;
+import com.oracle.jmc.common.unit.UnitLookup;
+import com.oracle.jmc.flightrecorder.JfrAttributes;
+import com.oracle.jmc.flightrecorder.internal.EventArray;
+
+/**
+ * Runs adapter over event arrays built in memory, recordings of JDK versions
+ * read by MC6 cannot be produced by the build JDK.
+ */
+public class JfrEventAdapterTest {
+
+	private static final IAttribute<?> ALLOCATION_SIZE = Attribute.attr("allocationSize", "Allocation Size", UnitLookup.MEMORY);
+	private static final IAttribute<?> OBJECT_CLASS = Attribute.attr("objectClass", "Object Class", UnitLookup.CLASS);
+	private static final IAttribute<?> TIMEOUT = Attribute.attr("timeout", "Timeout", UnitLookup.TIMESPAN);
+
+	private final IMCThread thread = proxy(IMCThread.class, "getThreadId", 7L, "getThreadName", "main");
+	private final IMCType stringClass = proxy(IMCType.class, "getFullName", "java.lang.String");
+
+	@Test
+	public void default_mapping_reports_execution_samples_only() {
+		EventArray[] recording = {
+				array("ExecutionSample", new Object[] {1000000L}, new Object[] {3000000L}),
+				array("ObjectAllocationInNewTLAB", new Object[] {2000000L, 16L, stringClass}),
+		};
+
+		Assert.assertEquals(Arrays.asList("sample 1 7 main", "sample 3 7 main"),
+				read(new JfrEventAdapter(recording)));
+	}
+
+	@Test
+	public void mapped_types_reported_as_generic_events() {
+		EventArray[] recording = {
+				array("ExecutionSample", new Object[] {1000000L}),
+				array("ObjectAllocationInNewTLAB", new Object[] {2000000L, 16L, stringClass}),
+				array("JavaMonitorWait", new Object[] {3000000L, 10L}),
+				array("ThreadPark", new Object[] {4000000L, 10L}),
+		};
+		EventMapping mapping = EventMapping.parse("ObjectAllocationInNewTLAB, JavaMonitorWait")
+				.rename("JavaMonitorWait", "timeout", "jfr.waitTimeout");
+
+		Assert.assertEquals(Arrays.asList(
+				"sample 1 7 main",
+				"ObjectAllocationInNewTLAB 2 7 main allocClass=java.lang.String allocationSize=16",
+				"JavaMonitorWait 3 7 main waitTimeout=10"),
+				read(new JfrEventAdapter(recording, false, mapping)));
+
+		mapping.rename("ObjectAllocationInNewTLAB", "objectClass", null);
+		Assert.assertEquals("ObjectAllocationInNewTLAB 2 7 main allocationSize=16",
+				read(new JfrEventAdapter(recording, false, mapping)).get(1));
+	}
+
+	@Test
+	public void time_ordered_merge_of_event_types() {
+		EventArray[] recording = {
+				array("ExecutionSample", new Object[] {1000000L}, new Object[] {3000000L}, new Object[] {5000000L}),
+				array("ObjectAllocationInNewTLAB", new Object[] {2000000L, 16L, stringClass}, new Object[] {4000000L, 32L, stringClass}),
+		};
+		EventMapping mapping = EventMapping.parse("ObjectAllocationInNewTLAB");
+
+		Assert.assertEquals(Arrays.asList(
+				"sample 1 7 main",
+				"sample 3 7 main",
+				"sample 5 7 main",
+				"ObjectAllocationInNewTLAB 2 7 main allocClass=java.lang.String allocationSize=16",
+				"ObjectAllocationInNewTLAB 4 7 main allocClass=java.lang.String allocationSize=32"),
+				read(new JfrEventAdapter(recording, false, mapping)));
+		Assert.assertEquals(Arrays.asList(
+				"sample 1 7 main",
+				"ObjectAllocationInNewTLAB 2 7 main allocClass=java.lang.String allocationSize=16",
+				"sample 3 7 main",
+				"ObjectAllocationInNewTLAB 4 7 main allocClass=java.lang.String allocationSize=32",
+				"sample 5 7 main"),
+				read(new JfrEventAdapter(recording, true, mapping)));
+	}
+
+	@Test
+	public void dump_parser_orders_by_time_if_configured() {
+		EventArray[] recording = {
+				array("ExecutionSample", new Object[] {1000000L}, new Object[] {3000000L}),
+				array("ObjectAllocationInNewTLAB", new Object[] {2000000L, 16L, stringClass}),
+		};
+		System.setProperty(JfrDumpParser.TIME_ORDERED_OPTION, "true");
+		System.setProperty(EventMapping.OPTION, "ObjectAllocationInNewTLAB");
+		try {
+			List<String> events = read(JfrDumpParser.createAdapter(recording));
+			Assert.assertEquals(3, events.size());
+			long last = Long.MIN_VALUE;
+			for(String event: events) {
+				long timestamp = Long.parseLong(event.split(" ")[1]);
+				Assert.assertTrue(event, timestamp >= last);
+				last = timestamp;
+			}
+		}
+		finally {
+			System.clearProperty(JfrDumpParser.TIME_ORDERED_OPTION);
+			System.clearProperty(EventMapping.OPTION);
+		}
+	}
+
+	private static List<String> read(JfrEventAdapter adapter) {
+		List<String> events = new ArrayList<String>();
+		for(Event e: adapter) {
+			if (e instanceof ThreadSnapshotEvent) {
+				ThreadSnapshotEvent s = (ThreadSnapshotEvent) e;
+				events.add("sample " + s.timestamp() + " " + s.threadId() + " " + s.threadName());
+			}
+			else {
+				GenericEvent g = (GenericEvent) e;
+				String type = g.tags().firstTagFor("jfr.event.type");
+				StringBuilder sb = new StringBuilder(type.substring(type.lastIndexOf('.') + 1));
+				sb.append(' ').append(g.timestamp());
+				sb.append(' ').append(g.counters().getValue("jfr.threadId"));
+				sb.append(' ').append(g.tags().firstTagFor("jfr.threadName"));
+				if (g.tags().firstTagFor("jfr.allocClass") != null) {
+					sb.append(" allocClass=").append(g.tags().firstTagFor("jfr.allocClass"));
+				}
+				for(String counter: new String[] {"jfr.allocationSize", "jfr.waitTimeout", "jfr.timeout"}) {
+					if (g.counters().getValue(counter) != Long.MIN_VALUE) {
+						sb.append(' ').append(counter.substring(4)).append('=').append(g.counters().getValue(counter));
+					}
+				}
+				events.add(sb.toString());
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * @param rows start time in ns followed by values of type specific attributes
+	 */
+	private EventArray array(String eventType, Object[]... rows) {
+		List<IAttribute<?>> attributes = new ArrayList<IAttribute<?>>();
+		attributes.add(JfrAttributes.START_TIME);
+		attributes.add(JfrAttributes.EVENT_THREAD);
+		if (eventType.startsWith("ObjectAllocation")) {
+			attributes.add(ALLOCATION_SIZE);
+			attributes.add(OBJECT_CLASS);
+		}
+		else if (!eventType.equals("ExecutionSample")) {
+			attributes.add(TIMEOUT);
+		}
+		TypeHandler type = new TypeHandler(EventMapping.typeId(eventType), attributes);
+		@SuppressWarnings("unchecked")
+		IType<IItem> typeProxy = proxy(IType.class, type);
+		IItem[] items = new IItem[rows.length];
+		for(int i = 0; i != rows.length; ++i) {
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put(JfrAttributes.START_TIME.getIdentifier(), UnitLookup.EPOCH_NS.quantity((Long) rows[i][0]));
+			values.put(JfrAttributes.EVENT_THREAD.getIdentifier(), thread);
+			for(int j = 1; j < rows[i].length; ++j) {
+				IAttribute<?> attr = attributes.get(j + 1);
+				Object value = rows[i][j];
+				if (attr == ALLOCATION_SIZE) {
+					value = UnitLookup.BYTE.quantity((Long) value);
+				}
+				else if (attr == TIMEOUT) {
+					value = UnitLookup.NANOSECOND.quantity((Long) value);
+				}
+				values.put(attr.getIdentifier(), value);
+			}
+			items[i] = proxy(IItem.class, "getType", typeProxy);
+			type.values.put(items[i], values);
+		}
+		return new EventArray(items, typeProxy, new String[0]);
+	}
+
+	private static <T> T proxy(Class<T> iface, Object... answers) {
+		final Map<String, Object> map = new HashMap<String, Object>();
+		for(int i = 0; i < answers.length; i += 2) {
+			map.put((String) answers[i], answers[i + 1]);
+		}
+		return proxy(iface, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (map.containsKey(method.getName())) {
+					return map.get(method.getName());
+				}
+				return identity(proxy, method, args);
+			}
+		});
+	}
+
+	private static <T> T proxy(Class<T> iface, InvocationHandler handler) {
+		return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] {iface}, handler));
+	}
+
+	private static Object identity(Object proxy, Method method, Object[] args) {
+		if (method.getName().equals("equals")) {
+			return proxy == args[0];
+		}
+		else if (method.getName().equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		}
+		else if (method.getName().equals("toString")) {
+			return method.getDeclaringClass().getSimpleName();
+		}
+		throw new UnsupportedOperationException(method.getName());
+	}
+
+	/**
+	 * Event type with accessors reading values of its items.
+	 */
+	private static class TypeHandler implements InvocationHandler {
+
+		final String id;
+		final List<IAttribute<?>> attributes;
+		final Map<IItem, Map<String, Object>> values = new HashMap<IItem, Map<String, Object>>();
+
+		public TypeHandler(String id, List<IAttribute<?>> attributes) {
+			this.id = id;
+			this.attributes = attributes;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getName().equals("getIdentifier") || method.getName().equals("getName")) {
+				return id;
+			}
+			else if (method.getName().equals("getAttributes")) {
+				return attributes;
+			}
+			else if (method.getName().equals("getAccessor")) {
+				final String key = ((IAccessorKey<?>) args[0]).getIdentifier();
+				for(IAttribute<?> attr: attributes) {
+					if (attr.getIdentifier().equals(key)) {
+						return proxy(IMemberAccessor.class, new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method, Object[] args) {
+								if (method.getName().equals("getMember")) {
+									return values.get(args[0]).get(key);
+								}
+								return identity(proxy, method, args);
+							}
+						});
+					}
+				}
+				return null;
+			}
+			return identity(proxy, method, args);
+		}
+	}
+}